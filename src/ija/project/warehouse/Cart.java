@@ -2,407 +2,519 @@ package ija.project.warehouse;
 
 import java.util.*;
 
-import javafx.util.*;
-import javafx.scene.*;
-import javafx.scene.shape.Circle;
-import javafx.scene.paint.Color;
-import javafx.scene.input.MouseEvent;
-import javafx.scene.control.*;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
-import javafx.event.EventHandler;
-import javafx.animation.TranslateTransition;
-
-
-/** Represents a cart which picks up the goods. The class is inherited from
- *  the Circle class in JavaFX.
+
+/** Represents a cart which picks up the goods. The class doesn't depend on
+ *  JavaFX, it's visualized by the CartCircle.
+ *
+ *  The cart moves at a constant speed, so it doesn't need to be updated
+ *  while it travels -- only its next event (reaching a node with goods,
+ *  the node at which it stops or the end of the path) is calculated. The position
+ *  between the events is interpolated only when the cart is drawn.
  *
  * @author Tomas Beranek (xberan46)
  */
-public class Cart extends Circle {
-  private Long lastEpochTime = 0L;
+public class Cart {
   private int capacity;
   public int currCapacity = 0;
-  public List<Pair<Integer, Pair<String, Integer>>> path = null;
-  public List<Pair<Integer, Pair<String, Integer>>> pathCopy = null;
-  private Long waitUntilTime = -1L;
-  private int pathLen = 0;
-  private int traveledLen = 0;
-  private int speed = 50;     //pixels/s
-  private TranslateTransition animation = null;
-  private int pickUpTime = 4000; //ms
-  private Hashtable<Integer, ShelfRectangle> shelves;
-  private ArrayList<Integer> highlightedShelfID = new ArrayList<>();
+  public RoutePlan path = null;
+  public RoutePlan pathCopy = null;
+  private int speed = DEFAULT_SPEED;     //pixels/s
+  private int pickUpTime = DEFAULT_PICK_UP_TIME; //ms
+  private GoodsIndex goodsIndex;
+  private ArrayList<Integer> pickingShelfID = new ArrayList<>();
   private int lastVisitedNodeIndex = 0;
-  private Hashtable<Integer, NodeCircle> nodes;
-  private boolean cartIsActive = false;
-  private Long startEpochTime = 0L;
-  private ListView<String> cartList = null;
-  private ArrayList<Pair<String, Integer>> pickedUpGoods = new ArrayList<>();
-  private int lastVisitedNodeID;
-  private boolean newPathRecentlyAdded = true;
+  private int departIndex = 0; // the node from which the cart departs the last
+  private Long departTime = 0L; // after the goods are picked up
+  private int eventIndex = -1; // the node of the next event, -1 if there is none
+  private int stopIndex = -1; // the node at which the cart stops to be replanned, -1 if none
+  private ArrayList<Pair<Integer, Integer>> pickedUpGoods = new ArrayList<>();
+  private ArrayList<Pair<Integer, Integer>> dispensedGoods = new ArrayList<>();
   private int lastVisitedNodeIndexCopy = 0;
+  private int x;
+  private int y;
+  private boolean visible = false;
+
+  /** The default time of picking up the goods at a single node in ms. */
+  public static final int DEFAULT_PICK_UP_TIME = 4000;
+  /** The speed of the carts in pixels/s. */
+  public static final int DEFAULT_SPEED = 50;
 
 
   /**
    * @param x The cart's x coordinate.
    * @param y The cart's y coordinate.
-   * @param r The cart's radius for a visualization
-   * @param shelves All the shelfs in the warehouse.
-   * @param startEpochTime The time at which cart should start..
-   * @param cartList The list into currently loaded goods is loaded upon clicking
-   *                  on the cart.
+   * @param goodsIndex The index of shelves by the goods stored in them.
    * @param capacity The cart's capacity.
    */
-  public Cart(float x, float y, float r, Hashtable<Integer, ShelfRectangle> shelves, Long startEpochTime, ListView<String> cartList, int capacity){
-    super(x, y, r);
-    this.shelves = shelves;
-    this.startEpochTime = startEpochTime;
-    this.cartList = cartList;
+  public Cart(int x, int y, GoodsIndex goodsIndex, int capacity){
+    this.x = x;
+    this.y = y;
+    this.goodsIndex = goodsIndex;
     this.capacity = capacity;
   }
 
 
+  /** Creates a copy of the cart's state, used by the snapshots of
+   *  the simulation. The paths are shared, they never change once stored.
+   *
+   * @param other The copied cart.
+   */
+  public Cart(Cart other){
+    this.capacity = other.capacity;
+    this.currCapacity = other.currCapacity;
+    this.path = other.path;
+    this.pathCopy = other.pathCopy;
+    this.speed = other.speed;
+    this.pickUpTime = other.pickUpTime;
+    this.goodsIndex = other.goodsIndex;
+    this.pickingShelfID.addAll(other.pickingShelfID);
+    this.lastVisitedNodeIndex = other.lastVisitedNodeIndex;
+    this.departIndex = other.departIndex;
+    this.departTime = other.departTime;
+    this.eventIndex = other.eventIndex;
+    this.stopIndex = other.stopIndex;
+    this.pickedUpGoods.addAll(other.pickedUpGoods);
+    this.dispensedGoods.addAll(other.dispensedGoods);
+    this.lastVisitedNodeIndexCopy = other.lastVisitedNodeIndexCopy;
+    this.x = other.x;
+    this.y = other.y;
+    this.visible = other.visible;
+  }
+
+
+  /** Sets the time of picking up the goods at a single node.
+   *
+   * @param pickUpTime The time in ms.
+   */
+  public void setPickUpTime(int pickUpTime) {
+    this.pickUpTime = pickUpTime;
+  }
+
+
+  /** Prepares the cart for a new path, the cart stays where it is. Used when
+   *  the cart is reused by the fleet for another batch of orders.
+   */
+  public void restart() {
+    this.currCapacity = 0;
+    this.path = null;
+    this.pathCopy = null;
+    this.lastVisitedNodeIndex = 0;
+    this.lastVisitedNodeIndexCopy = 0;
+    this.departIndex = 0;
+    this.eventIndex = -1;
+    this.stopIndex = -1;
+    this.visible = false;
+    this.pickingShelfID.clear();
+    this.pickedUpGoods.clear();
+    this.dispensedGoods.clear();
+  }
+
+
+  /** Gets the node at which the cart's path ends.
+   *
+   * @return The ID of the node, -1 if the cart has no path.
+   */
+  public int getEndNode() {
+    if (this.path == null || this.path.isEmpty())
+      return -1;
+
+    return this.path.getNode(this.path.size() - 1);
+  }
+
+
+  /** Gets the cart's x coordinate.
+   *
+   * @return The cart's x coordinate.
+   */
+  public int getX() {
+    return this.x;
+  }
+
+
+  /** Gets the cart's y coordinate.
+   *
+   * @return The cart's y coordinate.
+   */
+  public int getY() {
+    return this.y;
+  }
+
+
+  /** Checks if the cart is on its way and should be visible.
+   *
+   * @return True - if the cart is on its way.
+   */
+  public boolean isVisible() {
+    return this.visible;
+  }
+
+
+  /** Gets the goods which are currently loaded on the cart.
+   *
+   * @return The list of pairs (SKU, quantity) of the loaded goods.
+   */
+  public List<Pair<Integer, Integer>> getPickedUpGoods() {
+    return this.pickedUpGoods;
+  }
+
+
+  /** Gets all the goods which the cart has already dispensed, the last trip
+   *  to the dispensing point isn't included until the path is finished.
+   *
+   * @return The list of pairs (SKU, quantity) of the dispensed goods.
+   */
+  public List<Pair<Integer, Integer>> getDispensedGoods() {
+    return this.dispensedGoods;
+  }
+
+
+  /** Gets the shelves from which the cart is currently picking up the goods.
+   *
+   * @return The list of shelves IDs.
+   */
+  public List<Integer> getPickingShelfIDs() {
+    return this.pickingShelfID;
+  }
+
+
   /** Calculates the remaing path with the last visited node included.
    *
    * @return Remaining path with the last visited node included.
    */
-  public List<Pair<Integer, Pair<String, Integer>>> getRemainingPath(){
+  public RoutePlan getRemainingPath(){
     if (this.path == null){
-      return this.pathCopy.subList(this.lastVisitedNodeIndexCopy, this.pathCopy.size());
+      return this.pathCopy.subPlan(this.lastVisitedNodeIndexCopy);
     }
     else
-      return this.path.subList(this.lastVisitedNodeIndex, this.path.size());
+      return this.path.subPlan(this.lastVisitedNodeIndex);
   }
 
 
-  /** Calculates the lenght of the whole path.
+  /** Gets the lenght of the whole path.
    *
-   * @param nodes The list of all the nodes.
    * @return A length of a whole path.
    */
-  public int getPathLen(Hashtable<Integer, NodeCircle> nodes) {
+  public int getPathLen() {
     if (this.path == null)
       return 0;
 
-    int len = 0;
-    int startNodeID;
-    int nextNodeID;
-
-    for (int i = 1; i < this.path.size(); i++){
-      startNodeID = this.path.get(i-1).getKey();
-      nextNodeID = this.path.get(i).getKey();
-
-      len += nodes.get(startNodeID).distance(nodes.get(nextNodeID));
-    }
-
-    return len;
+    return this.path.getLength();
   }
 
 
-  /** Stores the given sequence of nodes (path).
+  /** Stores the given sequence of nodes (path), the cart departs from its
+   *  first node at the given time. A timed path says how long the cart
+   *  stays at its nodes, the cart waits there even if it could go on, and
+   *  where the cart stops to be replanned if it isn't timed till its end.
    *
    * @param path The sequence of nodes (path).
-   * @param nodes The list of all the nodes.
+   * @param graph The routes of the floor plan.
+   * @param epochTime The time at which the cart departs.
    */
-  public void addPath(List<Pair<Integer, Pair<String, Integer>>> path, Hashtable<Integer, NodeCircle> nodes) {
+  public void addPath(RoutePlan path, FloorGraph graph, Long epochTime) {
     if (path == null && this.path != null){
       this.pathCopy = this.path;
       this.lastVisitedNodeIndexCopy = this.lastVisitedNodeIndex;
     }
 
     this.path = path;
-    this.pathLen = getPathLen(nodes);
-    this.nodes = nodes;
     this.lastVisitedNodeIndex = 0;
-    this.traveledLen = 0;
-    this.newPathRecentlyAdded = true;
-
-    // handler cannot reach 'this' variable
-    Cart thisCopy = this;
-
-    EventHandler<MouseEvent> cartClickHandler = new EventHandler<MouseEvent>() {
-       @Override
-       public void handle(MouseEvent e) {
-
-          // set color of all the highlighed nodes to their default color
-          for(Integer nodeID : thisCopy.nodes.keySet()){
-            if (thisCopy.nodes.get(nodeID).getFill().equals(Color.GREEN)){
-              thisCopy.nodes.get(nodeID).setFill(Color.RED);
-              thisCopy.nodes.get(nodeID).setRadius(5);
-            }
-          }
-
-          ObservableList<String> cartLitems = FXCollections.observableArrayList();
-
-          for(int i = 0; i < pickedUpGoods.size(); i++){
-            cartLitems.add(pickedUpGoods.get(i).getValue() + "x\t " + pickedUpGoods.get(i).getKey());
-          }
-
-          cartList.setItems(cartLitems);
-
-
-          // highlight the current path
-          if (thisCopy.path != null){
-            for (int i = 0; i < thisCopy.path.size(); i++) {
-              int nodeID = thisCopy.path.get(i).getKey();
-
-              if (thisCopy.nodes.get(nodeID).getFill().equals(Color.RED)){
-                thisCopy.nodes.get(nodeID).setFill(Color.GREEN);
-                thisCopy.nodes.get(nodeID).setRadius(7);
-              }
-            }
-          }
-
-          for(Integer shelfID : thisCopy.shelves.keySet()) {
-            if (thisCopy.shelves.get(shelfID).getStroke().equals(Color.GREEN)){
-              thisCopy.shelves.get(shelfID).setStrokeWidth(4);
-              thisCopy.shelves.get(shelfID).setStroke(Color.BLACK);
-            }
-          }
-
-          //show shelfs
-          //find shelf by nodeID and goods name and pick up goods
-          for (int i = 0; i < thisCopy.path.size(); i++) {
-            int nodeID = thisCopy.path.get(i).getKey();
-            String goods = thisCopy.path.get(i).getValue().getKey();
-            int quantity = thisCopy.path.get(i).getValue().getValue();
-
-            if (goods.equals(""))
-              continue;
-
-            for(Integer shelfID : thisCopy.shelves.keySet()) {
-              if (thisCopy.shelves.get(shelfID).getGoods().equals(goods)
-                  && thisCopy.shelves.get(shelfID).getNode() == nodeID){
-
-                    int shelfQuantity = thisCopy.shelves.get(shelfID).getQuantity();
-
-                    //check if the there is enough goods in a shelf
-                    if (quantity > shelfQuantity){
-                      quantity -= shelfQuantity;
-                    } else {
-                      // if not, then search other shelf which are connected to the same node and ahve the same goods
-                      quantity = 0;
-                    }
-
-                    //save previous color
-                    thisCopy.shelves.get(shelfID).setStrokeWidth(6);
-                    thisCopy.shelves.get(shelfID).setStroke(Color.GREEN);
-
-                    // we have taken everything
-                    if (quantity == 0)
-                      break;
-                  }
-            }
-          }
-       }
-    };
-    this.addEventFilter(MouseEvent.MOUSE_CLICKED, cartClickHandler);
+    this.departIndex = 0;
+    this.departTime = epochTime;
+    this.eventIndex = -1;
+    this.stopIndex = -1;
+
+    if (this.path != null){
+      this.departTime += this.path.getDwell(0);
+      this.stopIndex = this.path.getHorizon();
+      this.path.measure(graph);
+      this.visible = true;
+      findNextEvent(graph);
+    }
   }
 
 
-  /** Updates cart's position to current the given time.
+  /** Gets the time of the cart's next event -- reaching a node at which it
+   *  picks up or dispenses the goods, reaching the end of the path or
+   *  the node at which it stops to be replanned.
    *
-   * @param currentEpochTime The current epoch time.
-   * @param nodes The list of all the nodes.
-   * @return An information about updating:
-   *          "Stopped" -- the cart cannot continue in the given path
-   *          "Success" -- the cart successfully updated it's position
-   *          "Finished" -- the cart reached the last node in path
+   * @return The time of the next event, -1 if the cart has no event.
    */
-  public String updatePosition(Long currentEpochTime, Hashtable<Integer, NodeCircle> nodes){
-    if (this.lastEpochTime == 0){
-      this.lastEpochTime = currentEpochTime; //this the first update called
-      this.traveledLen = (int)(((currentEpochTime - this.startEpochTime)/1000.0)*this.speed);
-    }
+  public long getNextEventTime() {
+    if (this.path == null || this.eventIndex < 0)
+      return -1;
 
-    if (this.newPathRecentlyAdded){
-      this.lastEpochTime = currentEpochTime;
-      this.traveledLen = 0;
-      this.newPathRecentlyAdded = false;
-    }
+    int distance = this.path.getDistance(this.eventIndex) - this.path.getDistance(this.departIndex);
+    return this.departTime + travelTime(distance);
+  }
 
+
+  /** Moves the cart to the node of its next event and processes it. Must be
+   *  called exactly at the time returned by getNextEventTime().
+   *
+   * @param epochTime The time of the event.
+   * @param graph The routes of the floor plan.
+   * @return An information about the event:
+   *          "Stopped" -- the cart stopped to be replanned, it may still
+   *                       be picking up the goods
+   *          "Success" -- the cart successfully processed the event
+   *          "Finished" -- the cart reached the last node in path
+   */
+  public String processEvent(Long epochTime, FloorGraph graph){
     //if there is not defined path, stay on the spot and ask for recalcucation
-    if (this.path == null)
+    if (this.path == null || this.eventIndex < 0)
       return "Stopped";
 
-    // check if path finder returned path from 0 to 0, if so end it
-    if (this.path.size() >= (this.lastVisitedNodeIndex + 2) && this.path.get(lastVisitedNodeIndex).getKey() == 0 && this.path.get(lastVisitedNodeIndex+1).getKey() == 0){
+    int index = this.eventIndex;
+    int nodeID = this.path.getNode(index);
+    boolean late = false;
+    this.x = graph.getX(nodeID);
+    this.y = graph.getY(nodeID);
+
+    // the event at the node the cart departs from is only a check of the route
+    if (index > this.departIndex){
+      this.departIndex = index;
+      this.departTime = epochTime;
+
+      // check if on the reached node is goods that we have to pick up
+      int goodsSKU = this.path.getSKU(index);
+      if (goodsSKU == GoodsDictionary.DISPENSE){
+        //dispense all the goods
+        this.dispensedGoods.addAll(this.pickedUpGoods);
+        this.pickedUpGoods.clear();
+        this.currCapacity = 0;
+      } else if (goodsSKU != GoodsDictionary.NONE){
+        pickUp(nodeID, goodsSKU, this.path.getQuantity(index));
+      }
+
+      // the timed path is kept unless the picking takes longer than planned,
+      // then the cart is replanned right away and departs once it's done
+      if (this.path.isTimed()){
+        long plannedTime = epochTime + this.path.getDwell(index);
+        if (this.departTime > plannedTime)
+          late = true;
+        else
+          this.departTime = plannedTime;
+      }
+    }
+    this.lastVisitedNodeIndex = this.departIndex;
+    this.eventIndex = -1;
+
+    // there is no next position (the node is the end point)
+    if (index + 1 == this.path.size()){
+      this.visible = false;
       return "Finished";
     }
 
-    int nodeID = this.path.get(0).getKey();
-
-    this.setRadius(10); //make sure it is visible
-    this.setFill(Color.GREY);
-
-    //index in path not node ID!
-    Pair<Integer, Integer> p = getLastVisitedNodeIndexAndLen(nodes);
-    this.lastVisitedNodeIndex = p.getKey();
-    int lastVisitedNodeDistance = p.getValue();
-    NodeCircle lastNode = nodes.get(this.path.get(lastVisitedNodeIndex).getKey());
-    NodeCircle nextNode = nodes.get(this.path.get(lastVisitedNodeIndex+1).getKey());
-    Long duration = currentEpochTime - this.lastEpochTime;
-    int distanceToTravel = (int)((duration/1000.0)*this.speed);
-    this.lastEpochTime = currentEpochTime;
-    this.lastVisitedNodeID = lastNode.ID;
-
-    // 3 things can happen:
-    //  1) the next position will be still between the same two points
-    if (this.traveledLen + distanceToTravel < lastVisitedNodeDistance + lastNode.distance(nextNode)){
-      if (currentEpochTime < this.waitUntilTime)
-        return "Success"; //if we are picking up goods, stay on the spot
-
-      // check if next node is reachable
-      if (!lastNode.getNeighbours().contains(nextNode.ID)){
-        // next node is not reachable
+    if (late)
+      return "Stopped";
+
+    // the cart stops to be replanned once it has picked up the goods here
+    if (index == this.stopIndex){
+      if (this.departTime <= epochTime)
         return "Stopped";
-      }
+      this.eventIndex = index;
+      return "Success";
+    }
+
+    findNextEvent(graph);
+    return "Success";
+  }
 
-      for (int i = 0; i < this.highlightedShelfID.size(); i++) {
-        if (this.shelves.get(this.highlightedShelfID.get(i)).getStroke().equals(Color.GREY)){
-          this.shelves.get(this.highlightedShelfID.get(i)).setStrokeWidth(4);
-          this.shelves.get(this.highlightedShelfID.get(i)).setStroke(Color.BLACK);
-        } else if (this.shelves.get(this.highlightedShelfID.get(i)).getStroke().equals(Color.DARKGREY)){
-          this.shelves.get(this.highlightedShelfID.get(i)).setStrokeWidth(6);
-          this.shelves.get(this.highlightedShelfID.get(i)).setStroke(Color.GREEN);
-        }
-      }
-      this.highlightedShelfID.clear();
 
+  /** Checks the rest of the path after some routes have been closed. If
+   *  the path goes through a closed route, the cart stops at the nearest node
+   *  to be replanned -- a travelling cart at the next node, a cart picking up
+   *  the goods once it has picked them. A cart which is just on a closed route
+   *  returns to the last visited node. The carts don't check the routes while
+   *  they move, so this has to be called for each cart using a closed route.
+   *
+   * @param epochTime The current time.
+   * @param graph The routes of the floor plan.
+   * @return false -- The path needs to be recalculated right away.
+   *         true -- The cart can continue, at least to its stop.
+   */
+  public boolean checkRoutes(Long epochTime, FloorGraph graph){
+    if (this.path == null)
+      return false;
+    if (this.eventIndex < 0)
+      return true;
+
+    moveTo(epochTime, graph);
+    int index = this.lastVisitedNodeIndex;
+    FloorGraph.Snapshot snapshot = graph.getSnapshot();
+    int closed = index;
+    while (closed + 1 < this.path.size() && isPassable(closed, snapshot))
+      closed++;
+    if (closed + 1 == this.path.size())
+      return true; // the rest of the path is open
+
+    if (epochTime.equals(this.departTime) || (epochTime > this.departTime && index < this.eventIndex && closed == index)){
+      // the cart is on the closed route or just departing
+      this.departIndex = index;
+      this.departTime = epochTime;
+      this.eventIndex = -1;
+      this.x = graph.getX(this.path.getNode(index));
+      this.y = graph.getY(this.path.getNode(index));
+      return false;
+    }
 
-      float percentage = (float)(this.traveledLen + distanceToTravel - lastVisitedNodeDistance) / lastNode.distance(nextNode);
-      int nextPositionX = (int)((nextNode.getX() - lastNode.getX()) * percentage) + lastNode.getX();
-      int nextPositionY = (int)((nextNode.getY() - lastNode.getY()) * percentage) + lastNode.getY();
+    int stop = epochTime < this.departTime ? this.departIndex : Math.min(index + 1, this.eventIndex);
+    if (this.stopIndex < 0 || stop < this.stopIndex)
+      this.stopIndex = stop;
+    findNextEvent(graph);
+    return true;
+  }
 
-      this.setCenterX(nextPositionX);
-      this.setCenterY(nextPositionY);
-      this.traveledLen += distanceToTravel;
-      return "Success";
+
+  /** Gets the time at which the cart can depart from its node, it may still
+   *  be picking up the goods.
+   *
+   * @return The time in ms.
+   */
+  public long getReadyTime(){
+    return this.departTime;
+  }
+
+
+  /** Gets the routes of the path which the cart hasn't passed yet (as far as
+   *  it's known from the last event).
+   *
+   * @return The IDs of the routes, null if the cart has no path.
+   */
+  public int[] getRemainingRoutes(){
+    if (this.path == null)
+      return null;
+
+    int from = Math.max(this.lastVisitedNodeIndex, this.departIndex);
+    int[] routes = new int[Math.max(0, this.path.size() - from - 1)];
+    int count = 0;
+    for (int i = from; i + 1 < this.path.size(); i++){
+      if (this.path.getNode(i) != this.path.getNode(i+1))
+        routes[count++] = this.path.getRoute(i);
     }
-    //  2) the next position will be between the next two points (including next point)
-    else {
-      if (lastVisitedNodeIndex + 2 != this.path.size()){
-        if (currentEpochTime < this.waitUntilTime)
-          return "Success"; //if we are picking up goods, stay on the spot
-
-          for (int i = 0; i < this.highlightedShelfID.size(); i++) {
-            if (this.shelves.get(this.highlightedShelfID.get(i)).getStroke().equals(Color.GREY)){
-              this.shelves.get(this.highlightedShelfID.get(i)).setStrokeWidth(4);
-              this.shelves.get(this.highlightedShelfID.get(i)).setStroke(Color.BLACK);
-            } else if (this.shelves.get(this.highlightedShelfID.get(i)).getStroke().equals(Color.DARKGREY)){
-              this.shelves.get(this.highlightedShelfID.get(i)).setStrokeWidth(6);
-              this.shelves.get(this.highlightedShelfID.get(i)).setStroke(Color.GREEN);
-            }
-          }
-          this.highlightedShelfID.clear();
-
-        //substract remaining distance to the next node
-        distanceToTravel -= lastNode.distance(nextNode) - (this.traveledLen - lastVisitedNodeDistance);
-        this.traveledLen += lastNode.distance(nextNode) - (this.traveledLen - lastVisitedNodeDistance);
-
-        lastVisitedNodeIndex++;
-        lastVisitedNodeDistance = this.traveledLen;
-        lastNode = nextNode;
-        nextNode = nodes.get(this.path.get(lastVisitedNodeIndex+1).getKey());
-
-        float percentage = (float)(this.traveledLen + distanceToTravel - lastVisitedNodeDistance) / lastNode.distance(nextNode);
-        int nextPositionX = (int)((nextNode.getX() - lastNode.getX()) * percentage) + lastNode.getX();
-        int nextPositionY = (int)((nextNode.getY() - lastNode.getY()) * percentage) + lastNode.getY();
-
-        // check if on the last visisited node is goods that we have to pick up
-        if (this.path.get(lastVisitedNodeIndex).getValue().getKey() != ""){
-          //wait
-          this.waitUntilTime = currentEpochTime;
-
-          int quantity = this.path.get(lastVisitedNodeIndex).getValue().getValue();
-          String goodsName = this.path.get(lastVisitedNodeIndex).getValue().getKey();
-          int lastNodeID = this.path.get(lastVisitedNodeIndex).getKey();
-
-          //dispense all the goods
-          if (goodsName.equals("dispense")){
-            this.pickedUpGoods.clear();
-            this.currCapacity = 0;
-          } else {
-            //find shelf by nodeID and goods name and pick up goods
-            for(Integer shelfID : this.shelves.keySet()) {
-              if (this.shelves.get(shelfID).getGoods().equals(goodsName)
-                  && this.shelves.get(shelfID).getNode() == lastNodeID){
-                    //pick the goods form the shelf
-                    this.pickedUpGoods.add(new Pair<>(goodsName, quantity));
-                    this.currCapacity += quantity;
-                    this.waitUntilTime += pickUpTime;
-
-                    int shelfQuantity = this.shelves.get(shelfID).getQuantity();
-
-                    //check if the there is enough goods in a shelf
-                    if (quantity > shelfQuantity){
-                      this.shelves.get(shelfID).decreaseQuantity(shelfQuantity);
-                      quantity -= shelfQuantity;
-                    } else {
-                      // if not, then search other shelf which are connected to the same node and ahve the same goods
-                      this.shelves.get(shelfID).decreaseQuantity(quantity);
-                      quantity = 0;
-                    }
-
-                    //save previous color
-                    if (this.shelves.get(shelfID).getStroke().equals(Color.GREEN)){
-                      this.shelves.get(shelfID).setStrokeWidth(6);
-                      this.shelves.get(shelfID).setStroke(Color.DARKGREY);
-                      this.highlightedShelfID.add(shelfID);
-                    } else {
-                      this.shelves.get(shelfID).setStrokeWidth(6);
-                      this.shelves.get(shelfID).setStroke(Color.GREY);
-                      this.highlightedShelfID.add(shelfID);
-                    }
-
-                    // we have taken everything
-                    if (quantity == 0)
-                      break;
-                  }
-            }
-          }
-        }
-
-        this.setCenterX(nextPositionX);
-        this.setCenterY(nextPositionY);
-        this.traveledLen += distanceToTravel;
-        //playAnimation(nextPositionX, nextPositionY, duration);
-        return "Success";
-      }
-      //  3) there is no next position (next node is also end point)
-      else {
-        this.setRadius(0);
-        //playAnimation(nextNode.getX(), nextNode.getY(), duration);
-        return "Finished";
-      }
+    return Arrays.copyOf(routes, count);
+  }
+
+
+  /** Interpolates cart's position at the given time. The position is needed
+   *  only to draw the cart, the events don't depend on it.
+   *
+   * @param epochTime The time not before the last processed event.
+   * @param graph The routes of the floor plan.
+   */
+  public void moveTo(Long epochTime, FloorGraph graph){
+    if (this.path == null || this.eventIndex < 0)
+      return;
+
+    //if we are picking up goods, stay on the spot
+    if (epochTime < this.departTime){
+      this.x = graph.getX(this.path.getNode(this.departIndex));
+      this.y = graph.getY(this.path.getNode(this.departIndex));
+      return;
     }
+
+    this.pickingShelfID.clear();
+
+    long traveledLen = this.path.getDistance(this.departIndex) + (epochTime - this.departTime) * this.speed / 1000;
+    traveledLen = Math.min(traveledLen, this.path.getDistance(this.eventIndex));
+
+    //index in path not node ID! the traveled length only grows, so the search
+    //continues from the previously visited node
+    int i = Math.max(this.lastVisitedNodeIndex, this.departIndex);
+    while (i < this.eventIndex && this.path.getDistance(i+1) <= traveledLen)
+      i++;
+    this.lastVisitedNodeIndex = i;
+
+    int lastNode = this.path.getNode(i);
+    if (i == this.eventIndex){
+      this.x = graph.getX(lastNode);
+      this.y = graph.getY(lastNode);
+      return;
+    }
+
+    int nextNode = this.path.getNode(i+1);
+    int segmentLen = this.path.getDistance(i+1) - this.path.getDistance(i);
+    float percentage = (float)(traveledLen - this.path.getDistance(i)) / segmentLen;
+    this.x = (int)((graph.getX(nextNode) - graph.getX(lastNode)) * percentage) + graph.getX(lastNode);
+    this.y = (int)((graph.getY(nextNode) - graph.getY(lastNode)) * percentage) + graph.getY(lastNode);
   }
 
 
-  // OPTIMIZE: delete this method? and save last visisted node in class variable instead?
-  /** Calculates the last visited node's index in path and it's distance from the
-   *  start.
+  /** Picks up the goods from the shelves accessible from the node, the cart
+   *  departs after all the shelves are picked.
    *
-   * @param nodes The list of all the nodes.
-   * @return A pair of values (index in path, distance from start).
+   * @param nodeID The ID of the node.
+   * @param goodsSKU The SKU of the goods.
+   * @param quantity The quantity of the goods.
    */
-  private Pair<Integer, Integer> getLastVisitedNodeIndexAndLen(Hashtable<Integer, NodeCircle> nodes){
-    int l = 0, startNodeID, nextNodeID, lPrev = 0;
+  private void pickUp(int nodeID, int goodsSKU, int quantity){
+    this.pickingShelfID.clear();
+
+    //find shelf by nodeID and goods SKU and pick up goods
+    for(Shelf shelf : this.goodsIndex.getShelves(nodeID, goodsSKU)) {
+      //pick the goods form the shelf
+      this.pickedUpGoods.add(new Pair<>(goodsSKU, quantity));
+      this.currCapacity += quantity;
+      this.departTime += pickUpTime;
+
+      int shelfQuantity = shelf.getQuantity();
+
+      //check if the there is enough goods in a shelf
+      if (quantity > shelfQuantity){
+        shelf.decreaseQuantity(shelfQuantity);
+        quantity -= shelfQuantity;
+      } else {
+        // if not, then search other shelf which are connected to the same node and ahve the same goods
+        shelf.decreaseQuantity(quantity);
+        quantity = 0;
+      }
 
-    for (int i = 1; i < this.path.size(); i++){
-      startNodeID = this.path.get(i-1).getKey();
-      nextNodeID = this.path.get(i).getKey();
+      this.pickingShelfID.add(shelf.shelfID);
 
-      l += nodes.get(startNodeID).distance(nodes.get(nextNodeID));
-      if (traveledLen < l){
-        this.lastVisitedNodeIndex = i-1;
-        return new Pair<>(i-1, lPrev);
+      // we have taken everything
+      if (quantity == 0)
+        break;
+    }
+  }
+
+
+  /** Finds the next event of the cart -- the next node with goods to pick
+   *  up or dispense, the node at which it waits or stops or the end of the path.
+   *  The routes aren't checked, the closed ones are reported by checkRoutes().
+   *
+   * @param graph The routes of the floor plan.
+   */
+  private void findNextEvent(FloorGraph graph){
+    for (int i = this.departIndex; i + 1 < this.path.size(); i++){
+      if (i == this.stopIndex || (i > this.departIndex && (this.path.getSKU(i) != GoodsDictionary.NONE || this.path.getDwell(i) > 0))){
+        this.eventIndex = i;
+        return;
       }
-      lPrev = l;
     }
 
-    this.lastVisitedNodeIndex = -1;
-    return new Pair<>(-1, this.pathLen);
+    this.eventIndex = this.path.size() - 1;
+  }
+
+
+  /** Checks if the cart can get from the i-th node of the path to the next
+   *  one.
+   *
+   * @param i The index in path.
+   * @param snapshot The currently open routes.
+   * @return True - if the nodes are the same or the route between them is open.
+   */
+  private boolean isPassable(int i, FloorGraph.Snapshot snapshot){
+    return this.path.getNode(i) == this.path.getNode(i+1) || snapshot.isOpen(this.path.getRoute(i));
+  }
+
+
+  /** Calculates the time the cart needs to travel the given distance.
+   *
+   * @param distance The distance in pixels.
+   * @return The time in ms.
+   */
+  private long travelTime(int distance){
+    return (long)distance * 1000 / this.speed;
   }
 }
@@ -0,0 +1,143 @@
+package ija.project.warehouse;
+
+import java.util.*;
+
+import javafx.scene.shape.Circle;
+import javafx.scene.paint.Color;
+import javafx.scene.control.*;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+
+/** Visualizes a cart which picks up the goods. The cart's state is held by
+ *  the Cart, this class only updates its position. The class is inherited from
+ *  the Circle class in JavaFX, but it isn't a part of the scene graph -- it's
+ *  drawn by the WarehouseRenderer.
+ *
+ * @author Tomas Beranek (xberan46)
+ */
+public class CartCircle extends Circle {
+  private Cart cart;
+  private Hashtable<Integer, NodeCircle> nodes;
+  private Hashtable<Integer, ShelfRectangle> shelves;
+  private GoodsIndex goodsIndex;
+  private GoodsDictionary dictionary;
+  private ListView<String> cartList = null;
+
+
+  /**
+   * @param cart The visualized cart.
+   * @param nodes All the visualized nodes.
+   * @param shelves All the visualized shelfs in the warehouse.
+   * @param goodsIndex The index of shelves by the goods stored in them.
+   * @param dictionary The dictionary of the goods names.
+   * @param cartList The list into currently loaded goods is loaded upon clicking
+   *                  on the cart.
+   */
+  public CartCircle(Cart cart, Hashtable<Integer, NodeCircle> nodes, Hashtable<Integer, ShelfRectangle> shelves, GoodsIndex goodsIndex, GoodsDictionary dictionary, ListView<String> cartList){
+    super(cart.getX(), cart.getY(), 0);
+    this.cart = cart;
+    this.nodes = nodes;
+    this.shelves = shelves;
+    this.goodsIndex = goodsIndex;
+    this.dictionary = dictionary;
+    this.cartList = cartList;
+    this.setFill(Color.GREY);
+  }
+
+
+  /** Gets the visualized cart.
+   *
+   * @return The visualized cart.
+   */
+  public Cart getCart() {
+    return this.cart;
+  }
+
+
+  /** Moves the cart according to it's current state, the shelves from which
+   *  it's picking up are outlined by the renderer.
+   */
+  public void update() {
+    this.setRadius(this.cart.isVisible() ? 10 : 0);
+    this.setCenterX(this.cart.getX());
+    this.setCenterY(this.cart.getY());
+  }
+
+
+  /** Lists the loaded goods and highlights the cart's path and the shelves
+   *  from which the goods will be picked up. Called when the cart is clicked.
+   */
+  public void highlightPath() {
+    // set color of all the highlighed nodes to their default color
+    for(Integer nodeID : this.nodes.keySet()){
+      if (this.nodes.get(nodeID).getFill().equals(Color.GREEN)){
+        this.nodes.get(nodeID).setFill(Color.RED);
+        this.nodes.get(nodeID).setRadius(5);
+      }
+    }
+
+    ObservableList<String> cartLitems = FXCollections.observableArrayList();
+    List<Pair<Integer, Integer>> pickedUpGoods = this.cart.getPickedUpGoods();
+
+    for(int i = 0; i < pickedUpGoods.size(); i++){
+      cartLitems.add(pickedUpGoods.get(i).getValue() + "x\t " + this.dictionary.getName(pickedUpGoods.get(i).getKey()));
+    }
+
+    cartList.setItems(cartLitems);
+
+    RoutePlan path = this.cart.path;
+
+    // highlight the current path
+    if (path != null){
+      for (int i = 0; i < path.size(); i++) {
+        int nodeID = path.getNode(i);
+
+        if (this.nodes.get(nodeID).getFill().equals(Color.RED)){
+          this.nodes.get(nodeID).setFill(Color.GREEN);
+          this.nodes.get(nodeID).setRadius(7);
+        }
+      }
+    }
+
+    for(Integer shelfID : this.shelves.keySet()) {
+      if (this.shelves.get(shelfID).getStroke().equals(Color.GREEN)){
+        this.shelves.get(shelfID).setStrokeWidth(4);
+        this.shelves.get(shelfID).setStroke(Color.BLACK);
+      }
+    }
+
+    if (path == null)
+      return;
+
+    //show shelfs
+    //find shelf by nodeID and goods SKU
+    for (int i = 0; i < path.size(); i++) {
+      int nodeID = path.getNode(i);
+      int goods = path.getSKU(i);
+      int quantity = path.getQuantity(i);
+
+      if (goods == GoodsDictionary.NONE)
+        continue;
+
+      for(Shelf shelf : this.goodsIndex.getShelves(nodeID, goods)) {
+        int shelfQuantity = shelf.getQuantity();
+
+        //check if the there is enough goods in a shelf
+        if (quantity > shelfQuantity){
+          quantity -= shelfQuantity;
+        } else {
+          // if not, then search other shelf which are connected to the same node and ahve the same goods
+          quantity = 0;
+        }
+
+        this.shelves.get(shelf.shelfID).setStrokeWidth(6);
+        this.shelves.get(shelf.shelfID).setStroke(Color.GREEN);
+
+        // we have taken everything
+        if (quantity == 0)
+          break;
+      }
+    }
+  }
+}
@@ -0,0 +1,260 @@
+package ija.project.warehouse;
+
+import java.util.*;
+
+
+/** Represents the routes between nodes of a floor plan as compressed sparse
+ *  rows (CSR) -- the edges of each node are stored one after another in
+ *  arrays of targets and precomputed lengths. The structure never changes
+ *  after it is built, closing and opening of the routes only switches bits
+ *  in a snapshot. Each change publishes a new snapshot, so the one obtained
+ *  by a reader is never changed under its hands.
+ *
+ *  A route is double-sided, it has two edges (one from each of its nodes)
+ *  and a single ID.
+ *
+ * @author Simon Slobodnik (xslobo06)
+ */
+public class FloorGraph {
+  private final int n; //number of nodes
+  private final int[] x; //coordinates of nodes
+  private final int[] y;
+  private final int[] edgeStart; //index of the first edge of each node
+  private final int[] edgeTarget; //target node of each edge
+  private final int[] edgeLength; //length of each edge
+  private final int[] edgeRoute; //route ID of each edge
+  private final int routes; //number of routes
+  private volatile Snapshot snapshot; //currently open routes
+
+  /** Open and closed routes of the floor plan at some moment. The snapshot
+   *  is never changed after it is published.
+   */
+  public static final class Snapshot {
+    private final int version;
+    private final long[] open;
+
+    private Snapshot(int version, long[] open) {
+      this.version = version;
+      this.open = open;
+    }
+
+    /** Get number of changes of routes before this snapshot
+     *
+     *  @return Version of the snapshot
+     */
+    public int getVersion() {
+      return this.version;
+    }
+
+    /** Check if the route is open
+     *
+     *  @param route ID of route, -1 for no route
+     *  @return True - if the route exists and is open
+     */
+    public boolean isOpen(int route) {
+      return route >= 0 && (this.open[route >> 6] & (1L << route)) != 0;
+    }
+  }
+
+  /**
+   * @param nodes Hashtable of nodes ID and object PathNode
+   * @param routes Routes of the floor plan as pairs of nodes ID, all of them are open
+   */
+  public FloorGraph(Hashtable<Integer, PathNode> nodes, List<Pair<Integer, Integer>> routes) {
+    this.n = nodes.size();
+    this.x = new int[this.n];
+    this.y = new int[this.n];
+    for (PathNode node: nodes.values()) {
+      this.x[node.ID] = node.getX();
+      this.y[node.ID] = node.getY();
+    }
+
+    //skip routes defined more than once
+    Set<Long> known = new HashSet<>();
+    List<int[]> unique = new ArrayList<>();
+    for (Pair<Integer, Integer> route: routes) {
+      int u = route.getKey();
+      int v = route.getValue();
+      if (u == v || !known.add(((long)Math.min(u, v) << 32) | Math.max(u, v)))
+        continue;
+      unique.add(new int[]{u, v});
+    }
+    this.routes = unique.size();
+
+    this.edgeStart = new int[this.n + 1];
+    for (int[] route: unique) {
+      this.edgeStart[route[0] + 1]++;
+      this.edgeStart[route[1] + 1]++;
+    }
+    for (int i = 0; i < this.n; i++)
+      this.edgeStart[i + 1] += this.edgeStart[i];
+
+    this.edgeTarget = new int[2 * this.routes];
+    this.edgeLength = new int[2 * this.routes];
+    this.edgeRoute = new int[2 * this.routes];
+    int[] fill = Arrays.copyOf(this.edgeStart, this.n);
+    for (int r = 0; r < this.routes; r++) {
+      int u = unique.get(r)[0];
+      int v = unique.get(r)[1];
+      int length = distance(u, v);
+      this.edgeTarget[fill[u]] = v;
+      this.edgeLength[fill[u]] = length;
+      this.edgeRoute[fill[u]++] = r;
+      this.edgeTarget[fill[v]] = u;
+      this.edgeLength[fill[v]] = length;
+      this.edgeRoute[fill[v]++] = r;
+    }
+
+    long[] open = new long[(this.routes + 63) >> 6];
+    for (int r = 0; r < this.routes; r++)
+      open[r >> 6] |= 1L << r;
+    this.snapshot = new Snapshot(0, open);
+  }
+
+  /** Get number of nodes
+   *
+   *  @return Number of nodes
+   */
+  public int size() {
+    return this.n;
+  }
+
+  /** Get x coordinate of node
+   *
+   *  @param node Number of node
+   *  @return X coordinate
+   */
+  public int getX(int node) {
+    return this.x[node];
+  }
+
+  /** Get y coordinate of node
+   *
+   *  @param node Number of node
+   *  @return Y coordinate
+   */
+  public int getY(int node) {
+    return this.y[node];
+  }
+
+  /** Get length of the straight way between two nodes, the same as length of
+   *  the route between them
+   *
+   *  @param u Number of first node
+   *  @param v Number of second node
+   *  @return Distance of nodes
+   */
+  public int distance(int u, int v) {
+    int dx = this.x[u] - this.x[v];
+    int dy = this.y[u] - this.y[v];
+    return (int)Math.sqrt(dx * dx + dy * dy);
+  }
+
+  /** Get index of the first edge of node
+   *
+   *  @param node Number of node
+   *  @return Index of edge
+   */
+  public int getEdgeStart(int node) {
+    return this.edgeStart[node];
+  }
+
+  /** Get index after the last edge of node
+   *
+   *  @param node Number of node
+   *  @return Index of edge
+   */
+  public int getEdgeEnd(int node) {
+    return this.edgeStart[node + 1];
+  }
+
+  /** Get target node of edge
+   *
+   *  @param edge Index of edge
+   *  @return Number of node
+   */
+  public int getTarget(int edge) {
+    return this.edgeTarget[edge];
+  }
+
+  /** Get length of edge
+   *
+   *  @param edge Index of edge
+   *  @return Length of edge
+   */
+  public int getLength(int edge) {
+    return this.edgeLength[edge];
+  }
+
+  /** Get route of edge
+   *
+   *  @param edge Index of edge
+   *  @return ID of route
+   */
+  public int getRoute(int edge) {
+    return this.edgeRoute[edge];
+  }
+
+  /** Find the route between two nodes
+   *
+   *  @param u Number of first node
+   *  @param v Number of second node
+   *  @return ID of route, -1 if there is no route between the nodes
+   */
+  public int findRoute(int u, int v) {
+    for (int e = this.edgeStart[u]; e < this.edgeStart[u + 1]; e++) {
+      if (this.edgeTarget[e] == v)
+        return this.edgeRoute[e];
+    }
+    return -1;
+  }
+
+  /** Get the currently open routes
+   *
+   *  @return The latest snapshot
+   */
+  public Snapshot getSnapshot() {
+    return this.snapshot;
+  }
+
+  /** Get nodes which are connected with node by open routes
+   *
+   *  @param node Number of node
+   *  @return List of neighbours
+   */
+  public List<Integer> getNeighbours(int node) {
+    Snapshot current = this.snapshot;
+    List<Integer> neighbours = new ArrayList<>();
+    for (int e = this.edgeStart[node]; e < this.edgeStart[node + 1]; e++) {
+      if (current.isOpen(this.edgeRoute[e]))
+        neighbours.add(this.edgeTarget[e]);
+    }
+    return neighbours;
+  }
+
+  /** Close and open routes and publish the new snapshot. Routes which are not
+   *  in the floor plan are ignored.
+   *
+   *  @param closedRoutes Closed routes as pairs of nodes ID
+   *  @param openedRoutes Opened routes as pairs of nodes ID
+   *  @return The new snapshot
+   */
+  public synchronized Snapshot updateRoutes(List<Pair<Integer, Integer>> closedRoutes,
+          List<Pair<Integer, Integer>> openedRoutes) {
+    long[] open = this.snapshot.open.clone();
+
+    for (Pair<Integer, Integer> route: closedRoutes) {
+      int r = findRoute(route.getKey(), route.getValue());
+      if (r >= 0)
+        open[r >> 6] &= ~(1L << r);
+    }
+    for (Pair<Integer, Integer> route: openedRoutes) {
+      int r = findRoute(route.getKey(), route.getValue());
+      if (r >= 0)
+        open[r >> 6] |= 1L << r;
+    }
+
+    this.snapshot = new Snapshot(this.snapshot.version + 1, open);
+    return this.snapshot;
+  }
+}
@@ -0,0 +1,98 @@
+package ija.project.warehouse;
+
+
+/** Paces the frames of the GUI. The frames are drawn on the pulses of JavaFX,
+ *  so there is never more than one frame in flight. A frame which takes longer
+ *  than a pulse makes the pacer skip the following pulses for as long as it
+ *  took, which leaves the FX thread time for the input and layout. The real
+ *  time of the skipped pulses isn't lost, the next frame simulates it in
+ *  a longer step. Only the real time above MAX_STEP is dropped, the pacer
+ *  counts it as the lag -- how far the simulated time has fallen behind
+ *  the real time.
+ *
+ *  The period of the pulses is measured, so the pacer follows the refresh
+ *  rate of the screen.
+ *
+ * @author Tomas Beranek (xberan46)
+ */
+public class FramePacer {
+  public static final long DEFAULT_PULSE = 1000000000L / 60; // in ns, until the pulses are measured
+  public static final long MAX_STEP = 250000000L; // in ns, the rest is dropped
+  private long pulsePeriod = DEFAULT_PULSE; // in ns, smoothed over the pulses
+  private long lastPulse = 0;
+  private long skipUntil = 0;
+  private long pendingTime = 0; // in ns of real time
+  private long lag = 0; // in ns of real time dropped since the start
+
+
+  /** Decides whether a frame should be drawn on the pulse.
+   *
+   * @param now The time of the pulse in ns.
+   * @return The real time to be simulated in the frame in ns, -1 if the frame
+   *         is dropped.
+   */
+  public long pulse(long now) {
+    if (this.lastPulse == 0) {
+      this.lastPulse = now;
+      return 0;
+    }
+
+    long interval = now - this.lastPulse;
+    this.pendingTime += interval;
+    this.lastPulse = now;
+
+    // a pulse delayed by a long frame isn't a sample of the refresh rate
+    if (interval < 4 * this.pulsePeriod)
+      this.pulsePeriod += (interval - this.pulsePeriod) / 16;
+
+    if (now < this.skipUntil)
+      return -1;
+
+    // a very long frame doesn't make the simulation skip ahead, it falls behind
+    long step = Math.min(this.pendingTime, MAX_STEP);
+    this.lag += this.pendingTime - step;
+    this.pendingTime = 0;
+    return step;
+  }
+
+
+  /** Records the duration of a drawn frame.
+   *
+   * @param start The time when the frame started in ns.
+   * @param end The time when the frame ended in ns.
+   */
+  public void frameDone(long start, long end) {
+    long duration = end - start;
+    if (duration > this.pulsePeriod)
+      this.skipUntil = end + duration;
+  }
+
+
+  /** Starts pacing again after the simulated time jumped (a seek or a reset),
+   *  the time spent by the jump isn't a lag.
+   */
+  public void restart() {
+    this.lastPulse = 0;
+    this.skipUntil = 0;
+    this.pendingTime = 0;
+    this.lag = 0;
+  }
+
+
+  /** Gets how far the simulated time has fallen behind the real time.
+   *
+   * @return The real time dropped since the start in ms.
+   */
+  public long getLag() {
+    return this.lag / 1000000;
+  }
+
+
+  /** Gets the measured period of the pulses.
+   *
+   * @return The period in ns.
+   */
+  public long getPulsePeriod() {
+    return this.pulsePeriod;
+  }
+}
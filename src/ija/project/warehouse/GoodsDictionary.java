@@ -0,0 +1,60 @@
+package ija.project.warehouse;
+
+import java.util.*;
+
+
+/** Assigns each name of goods a dense integer ID (SKU). The simulation works
+ *  only with the SKUs, the names are needed only to display the goods in
+ *  the GUI.
+ *
+ * @author Tomas Beranek (xberan46)
+ */
+public class GoodsDictionary {
+  /** No goods -- the cart only passes through the node. */
+  public static final int NONE = -1;
+  /** The cart dispenses all the goods at the node. */
+  public static final int DISPENSE = -2;
+
+  private Hashtable<String, Integer> skus = new Hashtable<>();
+  private ArrayList<String> names = new ArrayList<>();
+
+
+  /** Gets the SKU of the goods, a new SKU is assigned to an unknown name.
+   *
+   * @param name The name of the goods.
+   * @return The SKU of the goods.
+   */
+  public int getSKU(String name) {
+    Integer sku = this.skus.get(name);
+
+    if (sku == null) {
+      sku = this.names.size();
+      this.skus.put(name, sku);
+      this.names.add(name);
+    }
+
+    return sku;
+  }
+
+
+  /** Gets the name of the goods.
+   *
+   * @param sku The SKU of the goods.
+   * @return The name of the goods, null if there is no such SKU.
+   */
+  public String getName(int sku) {
+    if (sku < 0 || sku >= this.names.size())
+      return null;
+
+    return this.names.get(sku);
+  }
+
+
+  /** Gets the number of known SKUs, all the SKUs are lower than this number.
+   *
+   * @return The number of known SKUs.
+   */
+  public int size() {
+    return this.names.size();
+  }
+}
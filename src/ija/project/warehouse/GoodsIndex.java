@@ -0,0 +1,68 @@
+package ija.project.warehouse;
+
+import java.util.*;
+
+
+/** Indexes the shelves by the goods they contain -- all the shelves with
+ *  the given goods and the shelves with the given goods accessible from
+ *  the given node. The index is shared by the path finder and the carts,
+ *  so they don't have to search through all the shelves in the warehouse.
+ *
+ * @author Tomas Beranek (xberan46)
+ */
+public class GoodsIndex {
+  private static final List<Shelf> NO_SHELVES = Collections.emptyList();
+  private Hashtable<Integer, List<Shelf>> shelvesByGoods = new Hashtable<>();
+  private Hashtable<Integer, Hashtable<Integer, List<Shelf>>> shelvesByNode = new Hashtable<>();
+
+
+  /**
+   * @param shelves All the shelves with already loaded goods.
+   */
+  public GoodsIndex(Hashtable<Integer, Shelf> shelves) {
+    for (Integer shelfID : shelves.keySet()) {
+      addShelf(shelves.get(shelfID));
+    }
+  }
+
+
+  /** Adds a shelf to the index. A shelf without goods is ignored.
+   *
+   * @param shelf The shelf to be added.
+   */
+  public void addShelf(Shelf shelf) {
+    int sku = shelf.getGoods();
+    if (sku == GoodsDictionary.NONE)
+      return;
+
+    this.shelvesByGoods.computeIfAbsent(sku, k -> new ArrayList<>()).add(shelf);
+    this.shelvesByNode.computeIfAbsent(shelf.getNode(), k -> new Hashtable<>())
+                      .computeIfAbsent(sku, k -> new ArrayList<>()).add(shelf);
+  }
+
+
+  /** Gets all the shelves which contain the given goods.
+   *
+   * @param sku The SKU of the goods.
+   * @return The list of shelves, empty if there is no such shelf.
+   */
+  public List<Shelf> getShelves(int sku) {
+    return this.shelvesByGoods.getOrDefault(sku, NO_SHELVES);
+  }
+
+
+  /** Gets the shelves accessible from the given node which contain the given
+   *  goods.
+   *
+   * @param nodeID The ID of the node.
+   * @param sku The SKU of the goods.
+   * @return The list of shelves, empty if there is no such shelf.
+   */
+  public List<Shelf> getShelves(int nodeID, int sku) {
+    Hashtable<Integer, List<Shelf>> nodeShelves = this.shelvesByNode.get(nodeID);
+    if (nodeShelves == null)
+      return NO_SHELVES;
+
+    return nodeShelves.getOrDefault(sku, NO_SHELVES);
+  }
+}
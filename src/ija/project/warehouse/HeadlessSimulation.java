@@ -0,0 +1,105 @@
+package ija.project.warehouse;
+
+import java.util.*;
+
+import org.json.simple.JSONObject;
+
+
+/** Runs the warehouse simulation without a GUI as fast as the CPU allows.
+ *  The simulation jumps from one event to the next one and ends when all
+ *  the orders are processed or when the given time limit is reached. Prints
+ *  the statistics of the processed orders.
+ *
+ *  Usage: HeadlessSimulation warehouse.json goods.json orders.json
+ *                            [--until ms] [--capacity quantity]
+ *
+ * @author Tomas Beranek (xberan46)
+ */
+public class HeadlessSimulation {
+
+  /** The entry point of the headless simulation.
+   *
+   * @param args Program arguments.
+   */
+  public static void main(String args[]) {
+    if (args.length < 3) {
+      System.err.println("Usage: HeadlessSimulation warehouse.json goods.json orders.json [--until ms] [--capacity quantity]");
+      System.exit(1);
+    }
+
+    Long until = Long.MAX_VALUE;
+    int cartCapacity = 500;
+
+    try {
+      for (int i = 3; i < args.length - 1; i += 2) {
+        if (args[i].equals("--until"))
+          until = Long.parseLong(args[i+1]);
+        else if (args[i].equals("--capacity"))
+          cartCapacity = Integer.parseInt(args[i+1]);
+      }
+    } catch(NumberFormatException e) {
+      System.err.println("ERROR: invalid numeric argument");
+      System.exit(1);
+    }
+
+    WarehouseLoader loader = new WarehouseLoader();
+    List<JSONObject> data = loader.loadJSONData(Arrays.asList(args[0], args[1]));
+
+    Hashtable<Integer, PathNode> nodes = loader.getAllNodes(data.get(0));
+    FloorGraph graph = loader.connectRoutes(nodes, loader.getAllRoutes(data.get(0)));
+    Hashtable<Integer, Shelf> shelves = loader.getAllShelves(data.get(0));
+    GoodsIndex goodsIndex = loader.loadGoodsToShelfs(shelves, loader.getAllGoods(data.get(1)));
+    OrderStream orders = loader.getOrderStream(args[2]);
+    String routing = loader.getRouting(data.get(0));
+    long improveTime = loader.getImproveTime(data.get(0));
+    long waveWindow = loader.getWaveWindow(data.get(0));
+    int fleetSize = loader.getFleetSize(data.get(0));
+    String traffic = loader.getTraffic(data.get(0));
+
+    long startTime = System.nanoTime();
+    SimulationEngine engine = new SimulationEngine(graph, shelves, goodsIndex, orders, cartCapacity, routing);
+    engine.setImproveTime(improveTime);
+    engine.setWaveWindow(waveWindow);
+    engine.setFleetSize(fleetSize);
+    engine.setTraffic(traffic);
+
+    engine.run(until);
+
+    long wallTime = (System.nanoTime() - startTime) / 1000000;
+    printStatistics(engine, wallTime);
+  }
+
+
+  /** Prints the statistics of the processed orders. Only the orders read
+   *  before the end of the simulation are listed.
+   *
+   * @param engine The finished simulation.
+   * @param wallTime The real time the simulation took in ms.
+   */
+  private static void printStatistics(SimulationEngine engine, long wallTime) {
+    OrderHistory history = engine.getHistory();
+    int count = engine.getOrderCount();
+
+    // the finished orders are released, only their records are kept
+    int[] records = new int[count];
+    Arrays.fill(records, -1);
+    for (int i = 0; i < history.size(); i++) {
+      records[history.getIndex(i)] = i;
+    }
+
+    for (int i = 0; i < count; i++) {
+      if (records[i] >= 0) {
+        System.out.printf("order %d: start %d ms, end %d ms%n", i, history.getStartEpochTime(records[i]), history.getEndEpochTime(records[i]));
+      } else {
+        System.out.printf("order %d: start %d ms, unfinished%n", i, engine.getOrder(i).getStartEpochTime());
+      }
+    }
+
+    System.out.printf("finished orders: %d/%d%n", history.size(), count);
+    System.out.printf("carts: %d%n", engine.getCarts().size());
+    if (history.size() > 0)
+      System.out.printf("average order duration: %d ms%n", history.getAverageDuration());
+    System.out.printf("simulation time: %d ms%n", engine.getCurrentEpochTime());
+    System.out.printf("wall time: %d ms%n", wallTime);
+  }
+}
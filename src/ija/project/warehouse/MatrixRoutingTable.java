@@ -0,0 +1,811 @@
+package ija.project.warehouse;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+
+/** Represent shortest paths between all pairs of nodes in matrixes calculated
+ *  by Floyd-Warshall. Fast queries, but the memory grows with square of
+ *  the number of nodes.
+ *
+ *  The matrixes are kept off the heap with cells as narrow as the floor plan
+ *  allows, so they don't slow down the garbage collector. They are calculated
+ *  right into a cache file named by a hash of the floor plan and its open
+ *  routes, the next start with the same floor plan only maps the file instead
+ *  of running Floyd-Warshall again. The cache directory belongs to the user
+ *  and can't be written by others, a file is used only if its checksum
+ *  matches. The least recently used files are deleted when the cache grows
+ *  over its limit.
+ *
+ * @author Simon Slobodnik (xslobo06)
+ */
+public class MatrixRoutingTable implements RoutingTable {
+  private static final int BLOCK_SIZE = 64; //size of tile in blocked Floyd-Warshall
+  private static final int CACHE_MAGIC = 0x57485254; //"WHRT" in native byte order
+  private static final int CACHE_VERSION = 3;
+  private static final int CACHE_HEADER = 8 * Integer.BYTES; //magic, version, n, cells, checksum, unused
+  private static final long STALE_TEMPORARY = 24 * 3600 * 1000; //age of left temporary files to delete in ms
+  private static File cacheDirectory = new File(System.getProperty("java.io.tmpdir"),
+                                                "warehouse-routing-" + System.getProperty("user.name"));
+  private static long cacheLimit = 1L << 30; //max size of all cache files in bytes
+  /** Max number of nodes, both matrixes must fit into buffers of at most 2 GB
+   *  even with 32-bit cells */
+  public static final int MAX_NODES = (int)Math.sqrt(Integer.MAX_VALUE / Integer.BYTES);
+  private int n; //number of nodes
+  private int distanceCell; //bytes of a cell of matrix distance
+  private int nextCell; //bytes of a cell of matrix next
+  private RouteMatrix distance; //matrix with distances between nodes
+  private RouteMatrix next; //matrix with best way between nodes
+
+  /**
+   * @param graph Routes between nodes of the floor plan
+   */
+  public MatrixRoutingTable(FloorGraph graph) {
+    if (graph.size() > MAX_NODES)
+      throw new IllegalArgumentException("routing matrixes support at most " + MAX_NODES + " nodes, the floor plan has " + graph.size());
+    this.n = graph.size();
+    this.nextCell = (this.n <= Short.MAX_VALUE) ? Short.BYTES : Integer.BYTES;
+    setGraph(graph);
+  }
+
+  /** Check if the matrixes of the floor plan fit into the memory buffers
+   *
+   *  @param graph Routes between nodes of the floor plan
+   *  @return true if the floor plan has at most MAX_NODES nodes
+   */
+  public static boolean fits(FloorGraph graph){
+    return graph.size() <= MAX_NODES;
+  }
+
+  /** Get upper bound of length of any shortest path by open routes. Dijkstra
+   *  runs from one node of each component, any two nodes of the component
+   *  are at most twice its eccentricity apart.
+   *
+   *  @param graph Routes between nodes of the floor plan
+   *  @param snapshot Currently open routes
+   *  @return Upper bound of the distances
+   */
+  private long distanceBound(FloorGraph graph, FloorGraph.Snapshot snapshot){
+    long[] dist = new long[this.n];
+    Arrays.fill(dist, Long.MAX_VALUE);
+    PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+    long bound = 0;
+
+    for (int root = 0; root < this.n; root++) {
+      if (dist[root] != Long.MAX_VALUE)  //already in a component
+        continue;
+
+      long eccentricity = 0;
+      dist[root] = 0;
+      queue.add(new long[]{0, root});
+      while (!queue.isEmpty()) {
+        long[] item = queue.poll();
+        int u = (int)item[1];
+        if (item[0] > dist[u])
+          continue;
+        eccentricity = Math.max(eccentricity, dist[u]);
+        for (int edge = graph.getEdgeStart(u); edge < graph.getEdgeEnd(u); edge++) {
+          int v = graph.getTarget(edge);
+          long alt = dist[u] + graph.getLength(edge);
+          if (snapshot.isOpen(graph.getRoute(edge)) && alt < dist[v]) {
+            dist[v] = alt;
+            queue.add(new long[]{alt, v});
+          }
+        }
+      }
+      bound = Math.max(bound, 2 * eccentricity);
+    }
+    return bound;
+  }
+
+  /** Set matrixes to the given memory
+   *
+   *  @param distanceMemory Memory of matrix distance, n*n cells
+   *  @param nextMemory Memory of matrix next, n*n cells
+   */
+  private void setMatrixes(ByteBuffer distanceMemory, ByteBuffer nextMemory){
+    if (this.distanceCell == Character.BYTES)
+      this.distance = new RouteMatrix.Distances16(distanceMemory, this.n);
+    else
+      this.distance = new RouteMatrix.Ints32(distanceMemory, this.n);
+
+    if (this.nextCell == Short.BYTES)
+      this.next = new RouteMatrix.Nodes16(nextMemory, this.n);
+    else
+      this.next = new RouteMatrix.Ints32(nextMemory, this.n);
+  }
+
+  /** Set default matrix for Floyd-Warhall processing
+    */
+  private void defaultMatrix(){
+    this.distance.fill(Integer.MAX_VALUE);
+    this.next.fill(-1);
+    for (int i = 0; i < this.n; i++) {
+      this.distance.set(i, i, 0);
+      this.next.set(i, i, i);
+    }
+  }
+
+  /** Calculate minimal distances between nodes by blocked (tiled) Flayd-Warshall
+   *  method. For each diagonal tile the tile itself is processed first, then
+   *  the tiles in its row and column and at last all the remaining tiles, each
+   *  phase in parallel on the ForkJoinPool. The matrix next is then filled
+   *  from the final distances.
+   *
+   *  @param graph Routes between nodes of the floor plan
+   *  @param snapshot Currently open routes
+   */
+  private void floydWarshall(FloorGraph graph, FloorGraph.Snapshot snapshot) {
+    int blocks = (this.n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+    for (int kb = 0; kb < blocks; kb++) {
+      final int k = kb;
+      updateBlock(k, k, k, new int[3][BLOCK_SIZE * BLOCK_SIZE]);
+
+      List<ForkJoinTask<?>> tasks = new ArrayList<>();
+      for (int b = 0; b < blocks; b++) {
+        if (b == k)
+          continue;
+        final int other = b;
+        tasks.add(ForkJoinTask.adapt(() -> updateBlock(k, other, k, new int[3][BLOCK_SIZE * BLOCK_SIZE])));
+        tasks.add(ForkJoinTask.adapt(() -> updateBlock(other, k, k, new int[3][BLOCK_SIZE * BLOCK_SIZE])));
+      }
+      ForkJoinTask.invokeAll(tasks);
+
+      tasks.clear();
+      for (int ib = 0; ib < blocks; ib++) {
+        if (ib == k)
+          continue;
+        final int row = ib;
+        tasks.add(ForkJoinTask.adapt(() -> {
+          int[][] tiles = new int[3][BLOCK_SIZE * BLOCK_SIZE];
+          for (int jb = 0; jb < blocks; jb++) {
+            if (jb != k)
+              updateBlock(row, jb, k, tiles);
+          }
+        }));
+      }
+      ForkJoinTask.invokeAll(tasks);
+    }
+
+    //compact open edges of each node for the matrix next
+    int[] adjStart = new int[this.n + 1];
+    int[] adjNode = new int[graph.getEdgeStart(this.n)];
+    int[] adjLength = new int[graph.getEdgeStart(this.n)];
+    for (int i = 0; i < this.n; i++) {
+      int e = adjStart[i];
+      for (int edge = graph.getEdgeStart(i); edge < graph.getEdgeEnd(i); edge++) {
+        if (!snapshot.isOpen(graph.getRoute(edge)))
+          continue;
+        adjNode[e] = graph.getTarget(edge);
+        adjLength[e++] = graph.getLength(edge);
+      }
+      adjStart[i + 1] = e;
+    }
+
+    List<ForkJoinTask<?>> tasks = new ArrayList<>();
+    for (int ib = 0; ib < blocks; ib++) {
+      final int row = ib;
+      tasks.add(ForkJoinTask.adapt(() -> setNextBlock(row, adjStart, adjNode, adjLength)));
+    }
+    ForkJoinTask.invokeAll(tasks);
+  }
+
+  /** Shorten all paths in tile (ib, jb) through nodes of tile kb. The tiles
+   *  are copied from the matrix to arrays and the updated one back, so
+   *  the inner loop doesn't access the matrix itself.
+   *
+   *  @param ib Row of tile
+   *  @param jb Column of tile
+   *  @param kb Tile of nodes through which paths go
+   *  @param tiles Three arrays of BLOCK_SIZE*BLOCK_SIZE cells for the tiles
+   */
+  private void updateBlock(int ib, int jb, int kb, int[][] tiles){
+    int[] ijTile = loadTile(ib, jb, tiles[0]);
+    int[] ikTile = (jb == kb) ? ijTile : loadTile(ib, kb, tiles[1]);  //the same tile is updated in place
+    int[] kjTile = (ib == kb) ? ijTile : loadTile(kb, jb, tiles[2]);
+    int kSize = Math.min(this.n - kb * BLOCK_SIZE, BLOCK_SIZE);
+    int iSize = Math.min(this.n - ib * BLOCK_SIZE, BLOCK_SIZE);
+    int jSize = Math.min(this.n - jb * BLOCK_SIZE, BLOCK_SIZE);
+
+    for (int k = 0; k < kSize; k++) {
+      int kRow = k * BLOCK_SIZE;
+      for (int i = 0; i < iSize; i++) {
+        int iRow = i * BLOCK_SIZE;
+        int ik = ikTile[iRow + k];
+        if (ik == Integer.MAX_VALUE)
+          continue;
+        for (int j = 0; j < jSize; j++) {
+          int kj = kjTile[kRow + j];
+          if (kj == Integer.MAX_VALUE)
+            continue;
+          if (ijTile[iRow + j] > ik + kj)
+            ijTile[iRow + j] = ik + kj;
+        }
+      }
+    }
+
+    storeTile(ib, jb, ijTile);
+  }
+
+  /** Copy tile of matrix distance to array, row by row
+   *
+   *  @param ib Row of tile
+   *  @param jb Column of tile
+   *  @param tile Array of BLOCK_SIZE*BLOCK_SIZE cells
+   *  @return The filled array
+   */
+  private int[] loadTile(int ib, int jb, int[] tile){
+    int iEnd = Math.min(this.n, (ib + 1) * BLOCK_SIZE);
+    int jEnd = Math.min(this.n, (jb + 1) * BLOCK_SIZE);
+    for (int i = ib * BLOCK_SIZE; i < iEnd; i++) {
+      int iRow = (i - ib * BLOCK_SIZE) * BLOCK_SIZE - jb * BLOCK_SIZE;
+      for (int j = jb * BLOCK_SIZE; j < jEnd; j++)
+        tile[iRow + j] = this.distance.get(i, j);
+    }
+    return tile;
+  }
+
+  /** Copy array back to tile of matrix distance
+   *
+   *  @param ib Row of tile
+   *  @param jb Column of tile
+   *  @param tile Array of BLOCK_SIZE*BLOCK_SIZE cells
+   */
+  private void storeTile(int ib, int jb, int[] tile){
+    int iEnd = Math.min(this.n, (ib + 1) * BLOCK_SIZE);
+    int jEnd = Math.min(this.n, (jb + 1) * BLOCK_SIZE);
+    for (int i = ib * BLOCK_SIZE; i < iEnd; i++) {
+      int iRow = (i - ib * BLOCK_SIZE) * BLOCK_SIZE - jb * BLOCK_SIZE;
+      for (int j = jb * BLOCK_SIZE; j < jEnd; j++)
+        this.distance.set(i, j, tile[iRow + j]);
+    }
+  }
+
+  /** Fill rows of tiles ib in matrix next from the final distances.
+   *
+   *  The simple triple loop of Floyd-Warshall sets next[i][j] to next[i][k] for
+   *  the last time when k is the lowest possible highest node on a shortest
+   *  path from i to j. Among the paths with the same length is then chosen
+   *  the same one as the triple loop would choose, no matter in which order
+   *  the tiles were processed.
+   *
+   *  @param ib Row of tiles
+   *  @param adjStart Index of the first neighbour of each node in adjNode
+   *  @param adjNode Neighbours of all nodes
+   *  @param adjLength Lengths of edges to the neighbours
+   */
+  private void setNextBlock(int ib, int[] adjStart, int[] adjNode, int[] adjLength){
+    int n = this.n;
+    int[] highest = new int[n]; //the lowest highest node on a shortest path
+    long[] order = new long[n];
+    int[] stack = new int[n];
+    int[] distance = new int[n]; //row i of matrix distance
+    int[] next = new int[n]; //row i of matrix next
+    int iEnd = Math.min(n, (ib + 1) * BLOCK_SIZE);
+
+    for (int i = ib * BLOCK_SIZE; i < iEnd; i++) {
+      for (int j = 0; j < n; j++)
+        distance[j] = this.distance.get(i, j);
+
+      //nodes sorted by distance from node i, the predecessors come first
+      int reachable = 0;
+      for (int j = 0; j < n; j++) {
+        if (distance[j] != Integer.MAX_VALUE)
+          order[reachable++] = ((long)distance[j] << 32) | j;
+      }
+      Arrays.sort(order, 0, reachable);
+
+      boolean changed = true;
+      Arrays.fill(highest, Integer.MAX_VALUE);
+      highest[i] = -1;
+      while (changed) {  //repeats only because of edges with zero length
+        changed = false;
+        for (int o = 0; o < reachable; o++) {
+          int j = (int)order[o];
+          if (j == i)
+            continue;
+          for (int e = adjStart[j]; e < adjStart[j + 1]; e++) {
+            int x = adjNode[e];
+            if (distance[x] == Integer.MAX_VALUE || distance[x] + adjLength[e] != distance[j])
+              continue;  //edge x -> j isn't on a shortest path
+            int h = (x == i) ? -1 : Math.max(highest[x], x);
+            if (h < highest[j]) {
+              highest[j] = h;
+              changed = changed || distance[x] == distance[j];
+            }
+          }
+        }
+      }
+
+      for (int j = 0; j < n; j++)
+        next[j] = (distance[j] == Integer.MAX_VALUE) ? -1 : -2; //-2 not resolved yet
+      for (int j = 0; j < n; j++) {
+        //next node to j is the next node to the highest node on path to j
+        int top = 0;
+        int v = j;
+        while (next[v] == -2 && highest[v] >= 0) {
+          stack[top++] = v;
+          v = highest[v];
+        }
+        int hop = (next[v] == -2) ? v : next[v];
+        next[v] = hop;
+        while (top > 0)
+          next[stack[--top]] = hop;
+      }
+
+      for (int j = 0; j < n; j++)
+        this.next.set(i, j, next[j]);
+    }
+  }
+
+  /** Set connection between actual node and his neighbours by open routes
+    * @param graph Routes between nodes of the floor plan
+    * @param snapshot Currently open routes
+    * @param number number of actual node
+    */
+  private void createAllEdges(FloorGraph graph, FloorGraph.Snapshot snapshot, int number){
+
+    for(int edge = graph.getEdgeStart(number); edge < graph.getEdgeEnd(number); edge++){
+      int neighbour = graph.getTarget(edge);
+      if(snapshot.isOpen(graph.getRoute(edge)) && this.distance.get(number, neighbour) == Integer.MAX_VALUE){  //if distance between nodes is not set
+        //set edge
+        createEdge(number, neighbour, graph.getLength(edge));
+      }
+    }
+  }
+
+  /** Insert new edge between nodes to matrix distance and matrix next
+   *
+   * @param u Number of first node
+   * @param v Number of second node
+   * @param distance Distance between given nodes
+   */
+  private void createEdge(int u, int v, int distance){
+    //all edges are double-sided
+    this.distance.set(u, v, distance);
+    this.distance.set(v, u, distance);
+    this.next.set(u, v, v);
+    this.next.set(v, u, u);
+  }
+
+  /** Call all functions for setting distance matrix and next matrix
+   *
+   *  @param graph Routes between nodes of the floor plan
+   */
+  @Override
+  public void setGraph(FloorGraph graph){
+    FloorGraph.Snapshot snapshot = graph.getSnapshot();
+    this.distanceCell = (distanceBound(graph, snapshot) < Character.MAX_VALUE) ? Character.BYTES : Integer.BYTES;
+    File cache = (CACHE_HEADER + matrixSize() > cacheLimit) ? null : cacheFile(graph, snapshot);
+    if (cache != null && loadCache(cache))
+      return;
+
+    //calculate right into a new cache file, or into direct memory without it
+    File temporary = (cache == null) ? null : createCache(cache);
+    if (temporary == null)
+      setMatrixes(ByteBuffer.allocateDirect(Math.toIntExact((long)this.n * this.n * this.distanceCell)),
+                  ByteBuffer.allocateDirect(Math.toIntExact((long)this.n * this.n * this.nextCell)));
+
+    defaultMatrix();
+    for(int nodeID = 0; nodeID < this.n; nodeID++){  //every component of the floor plan
+      createAllEdges(graph, snapshot, nodeID);
+    }
+    floydWarshall(graph, snapshot);
+
+    if (temporary != null)
+      publishCache(temporary, cache);
+  }
+
+  /** Set directory of cache files with calculated matrixes
+   *
+   *  @param directory Directory of cache files, null turns the cache off
+   */
+  public static void setCacheDirectory(File directory){
+    cacheDirectory = directory;
+  }
+
+  /** Set max size of all cache files, the least recently used files are
+   *  deleted above it
+   *
+   *  @param bytes Max size in bytes
+   */
+  public static void setCacheLimit(long bytes){
+    cacheLimit = bytes;
+  }
+
+  /** Get size of both matrixes
+   *
+   *  @return Size in bytes
+   */
+  private long matrixSize(){
+    return (long)this.n * this.n * (this.distanceCell + this.nextCell);
+  }
+
+  /** Get cache file of the floor plan, named by SHA-256 of the nodes, their
+   *  coordinates and the lengths and states of all routes
+   *
+   *  @param graph Routes between nodes of the floor plan
+   *  @param snapshot Currently open routes
+   *  @return Cache file, null if the cache is turned off
+   */
+  private File cacheFile(FloorGraph graph, FloorGraph.Snapshot snapshot){
+    if (cacheDirectory == null || !privateDirectory(cacheDirectory.toPath()))
+      return null;
+
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      return null;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(4 * Integer.BYTES);
+    buffer.putInt(CACHE_VERSION).putInt(this.n).flip();
+    digest.update(buffer);
+    for (int i = 0; i < this.n; i++) {
+      buffer.clear();
+      buffer.putInt(graph.getX(i)).putInt(graph.getY(i)).flip();
+      digest.update(buffer);
+      for (int edge = graph.getEdgeStart(i); edge < graph.getEdgeEnd(i); edge++) {
+        buffer.clear();
+        buffer.putInt(graph.getTarget(edge)).putInt(graph.getLength(edge));
+        buffer.putInt(snapshot.isOpen(graph.getRoute(edge)) ? 1 : 0).flip();
+        digest.update(buffer);
+      }
+      buffer.clear();
+      buffer.putInt(-1).flip();  //end of the edges of node i
+      digest.update(buffer);
+    }
+
+    StringBuilder name = new StringBuilder();
+    for (byte b : digest.digest())
+      name.append(String.format("%02x", b));
+    return new File(cacheDirectory, name.append(".bin").toString());
+  }
+
+  /** Create the cache directory accessible only by the user, or check that
+   *  the existing one is owned by the user and others can't write to it
+   *
+   *  @param directory Cache directory
+   *  @return true if the directory can be trusted
+   */
+  private static boolean privateDirectory(Path directory){
+    try {
+      if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix"))
+          Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        else
+          Files.createDirectories(directory);
+      }
+      if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS))
+        return false;
+
+      UserPrincipal user = directory.getFileSystem().getUserPrincipalLookupService()
+                                    .lookupPrincipalByName(System.getProperty("user.name"));
+      if (!user.equals(Files.getOwner(directory, LinkOption.NOFOLLOW_LINKS)))
+        return false;
+
+      PosixFileAttributeView view = Files.getFileAttributeView(directory, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+      if (view == null)
+        return true;
+      Set<PosixFilePermission> permissions = view.readAttributes().permissions();
+      return !permissions.contains(PosixFilePermission.GROUP_WRITE) && !permissions.contains(PosixFilePermission.OTHERS_WRITE);
+    } catch (IOException | UnsupportedOperationException | SecurityException e) {
+      return false;
+    }
+  }
+
+  /** Get checksum of calculated matrixes
+   *
+   *  @param distanceMemory Memory of matrix distance
+   *  @param nextMemory Memory of matrix next
+   *  @return CRC32 of both matrixes
+   */
+  private static int checksum(ByteBuffer distanceMemory, ByteBuffer nextMemory){
+    CRC32 crc = new CRC32();
+    crc.update(distanceMemory.duplicate());
+    crc.update(nextMemory.duplicate());
+    return (int)crc.getValue();
+  }
+
+  /** Map matrixes from cache file privately, the changes of routes don't
+   *  change the file
+   *
+   *  @param cache Cache file
+   *  @return true if the matrixes were mapped, false if the file is missing
+   *          or doesn't match the floor plan
+   */
+  private boolean loadCache(File cache){
+    long distanceSize = (long)this.n * this.n * this.distanceCell;
+    long nextSize = (long)this.n * this.n * this.nextCell;
+    try (FileChannel channel = FileChannel.open(cache.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      if (channel.size() != CACHE_HEADER + distanceSize + nextSize)
+        return false;
+
+      IntBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, CACHE_HEADER).order(ByteOrder.nativeOrder()).asIntBuffer();
+      if (header.get(0) != CACHE_MAGIC || header.get(1) != CACHE_VERSION || header.get(2) != this.n
+          || header.get(3) != (this.distanceCell << 8 | this.nextCell))
+        return false;
+
+      //damaged matrix next could send getPath out of the matrix or around in a loop
+      ByteBuffer distanceMemory = channel.map(FileChannel.MapMode.PRIVATE, CACHE_HEADER, distanceSize);
+      ByteBuffer nextMemory = channel.map(FileChannel.MapMode.PRIVATE, CACHE_HEADER + distanceSize, nextSize);
+      if (header.get(4) != checksum(distanceMemory, nextMemory))
+        return false;
+
+      setMatrixes(distanceMemory, nextMemory);
+      cache.setLastModified(System.currentTimeMillis());  //recently used
+      return true;
+    } catch (IOException | UnsupportedOperationException e) {
+      return false;
+    }
+  }
+
+  /** Create cache file under temporary name and map matrixes to it, so they
+   *  are calculated right into the file
+   *
+   *  @param cache Cache file
+   *  @return Temporary file, null if it can't be created
+   */
+  private File createCache(File cache){
+    long distanceSize = (long)this.n * this.n * this.distanceCell;
+    long nextSize = (long)this.n * this.n * this.nextCell;
+    File temporary = null;
+    try {
+      temporary = File.createTempFile("routing", ".tmp", cache.getParentFile());
+      try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        IntBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, CACHE_HEADER).order(ByteOrder.nativeOrder()).asIntBuffer();
+        header.put(CACHE_MAGIC).put(CACHE_VERSION).put(this.n).put(this.distanceCell << 8 | this.nextCell);
+        setMatrixes(channel.map(FileChannel.MapMode.READ_WRITE, CACHE_HEADER, distanceSize),
+                    channel.map(FileChannel.MapMode.READ_WRITE, CACHE_HEADER + distanceSize, nextSize));
+      }
+      return temporary;
+    } catch (IOException | UnsupportedOperationException e) {
+      if (temporary != null)
+        temporary.delete();
+      return null;
+    }
+  }
+
+  /** Write checksum of the calculated matrixes and rename temporary file to
+   *  cache file, so no other run can map a half-written file, and map it
+   *  again privately. Failure only means the next run calculates the matrixes
+   *  again.
+   *
+   *  @param temporary Temporary file with calculated matrixes
+   *  @param cache Cache file
+   */
+  private void publishCache(File temporary, File cache){
+    long distanceSize = (long)this.n * this.n * this.distanceCell;
+    long nextSize = (long)this.n * this.n * this.nextCell;
+    try {
+      try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        int crc = checksum(channel.map(FileChannel.MapMode.READ_ONLY, CACHE_HEADER, distanceSize),
+                           channel.map(FileChannel.MapMode.READ_ONLY, CACHE_HEADER + distanceSize, nextSize));
+        channel.map(FileChannel.MapMode.READ_WRITE, 0, CACHE_HEADER).order(ByteOrder.nativeOrder()).asIntBuffer().put(4, crc);
+      }
+      Files.move(temporary.toPath(), cache.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      evictCache(cache);
+      if (!loadCache(cache))
+        Files.deleteIfExists(cache.toPath());  //the changes of routes would be written to it
+    } catch (IOException | UnsupportedOperationException e) {
+      //nothing to do, the cache is only an optimization
+      temporary.delete();
+    }
+  }
+
+  /** Delete the least recently used cache files until all of them fit into
+   *  the limit, and temporary files left by crashed runs
+   *
+   *  @param kept Cache file which is never deleted
+   */
+  private static void evictCache(File kept){
+    File[] files = kept.getParentFile().listFiles();
+    if (files == null)
+      return;
+
+    long now = System.currentTimeMillis();
+    long total = 0;
+    List<File> caches = new ArrayList<>();
+    for (File file : files) {
+      if (file.getName().endsWith(".bin")) {
+        caches.add(file);
+        total += file.length();
+      } else if (file.getName().endsWith(".tmp") && now - file.lastModified() > STALE_TEMPORARY) {
+        file.delete();
+      }
+    }
+
+    caches.sort(Comparator.comparingLong(File::lastModified));
+    for (File file : caches) {
+      if (total <= cacheLimit)
+        break;
+      long size = file.length();
+      if (!file.equals(kept) && file.delete())
+        total -= size;
+    }
+  }
+
+  /** Get length of the shortest path between two nodes
+   *
+   *  @param u Number of start node
+   *  @param v Number of target node
+   *  @return Length of the path, Integer.MAX_VALUE if there is no path
+   */
+  @Override
+  public int getDistance(int u, int v){
+    return this.distance.get(u, v);
+  }
+
+  /** Get the shortest path between two nodes from matrix next, without first
+   *  and last node
+   *
+   *  @param u Number of start node
+   *  @param v Number of target node
+   *  @return Numbers of nodes on the path, null if there is no path
+   */
+  @Override
+  public List<Integer> getPath(int u, int v){
+    if (this.next.get(u, v) == -1)  //no path between nodes
+        return null;
+
+    List<Integer> path = new ArrayList<>();
+    while (u != v){
+        u = this.next.get(u, v);
+        if(u == v)  //final node
+          break;
+        path.add(u);
+    }
+
+    return path;
+  }
+
+  /** Update distance matrix and next matrix after some routes were closed or
+   *  opened, without running whole Floyd-Warshall again. Only the rows of nodes
+   *  whose shortest paths used a closed route are recalculated (Dijkstra), each
+   *  opened route is then inserted in O(n^2).
+   *
+   *  @param graph Routes between nodes with already updated snapshot
+   *  @param removedEdges Closed routes as pairs of nodes ID
+   *  @param addedEdges Opened routes as pairs of nodes ID
+   */
+  @Override
+  public void updateEdges(FloorGraph graph,
+          List<Pair<Integer, Integer>> removedEdges,
+          List<Pair<Integer, Integer>> addedEdges){
+    //find rows affected by removed edges, distances must be still the old ones
+    boolean[] affected = new boolean[this.n];
+    for(Pair<Integer, Integer> edge: removedEdges){
+      int u = edge.getKey();
+      int v = edge.getValue();
+      int w = graph.distance(u, v);
+      markAffectedRows(affected, u, v, w);
+      markAffectedRows(affected, v, u, w);
+    }
+
+    FloorGraph.Snapshot snapshot = graph.getSnapshot();
+    for(int i = 0; i < affected.length; i++){
+      if(affected[i] && !recalculateRow(graph, snapshot, i)){
+        setGraph(graph);  //longer paths need wider cells
+        return;
+      }
+    }
+
+    for(Pair<Integer, Integer> edge: addedEdges){
+      int u = edge.getKey();
+      int v = edge.getValue();
+      int w = graph.distance(u, v);
+      if(!insertEdge(u, v, w) || !insertEdge(v, u, w)){
+        setGraph(graph);  //joined parts of the floor plan have longer paths
+        return;
+      }
+    }
+  }
+
+  /** Mark all nodes which have some shortest path going through edge u -> v
+   *
+   *  @param affected Marked nodes (rows of matrix)
+   *  @param u Number of first node of edge
+   *  @param v Number of second node of edge
+   *  @param w Length of edge
+   */
+  private void markAffectedRows(boolean[] affected, int u, int v, int w){
+    for(int i = 0; i < this.n; i++){
+      if(affected[i] || this.distance.get(i, u) == Integer.MAX_VALUE)
+        continue;
+      long toEdge = (long)this.distance.get(i, u) + w;
+      for(int j = 0; j < this.n; j++){
+        if(this.distance.get(v, j) == Integer.MAX_VALUE)
+          continue;
+        if(toEdge + this.distance.get(v, j) == this.distance.get(i, j)){  //shortest path uses this edge
+          affected[i] = true;
+          affected[j] = true;
+          break;
+        }
+      }
+    }
+  }
+
+  /** Recalculate single row of distance matrix and next matrix by Dijkstra
+   *
+   *  @param graph Routes between nodes of the floor plan
+   *  @param snapshot Currently open routes
+   *  @param source Number of node (row)
+   *  @return false if some distance doesn't fit into the cells, the row isn't changed then
+   */
+  private boolean recalculateRow(FloorGraph graph, FloorGraph.Snapshot snapshot, int source){
+    int[] dist = new int[this.n];
+    int[] firstHop = new int[this.n];
+    Arrays.fill(dist, Integer.MAX_VALUE);
+    Arrays.fill(firstHop, -1);
+    dist[source] = 0;
+    firstHop[source] = source;
+
+    PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+    queue.add(new long[]{0, source});
+    while(!queue.isEmpty()){
+      long[] item = queue.poll();
+      int u = (int)item[1];
+      if(item[0] > dist[u])  //already processed with shorter distance
+        continue;
+      for(int edge = graph.getEdgeStart(u); edge < graph.getEdgeEnd(u); edge++){
+        if(!snapshot.isOpen(graph.getRoute(edge)))
+          continue;
+        int v = graph.getTarget(edge);
+        int alt = dist[u] + graph.getLength(edge);
+        if(alt < dist[v]){
+          dist[v] = alt;
+          firstHop[v] = (u == source) ? v : firstHop[u];
+          queue.add(new long[]{alt, v});
+        }
+      }
+    }
+
+    for(int v = 0; v < this.n; v++){
+      if(this.distanceCell == Character.BYTES && dist[v] != Integer.MAX_VALUE && dist[v] >= Character.MAX_VALUE)
+        return false;
+    }
+    for(int v = 0; v < this.n; v++){
+      this.distance.set(source, v, dist[v]);
+      this.next.set(source, v, firstHop[v]);
+    }
+    return true;
+  }
+
+  /** Insert new edge u -> v and shorten all paths which can use it
+   *
+   *  @param u Number of first node of edge
+   *  @param v Number of second node of edge
+   *  @param w Length of edge
+   *  @return false if some new distance doesn't fit into the cells, the matrices
+   *          must be calculated again then
+   */
+  private boolean insertEdge(int u, int v, int w){
+    for(int i = 0; i < this.n; i++){
+      if(this.distance.get(i, u) == Integer.MAX_VALUE)
+        continue;
+      long toEdge = (long)this.distance.get(i, u) + w;
+      int hop = (i == u) ? v : this.next.get(i, u);
+      for(int j = 0; j < this.n; j++){
+        if(this.distance.get(v, j) == Integer.MAX_VALUE)
+          continue;
+        long alt = toEdge + this.distance.get(v, j);
+        if(alt < this.distance.get(i, j)){
+          if(this.distanceCell == Character.BYTES && alt >= Character.MAX_VALUE)
+            return false;
+          this.distance.set(i, j, (int)alt);
+          this.next.set(i, j, hop);
+        }
+      }
+    }
+    return true;
+  }
+}
@@ -1,36 +1,37 @@
 package ija.project.warehouse;
 
-import java.util.*;
-
 import javafx.scene.shape.Circle;
-import javafx.geometry.Point2D;
 
 
-/** Represents a node on which a cart can travel. The node holds the information
- *  about all of it's current reachable neighbours. The class is inherited from
- *  the Circle class in JavaFX.
+/** Visualizes a node on which a cart can travel. The node's state is held
+ *  by the PathNode, this class only delegates to it. The class is inherited
+ *  from the Circle class in JavaFX.
  *
  * @author Tomas Beranek (xberan46)
  * @author Simon Slobodnik (xslobo06)
  */
 public class NodeCircle extends Circle {
   public int ID = -1;
-  private int x;
-  private int y;
-  private Set<Integer> neighbours = new HashSet<>();
+  private PathNode node;
 
 
   /**
-   * @param x The node's x coordinate.
-   * @param y The node's y coordinate.
+   * @param node The visualized node.
    * @param r The node's radius for a visualization.
-   * @param id The node's ID.
    */
-  public NodeCircle(float x, float y, float r, int id){
-    super(x, y, r);
-    this.ID = id;
-    this.x = (int)Math.round(x);
-    this.y = (int)Math.round(y);
+  public NodeCircle(PathNode node, float r){
+    super(node.getX(), node.getY(), r);
+    this.ID = node.ID;
+    this.node = node;
+  }
+
+
+  /** Gets the visualized node.
+   *
+   * @return The visualized node.
+   */
+  public PathNode getNode() {
+    return this.node;
   }
 
 
@@ -39,7 +40,7 @@ public class NodeCircle extends Circle {
    * @return The node's x coordinate.
    */
   public int getX() {
-    return this.x;
+    return this.node.getX();
   }
 
 
@@ -48,7 +49,7 @@ public class NodeCircle extends Circle {
    * @return The node's y coordinate.
    */
   public int getY() {
-    return this.y;
+    return this.node.getY();
   }
 
 
@@ -57,7 +58,7 @@ public class NodeCircle extends Circle {
    * @param x The node's x coordinate.
    */
   public void setX(int x) {
-    this.x = x;
+    this.node.setX(x);
     this.setCenterX(x);
   }
 
@@ -67,52 +68,17 @@ public class NodeCircle extends Circle {
    * @param y The node's y coordinate.
    */
   public void setY(int y) {
-    this.y = y;
+    this.node.setY(y);
     this.setCenterY(y);
   }
 
 
-  /** Gets the list of the node's neighbours.
-   *
-   * @return The list of the node's neighbours.
-   */
-  public List<Integer> getNeighbours() {
-    return new ArrayList<>(neighbours);
-  }
-
-
-  /** Adds a node to the node's neighbours.
-   *
-   * @param id The neighbour's ID.
-   * @return True - if the neighbour has already been added.
-   */
-  public boolean addNeighbour(int id) {
-    return this.neighbours.add(id);
-  }
-
-
-  /** Removes a node from the node's neighbours.
-   *
-   * @param id The neighbour's ID.
-   * @return True - if the neighbour was present.
-   */
-  public boolean removeNeighbour(int id) {
-    return this.neighbours.remove(id);
-  }
-
-
   /** Calculates the distance between this node and given node.
    *
    * @param p A node to which a distance should be calculated.
    * @return The distance between this node in 'p'.
    */
   public int distance(NodeCircle p) {
-    int x = p.getX();
-    int y = p.getY();
-
-    Point2D p1 = new Point2D(this.x, this.y);
-    Point2D p2 = new Point2D(x, y);
-
-    return (int)p1.distance(p2);
+    return this.node.distance(p.getNode());
   }
 }
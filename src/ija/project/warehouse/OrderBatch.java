@@ -0,0 +1,181 @@
+package ija.project.warehouse;
+
+import java.util.*;
+
+
+/** Represents a batch (wave) of orders which are picked up by a single cart
+ *  in a single combined route. The goods dispensed by the cart are assigned
+ *  to the orders in the order of their start, an order is finished as soon as
+ *  all its goods are dispensed or the cart returns to the dispensing point.
+ *
+ * @author Tomas Beranek (xberan46)
+ */
+public class OrderBatch {
+  private List<Order> orders = new ArrayList<>();
+  private List<Hashtable<Integer, Integer>> remainingGoods = new ArrayList<>();
+  private List<Pair<Integer, Integer>> goods = new ArrayList<>();
+  private int quantity = 0;
+  private int dispensedCount = 0;
+  private boolean finished = false;
+  public Cart cart = null;
+
+
+  public OrderBatch() {
+  }
+
+
+  /** Creates a copy of the batch's state, used by the snapshots of
+   *  the simulation.
+   *
+   * @param other The copied batch.
+   * @param cart The copy of the batch's cart, null if it has no cart.
+   */
+  public OrderBatch(OrderBatch other, Cart cart) {
+    this.orders.addAll(other.orders);
+    for (Hashtable<Integer, Integer> remaining : other.remainingGoods) {
+      this.remainingGoods.add(new Hashtable<>(remaining));
+    }
+    this.goods.addAll(other.goods);
+    this.quantity = other.quantity;
+    this.dispensedCount = other.dispensedCount;
+    this.finished = other.finished;
+    this.cart = cart;
+  }
+
+
+  /** Adds an order to the batch.
+   *
+   * @param order The order to be added.
+   */
+  public void addOrder(Order order) {
+    Hashtable<Integer, Integer> remaining = new Hashtable<>();
+
+    for (Pair<Integer, Integer> item : order.goods) {
+      remaining.merge(item.getKey(), item.getValue(), Integer::sum);
+      this.quantity += item.getValue();
+    }
+
+    this.orders.add(order);
+    this.remainingGoods.add(remaining);
+    this.goods.addAll(order.goods);
+  }
+
+
+  /** Gets all the orders of the batch.
+   *
+   * @return The list of orders in the order of their start.
+   */
+  public List<Order> getOrders() {
+    return this.orders;
+  }
+
+
+  /** Gets the goods of all the orders of the batch.
+   *
+   * @return The list of pairs (SKU, quantity).
+   */
+  public List<Pair<Integer, Integer>> getGoods() {
+    return this.goods;
+  }
+
+
+  /** Gets the total quantity of the goods of all the orders of the batch.
+   *
+   * @return The total quantity.
+   */
+  public int getQuantity() {
+    return this.quantity;
+  }
+
+
+  /** Gets the time since which the batch can be picked up -- the start of its
+   *  last order.
+   *
+   * @return The start time of the batch.
+   */
+  public Long getStartEpochTime() {
+    return this.orders.get(this.orders.size() - 1).getStartEpochTime();
+  }
+
+
+  /** Checks if the cart has already returned to the dispensing point, all
+   *  the orders of the batch are processed then and the cart is idle.
+   *
+   * @return True - if the batch has already been processed.
+   */
+  public boolean isFinished() {
+    return this.finished;
+  }
+
+
+  /** Passes the combined route of the batch to the given idle cart.
+   *
+   * @param cart The cart which picks up the batch.
+   * @param path The sequence of nodes (path).
+   * @param graph The routes of the floor plan.
+   * @param epochTime The time at which the cart departs.
+   */
+  public void addCart(Cart cart, RoutePlan path, FloorGraph graph, Long epochTime) {
+    this.cart = cart;
+    this.cart.addPath(path, graph, epochTime);
+
+    for (Order order : this.orders) {
+      order.cart = this.cart;
+    }
+  }
+
+
+  /** Signals to the cart to process its next event and finishes the orders
+   *  whose goods have been dispensed.
+   *
+   * @param currentEpochTime Current simulation time -- the time of the event.
+   * @param graph The routes of the floor plan.
+   * @return false -- The path needs to be recalculated.
+   *         true -- The cart's event has been processed successfully.
+   */
+  public boolean updateCart(Long currentEpochTime, FloorGraph graph){
+    String rc = this.cart.processEvent(currentEpochTime, graph);
+    if (rc == "Finished")
+      this.finished = true;
+
+    // assign the newly dispensed goods to the orders
+    List<Pair<Integer, Integer>> dispensed = this.cart.getDispensedGoods();
+    for (; this.dispensedCount < dispensed.size(); this.dispensedCount++) {
+      Pair<Integer, Integer> item = dispensed.get(this.dispensedCount);
+      int quantity = item.getValue();
+
+      for (int i = 0; i < this.orders.size() && quantity > 0; i++) {
+        Hashtable<Integer, Integer> remaining = this.remainingGoods.get(i);
+        int needed = remaining.getOrDefault(item.getKey(), 0);
+        if (needed == 0)
+          continue;
+
+        int assigned = Math.min(needed, quantity);
+        remaining.put(item.getKey(), needed - assigned);
+        quantity -= assigned;
+      }
+    }
+
+    for (int i = 0; i < this.orders.size(); i++) {
+      Order order = this.orders.get(i);
+      if (order.isFinished(currentEpochTime))
+        continue;
+
+      if (rc == "Finished" || !this.remainingGoods.get(i).values().stream().anyMatch(q -> q > 0))
+        order.finish(currentEpochTime);
+    }
+
+    return rc != "Stopped";
+  }
+
+
+  /** Signals to the cart to update it's path.
+   *
+   * @param path The sequence of nodes (path).
+   * @param graph The routes of the floor plan.
+   * @param epochTime The time at which the cart departs.
+   */
+  public void updateCartPath(RoutePlan path, FloorGraph graph, Long epochTime){
+    this.cart.addPath(path, graph, epochTime);
+  }
+}
@@ -0,0 +1,112 @@
+package ija.project.warehouse;
+
+import java.util.*;
+
+
+/** Records the finished orders -- only their index, start and end are kept
+ *  in arrays of primitives, so the statistics of a long simulation don't
+ *  need the orders themselves. The records are kept in the order in which
+ *  the orders have finished.
+ *
+ * @author Tomas Beranek (xberan46)
+ */
+public class OrderHistory {
+  private int size = 0;
+  private int[] indexes = new int[16];
+  private long[] starts = new long[16];
+  private long[] ends = new long[16];
+  private long totalDuration = 0;
+
+
+  /** Records a finished order.
+   *
+   * @param index The index of the order.
+   * @param startEpochTime The order's start time.
+   * @param endEpochTime The order's end time.
+   */
+  public void add(int index, long startEpochTime, long endEpochTime) {
+    if (this.size == this.indexes.length) {
+      int capacity = this.size * 2;
+      this.indexes = Arrays.copyOf(this.indexes, capacity);
+      this.starts = Arrays.copyOf(this.starts, capacity);
+      this.ends = Arrays.copyOf(this.ends, capacity);
+    }
+
+    this.indexes[this.size] = index;
+    this.starts[this.size] = startEpochTime;
+    this.ends[this.size] = endEpochTime;
+    this.totalDuration += endEpochTime - startEpochTime;
+    this.size++;
+  }
+
+
+  /** Gets the number of finished orders.
+   *
+   * @return The number of records.
+   */
+  public int size() {
+    return this.size;
+  }
+
+
+  /** Gets the index of the i-th finished order.
+   *
+   * @param i The index of the record.
+   * @return The index of the order.
+   */
+  public int getIndex(int i) {
+    return this.indexes[i];
+  }
+
+
+  /** Gets the start time of the i-th finished order.
+   *
+   * @param i The index of the record.
+   * @return The order's start time.
+   */
+  public long getStartEpochTime(int i) {
+    return this.starts[i];
+  }
+
+
+  /** Gets the end time of the i-th finished order.
+   *
+   * @param i The index of the record.
+   * @return The order's end time.
+   */
+  public long getEndEpochTime(int i) {
+    return this.ends[i];
+  }
+
+
+  /** Gets the average duration of the finished orders.
+   *
+   * @return The average duration in ms, 0 if there is no finished order.
+   */
+  public long getAverageDuration() {
+    if (this.size == 0)
+      return 0;
+
+    return this.totalDuration / this.size;
+  }
+
+
+  /** Forgets the records after the given number of them, used when
+   *  the simulation returns back in time.
+   *
+   * @param size The number of kept records.
+   */
+  public void truncate(int size) {
+    for (int i = size; i < this.size; i++) {
+      this.totalDuration -= this.ends[i] - this.starts[i];
+    }
+    this.size = Math.min(this.size, size);
+  }
+
+
+  /** Forgets all the records.
+   */
+  public void clear() {
+    truncate(0);
+  }
+}
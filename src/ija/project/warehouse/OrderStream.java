@@ -0,0 +1,251 @@
+package ija.project.warehouse;
+
+import java.util.*;
+import java.io.*;
+
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+
+/** Reads the orders one by one from a JSON file with the orders, without
+ *  building the whole document in memory. The parser is paused after each
+ *  order and resumed when the next one is requested, so only the order being
+ *  read is held by the stream. The stream can also replay a list of orders
+ *  which are already in memory.
+ *
+ *  The orders must be sorted by their start, as the simulation reads them
+ *  only shortly before they start. An order starting before the previous one
+ *  is rejected, it would start late without any warning.
+ *
+ * @author Tomas Beranek (xberan46)
+ */
+public class OrderStream {
+  private String fileName = null;
+  private List<Order> orders = null;
+  private GoodsDictionary dictionary;
+  private JSONParser parser = new JSONParser();
+  private OrderHandler handler = new OrderHandler();
+  private Reader reader = null;
+  private boolean resume = false;
+  private boolean ended = false;
+  private int count = 0;
+  private long lastStart = Long.MIN_VALUE; // the start of the previous order
+
+
+  /** Builds the orders from the events of the JSON parser. The parser is
+   *  paused after the end of each order.
+   */
+  private final class OrderHandler implements ContentHandler {
+    private int depth = 0;
+    private Deque<String> keys = new ArrayDeque<>();
+    private Long startEpochTime = 0L;
+    private List<Pair<Integer, Integer>> goods = null;
+    private String name = null;
+    private Long quantity = 0L;
+    private Order order = null;
+
+    @Override
+    public void startJSON() {
+      this.depth = 0;
+      this.keys.clear();
+    }
+
+    @Override
+    public void endJSON() {
+    }
+
+    @Override
+    public boolean startObject() {
+      this.depth++;
+      if (this.depth == 2) {
+        this.startEpochTime = 0L;
+        this.goods = new ArrayList<>();
+      } else if (this.depth == 3) {
+        this.name = null;
+        this.quantity = 0L;
+      }
+      return true;
+    }
+
+    @Override
+    public boolean endObject() {
+      this.depth--;
+      if (this.depth == 2) {
+        this.goods.add(new Pair<>(dictionary.getSKU(this.name), this.quantity.intValue()));
+      } else if (this.depth == 1) {
+        this.order = new Order(this.startEpochTime, this.goods);
+        return false; // pause the parser after each order
+      }
+      return true;
+    }
+
+    @Override
+    public boolean startObjectEntry(String key) {
+      this.keys.push(key);
+      return true;
+    }
+
+    @Override
+    public boolean endObjectEntry() {
+      this.keys.pop();
+      return true;
+    }
+
+    @Override
+    public boolean startArray() {
+      return true;
+    }
+
+    @Override
+    public boolean endArray() {
+      return true;
+    }
+
+    @Override
+    public boolean primitive(Object value) {
+      String key = this.keys.peek();
+      if (this.depth == 2 && "startEpochTime".equals(key))
+        this.startEpochTime = (Long) value;
+      else if (this.depth == 3 && "name".equals(key))
+        this.name = (String) value;
+      else if (this.depth == 3 && "quantity".equals(key))
+        this.quantity = (Long) value;
+      return true;
+    }
+  }
+
+
+  /**
+   * @param fileName The name of the JSON file with the orders.
+   * @param dictionary The dictionary of the goods names.
+   */
+  public OrderStream(String fileName, GoodsDictionary dictionary) {
+    this.fileName = fileName;
+    this.dictionary = dictionary;
+    rewind();
+  }
+
+
+  /**
+   * @param orders The orders to be replayed.
+   */
+  public OrderStream(List<Order> orders) {
+    this.orders = orders;
+  }
+
+
+  /** Reads the next order.
+   *
+   * @return The next order, null if there is no order left.
+   */
+  public Order next() {
+    if (this.ended)
+      return null;
+
+    if (this.orders != null) {
+      if (this.count == this.orders.size()) {
+        this.ended = true;
+        return null;
+      }
+      return checkOrder(this.orders.get(this.count++));
+    }
+
+    try {
+      this.handler.order = null;
+      this.parser.parse(this.reader, this.handler, this.resume);
+      this.resume = true;
+    } catch(IOException | ParseException | RuntimeException e) {
+      System.err.printf("ERROR: failed to parse JSON file '%s'", this.fileName);
+      System.exit(1);
+    }
+
+    Order order = this.handler.order;
+    if (order == null) {
+      this.ended = true;
+      close();
+      return null;
+    }
+
+    this.count++;
+    return checkOrder(order);
+  }
+
+
+  /** Checks that the order doesn't start before the previous one.
+   *
+   * @param order The read order.
+   * @return The order.
+   */
+  private Order checkOrder(Order order) {
+    if (order.getStartEpochTime() < this.lastStart) {
+      System.err.printf("ERROR: order %d in '%s' starts at %d, before the previous order at %d, the orders must be sorted by startEpochTime%n",
+                        this.count, this.fileName == null ? "the list of orders" : this.fileName, order.getStartEpochTime(), this.lastStart);
+      System.exit(1);
+    }
+    this.lastStart = order.getStartEpochTime();
+    return order;
+  }
+
+
+  /** Skips the given number of orders.
+   *
+   * @param count The number of skipped orders.
+   */
+  public void skip(int count) {
+    for (int i = 0; i < count && next() != null; i++);
+  }
+
+
+  /** Gets the number of orders read since the start of the stream.
+   *
+   * @return The number of read orders.
+   */
+  public int getCount() {
+    return this.count;
+  }
+
+
+  /** Checks if all the orders have already been read.
+   *
+   * @return True - if there is no order left.
+   */
+  public boolean hasEnded() {
+    return this.ended;
+  }
+
+
+  /** Moves the stream back to the first order, the file is opened again.
+   */
+  public void rewind() {
+    this.count = 0;
+    this.ended = false;
+    this.lastStart = Long.MIN_VALUE;
+    if (this.orders != null)
+      return;
+
+    close();
+    try {
+      this.reader = new BufferedReader(new FileReader(this.fileName));
+    } catch(IOException e) {
+      System.err.printf("ERROR: failed to parse JSON file '%s'", this.fileName);
+      System.exit(1);
+    }
+    this.resume = false;
+  }
+
+
+  /** Closes the file of the stream.
+   */
+  public void close() {
+    if (this.reader == null)
+      return;
+
+    try {
+      this.reader.close();
+    } catch(IOException e) {
+      // nothing to do, the file is only read
+    }
+    this.reader = null;
+  }
+}
@@ -0,0 +1,66 @@
+package ija.project.warehouse;
+
+import java.util.Objects;
+
+
+/** Represents an immutable pair of values (key, value). The class replaces
+ *  the javafx.util.Pair so the simulation model doesn't depend on JavaFX.
+ *
+ * @author Tomas Beranek (xberan46)
+ */
+public class Pair<K, V> {
+  private final K key;
+  private final V value;
+
+
+  /**
+   * @param key The key of the pair.
+   * @param value The value of the pair.
+   */
+  public Pair(K key, V value) {
+    this.key = key;
+    this.value = value;
+  }
+
+
+  /** Gets the key of the pair.
+   *
+   * @return The key of the pair.
+   */
+  public K getKey() {
+    return this.key;
+  }
+
+
+  /** Gets the value of the pair.
+   *
+   * @return The value of the pair.
+   */
+  public V getValue() {
+    return this.value;
+  }
+
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o)
+      return true;
+    if (!(o instanceof Pair))
+      return false;
+
+    Pair<?, ?> p = (Pair<?, ?>)o;
+    return Objects.equals(this.key, p.key) && Objects.equals(this.value, p.value);
+  }
+
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(this.key) * 13 + Objects.hashCode(this.value);
+  }
+
+
+  @Override
+  public String toString() {
+    return this.key + "=" + this.value;
+  }
+}
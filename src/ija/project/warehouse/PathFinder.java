@@ -1,11 +1,8 @@
 package ija.project.warehouse;
 
 import java.util.*;
-import javafx.util.*;
 import java.lang.Math;
-import javafx.geometry.Point2D;
 import java.util.ArrayList;
-import javafx.util.Pair;
 import java.util.Iterator;
 import java.util.Collections;
 import java.util.HashSet;
@@ -13,108 +10,58 @@ import java.util.HashSet;
 /** Represent navigator for carts holding informations about nearest ways
  *  between nodes in matrixes, capacity of carts and reservated goods in shelfs
  *
+ *  Planning of path has two parts -- choosing stops, which reservates goods and
+ *  must be called in order of requests, and completing path through the stops,
+ *  which only reads the shortest paths, so it can run on other threads while
+ *  the routes don't change
+ *
  * @author Simon Slobodnik (xslobo06)
  */
 public class PathFinder {
-  private int[][] distance; //matrix with distances between nodes
-  private int[][] next; //matrix with best way between nodes
-  private Hashtable<Integer, Integer> localShelfs; //rezervationed goods in shelfs
+  private RoutingTable routes; //shortest paths between nodes
+  private GoodsIndex goodsIndex; //shelfs by goods stored in them
+  private ReservationLedger ledger; //rezervationed goods in shelfs
   private int max_quantity; //max quantity of goods in cart
+  private long improve_time = DEFAULT_IMPROVE_TIME; //max time of improving single path in ms
+
+  /** Default time budget of improving the order of picking in ms */
+  public static final long DEFAULT_IMPROVE_TIME = 10;
 
   /**
-   * @param nodes Hashtable of nodes ID and object NodeCircle
-   * @param shelfs Hashtable of shelfs ID and object ShelfRectangle
+   * @param graph Routes between nodes of the floor plan
+   * @param shelfs Hashtable of shelfs ID and object Shelf
    * @param max_quantity_in_cart Max quantity of goods in cart
    */
-  public PathFinder(Hashtable<Integer, NodeCircle> nodes, Hashtable<Integer, ShelfRectangle> shelfs, Integer max_quantity_in_cart) {
-    int number_nodes = nodes.size();
-    this.max_quantity = max_quantity_in_cart;
-    this.localShelfs = new Hashtable<>();
-    // creates a distance of nodes distances
-    this.distance = new int[number_nodes][number_nodes];
-    this.next = new int[number_nodes][number_nodes];
-    setMatrix(nodes);
-    setShelfs(shelfs);
+  public PathFinder(FloorGraph graph, Hashtable<Integer, Shelf> shelfs, Integer max_quantity_in_cart) {
+    this(graph, shelfs, new GoodsIndex(shelfs), max_quantity_in_cart, RoutingTable.MATRIX);
   }
 
-  /** Set default hashtable of shelfs ID with numbers of reservated items
-   * @param shelfs Hashtable of shelfs ID and object ShelfRectangle
+  /**
+   * @param graph Routes between nodes of the floor plan
+   * @param shelfs Hashtable of shelfs ID and object Shelf
+   * @param goodsIndex Index of shelfs by goods stored in them
+   * @param max_quantity_in_cart Max quantity of goods in cart
+   * @param routing Backend of shortest paths -- RoutingTable.MATRIX or RoutingTable.SPARSE
    */
-  private void setShelfs(Hashtable<Integer, ShelfRectangle> shelfs){
-    shelfs.forEach((k, v) -> {
-      this.localShelfs.put(k,0);
-    });
-  }
-
-  /** Set default matrix for Floyd-Warhall processing
-    */
-  private void defaultMatrix(){
-    for (int i = 0; i < this.distance.length; i++) {
-      for (int j = 0; j < this.distance[i].length; j++) {
-        if (i == j){
-          this.distance[i][j] = 0;
-          this.next[i][j] = i;
-        }
-        else{
-          this.distance[i][j] = Integer.MAX_VALUE;
-          this.next[i][j] = -1;
-        }
-      }
-    }
-  }
-
-  /** Calculate minimal distances between nodes by Flayd-Warshall method
-    */
-  private void floydWarshall() {
-    for (int k = 0; k < this.distance.length; k++) {
-      for (int i = 0; i < this.distance.length; i++) {
-        if (this.distance[i][k] >= Integer.MAX_VALUE)
-          continue;
-        for (int j = 0; j < this.distance.length; j++) {
-          if (this.distance[k][j] >= Integer.MAX_VALUE)
-            continue;
-          if (this.distance[i][j] > this.distance[i][k] + this.distance[k][j]){
-            this.distance[i][j] = this.distance[i][k] + this.distance[k][j];
-            next[i][j] = next[i][k];
-          }
-        }
-      }
-    }
+  public PathFinder(FloorGraph graph, Hashtable<Integer, Shelf> shelfs, GoodsIndex goodsIndex, Integer max_quantity_in_cart, String routing) {
+    this(shelfs, goodsIndex, max_quantity_in_cart, RoutingTable.create(graph, routing));
   }
 
-  /** Set connection between actual node and his neighbours (recursive)
-    * @param nodes Hashtable with ID of node and NodeCircle
-    * @param number number of actual node
-    */
-  private void createAllEdges(Hashtable<Integer, NodeCircle> nodes, int number){
-
-    Point2D firstNode = new Point2D(nodes.get(number).getX(),nodes.get(number).getY());
-    List<Integer> neighbours = nodes.get(number).getNeighbours(); //get id of neighbours
-
-    for(int i = 0; i < neighbours.size();i++){
-      if(this.distance[number][neighbours.get(i)] == Integer.MAX_VALUE){  //if distance between nodes is not set
-        //get neighbour position
-        Point2D secondNode = new Point2D(nodes.get(neighbours.get(i)).getX(), nodes.get(neighbours.get(i)).getY());
-        //set edge
-        createEdge(number, neighbours.get(i), (int)firstNode.distance(secondNode));
-        createAllEdges(nodes, neighbours.get(i));
-      }
-    }
-  }
-
-  /** Insert new edge between nodes to matrix distance and matrix next
+  /** Navigator using already calculated shortest paths, the table can be
+   *  shared by more navigators as long as nobody changes its routes
    *
-   * @param u Number of first node
-   * @param v Number of second node
-   * @param distance Distance between given nodes
+   * @param shelfs Hashtable of shelfs ID and object Shelf
+   * @param goodsIndex Index of shelfs by goods stored in them
+   * @param max_quantity_in_cart Max quantity of goods in cart
+   * @param routes Shortest paths between nodes of the floor plan
    */
-  private void createEdge(int u, int v, int distance){
-    //all edges are double-sided
-    this.distance[u][v] = distance;
-    this.distance[v][u] = distance;
-    this.next[u][v] = v;
-    this.next[v][u] = u;
+  public PathFinder(Hashtable<Integer, Shelf> shelfs, GoodsIndex goodsIndex, Integer max_quantity_in_cart, RoutingTable routes) {
+    this.goodsIndex = goodsIndex;
+    this.max_quantity = max_quantity_in_cart;
+    this.ledger = new ReservationLedger(shelfs);
+    this.routes = routes;
   }
+
   /** Search for nearest node from actual node
    *
    * @param requiredNodes Selected nodes containing the searched goods
@@ -129,8 +76,9 @@ public class PathFinder {
     Set<Integer> shelfIDs = requiredNodes.keySet();
     for(int shelfID: shelfIDs){
       nodeID = requiredNodes.get(shelfID);
-      if(this.distance[actualNode][nodeID] > 0 && this.distance[actualNode][nodeID] < min){
-        min = this.distance[actualNode][nodeID];
+      int distance = this.routes.getDistance(actualNode, nodeID);
+      if(distance > 0 && distance < min){
+        min = distance;
         shelf = shelfID;
       }
     }
@@ -138,99 +86,103 @@ public class PathFinder {
     return shelf;
   }
 
+  /** Get length of the shortest path from node to the nearest shelf with any
+   *  of wanted goods
+   *
+   *  @param order List of orders with pairs of goods SKU and their number
+   *  @param node Number of node
+   *  @return Length of the path, Integer.MAX_VALUE if there is no such shelf
+   */
+  public int distanceToGoods(List<Pair<Integer, Integer>> order, int node){
+    int min = Integer.MAX_VALUE;
+    for(Pair<Integer, Integer> item: order){
+      for(Shelf shelf: this.goodsIndex.getShelves(item.getKey())){
+        min = Math.min(min, this.routes.getDistance(node, shelf.nodeID));
+      }
+    }
+    return min;
+  }
+
   /** Find all nodes which are next to shelf with wanted goods and they process them into a sorted form
    *  ideal for picking up goods, without a path between the found nodes
    *
    *  @param order List of orders with pairs of goods name and their number
-   *  @param shelfs Hashtable of shelfs ID and ShelfRectangles
+   *  @param shelfs Hashtable of shelfs ID and Shelves
    *  @param actualNode The node number where the cart is currently located
-   *  @return Number of nodes with required goods and good name and quantity in sub-optimal order
+   *  @return Number of nodes with required goods and good name and quantity in sub-optimal order,
+   *          with reservation of the goods which is not reservated in ledger yet
    */
-  private List<Pair<Integer,Pair<String, Integer>>> orderProcessing(List<Pair<String, Integer>> o_order,
-                              Hashtable<Integer, ShelfRectangle> shelfs, int actualNode, int cart_num) {
-    List<Pair<String, Integer>> order = new ArrayList<Pair<String,Integer>>();
+  private RoutePlan orderProcessing(List<Pair<Integer, Integer>> o_order,
+                              Hashtable<Integer, Shelf> shelfs, int actualNode, int cart_num) {
+    List<Pair<Integer, Integer>> order = new ArrayList<Pair<Integer,Integer>>();
     for(int i = 0; i < o_order.size(); i++){
-      order.add(i, new Pair<String, Integer>(o_order.get(i).getKey(),o_order.get(i).getValue()));
+      order.add(i, new Pair<Integer, Integer>(o_order.get(i).getKey(),o_order.get(i).getValue()));
     }
 
     int goods_in_cart = cart_num;
     Hashtable<Integer,Integer> requiredNodes = new Hashtable<Integer, Integer>(); //shelfID, nodeID
 
-    Set<Integer> Keys = shelfs.keySet();
-    for(int i: Keys){
-      for(int j = 0; j < order.size(); j++){
-        if(shelfs.get(i).getGoods().equals(order.get(j).getKey())){
-          requiredNodes.put(shelfs.get(i).shelfID,shelfs.get(i).nodeID);
-          break;
-        }
+    for(int j = 0; j < order.size(); j++){  //only shelfs with wanted goods
+      for(Shelf shelf: this.goodsIndex.getShelves(order.get(j).getKey())){
+        requiredNodes.put(shelf.shelfID,shelf.nodeID);
       }
     }
 
-    Pair<String, Integer> doNotPickUp = new Pair<>("dispense", 0);
-
-    List<Pair<Integer,Pair<String, Integer>>> path = new ArrayList<Pair<Integer,Pair<String, Integer>>>();
-    Pair<String, Integer> pickUp;
+    RoutePlan path = new RoutePlan();
+    ReservationLedger.Reservation reservation = new ReservationLedger.Reservation();
+    path.setReservation(reservation);
     int nearest = -1;
-    String goodName = "";
+    int goodName = GoodsDictionary.NONE;
     while(requiredNodes.size() != 0){
       nearest = nearestNode(requiredNodes, actualNode);
       if(nearest == -1)
         break;
       actualNode = shelfs.get(nearest).nodeID;
       goodName = shelfs.get(nearest).getGoods();
+      int reserved = this.ledger.getReserved(nearest);  //by other paths, this one adds to reservation
       for(int j = 0; j < order.size(); j++){  //for each order
         if(order.get(j).getValue() == 0)  //the order has already been processed
           continue;
         if(goods_in_cart == this.max_quantity){
-          path.add(new Pair<Integer, Pair<String, Integer>>(0, doNotPickUp));
+          path.add(0, GoodsDictionary.DISPENSE, 0);
           goods_in_cart = 0;
         }
         if(order.get(j).getKey().equals(goodName)){ //shelf has required good
           if(order.get(j).getValue() != 0){
-            if(order.get(j).getValue() <= (shelfs.get(nearest).getQuantity() - this.localShelfs.get(nearest))){  //shelf has enought goods
+            if(order.get(j).getValue() <= (shelfs.get(nearest).getQuantity() - (reserved + reservation.getQuantity(nearest)))){  //shelf has enought goods
               if((this.max_quantity - goods_in_cart) >= order.get(j).getValue()){ //in cart is enough space
                 goods_in_cart = goods_in_cart + order.get(j).getValue();
-                pickUp = new Pair<String, Integer>(order.get(j).getKey(), order.get(j).getValue());
-                path.add(new Pair<Integer, Pair<String, Integer>>(requiredNodes.get(nearest), pickUp));
-                int value = this.localShelfs.get(nearest) + order.get(j).getValue();
-                this.localShelfs.put(nearest, value); //add number of items in order
-                order.set(j, new Pair<String, Integer>(goodName,0));
+                path.add(requiredNodes.get(nearest), order.get(j).getKey(), order.get(j).getValue());
+                reservation.add(nearest, requiredNodes.get(nearest), goodName, order.get(j).getValue()); //add number of items in order
+                order.set(j, new Pair<Integer, Integer>(goodName,0));
               }
               else{ //in cart is not enough space
                 int first_loading = this.max_quantity - goods_in_cart;
                 int second_loading = (order.get(j).getValue() - (this.max_quantity - goods_in_cart));
-                pickUp = new Pair<String, Integer>(order.get(j).getKey(), first_loading);
-                path.add(new Pair<Integer, Pair<String, Integer>>(requiredNodes.get(nearest), pickUp));
-                path.add(new Pair<Integer, Pair<String, Integer>>(0, doNotPickUp));
-                pickUp = new Pair<String, Integer>(order.get(j).getKey(), second_loading);
-                path.add(new Pair<Integer, Pair<String, Integer>>(requiredNodes.get(nearest), pickUp));
+                path.add(requiredNodes.get(nearest), order.get(j).getKey(), first_loading);
+                path.add(0, GoodsDictionary.DISPENSE, 0);
+                path.add(requiredNodes.get(nearest), order.get(j).getKey(), second_loading);
                 goods_in_cart = second_loading;
-                int value = this.localShelfs.get(nearest) + order.get(j).getValue();
-                this.localShelfs.put(nearest, value);
-                order.set(j, new Pair<String, Integer>(goodName,0));
+                reservation.add(nearest, requiredNodes.get(nearest), goodName, order.get(j).getValue());
+                order.set(j, new Pair<Integer, Integer>(goodName,0));
               }
             }
-            else if((shelfs.get(nearest).getQuantity() - this.localShelfs.get(nearest)) > 0){ //shelf hasn't enought goods
-              if((this.max_quantity - goods_in_cart) >= (shelfs.get(nearest).getQuantity() - this.localShelfs.get(nearest))){
-                goods_in_cart = goods_in_cart + (shelfs.get(nearest).getQuantity() - this.localShelfs.get(nearest));
-                pickUp = new Pair<String, Integer>(order.get(j).getKey(), (shelfs.get(nearest).getQuantity() - this.localShelfs.get(nearest)));
-                path.add(new Pair<Integer, Pair<String, Integer>>(requiredNodes.get(nearest), pickUp));
-                order.set(j, new Pair<String, Integer>(goodName,(order.get(j).getValue() - (shelfs.get(nearest).getQuantity() - this.localShelfs.get(nearest)))));
-                int value = this.localShelfs.get(nearest) + (shelfs.get(nearest).getQuantity() - this.localShelfs.get(nearest));
-                this.localShelfs.put(nearest, value);  //add number of items in shelf
+            else if((shelfs.get(nearest).getQuantity() - (reserved + reservation.getQuantity(nearest))) > 0){ //shelf hasn't enought goods
+              if((this.max_quantity - goods_in_cart) >= (shelfs.get(nearest).getQuantity() - (reserved + reservation.getQuantity(nearest)))){
+                goods_in_cart = goods_in_cart + (shelfs.get(nearest).getQuantity() - (reserved + reservation.getQuantity(nearest)));
+                path.add(requiredNodes.get(nearest), order.get(j).getKey(), (shelfs.get(nearest).getQuantity() - (reserved + reservation.getQuantity(nearest))));
+                order.set(j, new Pair<Integer, Integer>(goodName,(order.get(j).getValue() - (shelfs.get(nearest).getQuantity() - (reserved + reservation.getQuantity(nearest))))));
+                reservation.add(nearest, requiredNodes.get(nearest), goodName, (shelfs.get(nearest).getQuantity() - (reserved + reservation.getQuantity(nearest))));  //add number of items in shelf
               }
               else{
                 int first_loading = this.max_quantity - goods_in_cart;
-                int second_loading = ((shelfs.get(nearest).getQuantity() - this.localShelfs.get(nearest)) - (this.max_quantity - goods_in_cart));
-                pickUp = new Pair<String, Integer>(order.get(j).getKey(), first_loading);
-                path.add(new Pair<Integer, Pair<String, Integer>>(requiredNodes.get(nearest), pickUp));
-                path.add(new Pair<Integer, Pair<String, Integer>>(0, doNotPickUp));
-                pickUp = new Pair<String, Integer>(order.get(j).getKey(), second_loading);
-                path.add(new Pair<Integer, Pair<String, Integer>>(requiredNodes.get(nearest), pickUp));
+                int second_loading = ((shelfs.get(nearest).getQuantity() - (reserved + reservation.getQuantity(nearest))) - (this.max_quantity - goods_in_cart));
+                path.add(requiredNodes.get(nearest), order.get(j).getKey(), first_loading);
+                path.add(0, GoodsDictionary.DISPENSE, 0);
+                path.add(requiredNodes.get(nearest), order.get(j).getKey(), second_loading);
                 goods_in_cart = second_loading;
-                order.set(j, new Pair<String, Integer>(goodName,(order.get(j).getValue() - (shelfs.get(nearest).getQuantity() - this.localShelfs.get(nearest)))));
-                int value = this.localShelfs.get(nearest) + (shelfs.get(nearest).getQuantity() - this.localShelfs.get(nearest));
-                this.localShelfs.put(nearest, value);
+                order.set(j, new Pair<Integer, Integer>(goodName,(order.get(j).getValue() - (shelfs.get(nearest).getQuantity() - (reserved + reservation.getQuantity(nearest))))));
+                reservation.add(nearest, requiredNodes.get(nearest), goodName, (shelfs.get(nearest).getQuantity() - (reserved + reservation.getQuantity(nearest))));
               }
             }
           }
@@ -241,143 +193,441 @@ public class PathFinder {
     return path;
   }
 
-  /** Get the shortest path between two given nodes, without first and last node
+  /** Set time budget of improving the order of picking found by nearest neighbour
+   *
+   *  @param improve_time Max time of improving single path in ms, 0 turns the improving off
+   */
+  public void setImproveTime(long improve_time){
+    this.improve_time = improve_time;
+  }
+
+  /** Get shortest paths between nodes used by the navigator
+   *
+   *  @return Routing table of the floor plan
+   */
+  public RoutingTable getRoutes(){
+    return this.routes;
+  }
+
+  /** Get copy of reservated goods, only shelfs with some reservated goods are included
+   *
+   *  @return Hashtable of shelfs ID and numbers of reservated items
+   */
+  public Hashtable<Integer, Integer> getReservations(){
+    return this.ledger.getReservations();
+  }
+
+  /** Replace reservated goods, shelfs which are not included have no reservated goods
+   *
+   *  @param reservations Hashtable of shelfs ID and numbers of reservated items
+   */
+  public void setReservations(Hashtable<Integer, Integer> reservations){
+    this.ledger.setReservations(reservations);
+  }
+
+  /** Shorten the order of picking found by nearest neighbour by 2-opt and Or-opt
+   *  local search. Each trip between two dispensings is improved on its own, so
+   *  the goods in the cart never exceed its capacity. Following stops at the same
+   *  node are picked up as single stop and two stops at the same node are never
+   *  put next to each other. The search ends when no move shortens the path or
+   *  the time budget runs out.
+   *
+   *  @param stops Wanted nodes with goods in order of picking
+   *  @param actualNode The node number where the cart is currently located
+   *  @return Stops in improved order of picking
+   */
+  private RoutePlan improveStops(RoutePlan stops, int actualNode){
+    if(this.improve_time <= 0 || stops.isEmpty())
+      return stops;
+
+    long deadline = System.nanoTime() + this.improve_time * 1000000L;
+    RoutePlan improved = new RoutePlan(stops.size());
+    int start = actualNode;
+    int first = 0;
+    for(int i = 0; i <= stops.size(); i++){
+      if(i == stops.size() || stops.getSKU(i) == GoodsDictionary.DISPENSE){  //end of trip
+        improveTrip(stops, first, i, start, deadline, improved);
+        if(i < stops.size()){
+          improved.add(stops.getNode(i), stops.getSKU(i), stops.getQuantity(i));
+          start = stops.getNode(i);
+        }
+        first = i + 1;
+      }
+    }
+    return improved;
+  }
+
+  /** Improve order of stops of single trip, which starts in given node and ends
+   *  in the dispensing point, and append them to the route
+   *
+   *  @param stops Wanted nodes with goods in order of picking
+   *  @param from Index of the first stop of trip
+   *  @param to Index after the last stop of trip
+   *  @param start Number of node where the trip starts
+   *  @param deadline Time when the improving must end (System.nanoTime())
+   *  @param improved Route to which the stops are appended
+   */
+  private void improveTrip(RoutePlan stops, int from, int to, int start, long deadline, RoutePlan improved){
+    //following stops at the same node make single group
+    int[] groupStart = new int[to - from + 1];
+    int groups = 0;
+    boolean feasible = true;
+    for(int i = from; i < to; i++){
+      if(i == from || stops.getNode(i) != stops.getNode(i - 1))
+        groupStart[groups++] = i;
+      else if(stops.getSKU(i) != stops.getSKU(i - 1))
+        feasible = false;  //different goods at the same node can't be picked up as single stop
+    }
+    groupStart[groups] = to;
+
+    //points of trip -- groups, start node and the dispensing point
+    int[] node = new int[groups + 2];
+    for(int g = 0; g < groups; g++)
+      node[g] = stops.getNode(groupStart[g]);
+    node[groups] = start;
+    node[groups + 1] = 0;
+
+    int[] seq = new int[groups + 2];
+    seq[0] = groups;
+    for(int g = 0; g < groups; g++)
+      seq[g + 1] = g;
+    seq[groups + 1] = groups + 1;
+
+    for(int i = 0; i + 1 < seq.length; i++){
+      if(node[seq[i]] == node[seq[i + 1]])
+        feasible = false;
+    }
+
+    if(groups < 2 || !feasible){  //nothing to improve, keep the trip as it is
+      for(int i = from; i < to; i++)
+        improved.add(stops.getNode(i), stops.getSKU(i), stops.getQuantity(i));
+      return;
+    }
+
+    long[][] distance = new long[node.length][node.length];
+    for(int u = 0; u < node.length; u++){
+      for(int v = 0; v < node.length; v++)
+        distance[u][v] = this.routes.getDistance(node[u], node[v]);
+    }
+
+    boolean changed = true;
+    while(changed && System.nanoTime() < deadline){
+      changed = twoOpt(seq, node, distance, deadline);
+      changed = orOpt(seq, node, distance, deadline) || changed;
+    }
+
+    for(int i = 1; i <= groups; i++){
+      int quantity = 0;
+      for(int j = groupStart[seq[i]]; j < groupStart[seq[i] + 1]; j++)
+        quantity += stops.getQuantity(j);
+      improved.add(node[seq[i]], stops.getSKU(groupStart[seq[i]]), quantity);
+    }
+  }
+
+  /** Reverse parts of trip while it makes the trip shorter (2-opt)
    *
+   *  @param seq Points of trip in order, the first and the last one is fixed
+   *  @param node Number of node of each point
+   *  @param distance Distances between points
+   *  @param deadline Time when the improving must end (System.nanoTime())
+   *  @return True - if the trip was changed
+   */
+  private boolean twoOpt(int[] seq, int[] node, long[][] distance, long deadline){
+    boolean changed = false;
+    for(int i = 1; i < seq.length - 2; i++){
+      if(System.nanoTime() >= deadline)
+        break;
+      for(int j = i + 1; j < seq.length - 1; j++){
+        int a = seq[i - 1], first = seq[i], last = seq[j], b = seq[j + 1];
+        if(node[a] == node[last] || node[first] == node[b])
+          continue;  //stops at the same node would follow each other
+        long delta = distance[a][last] + distance[first][b] - distance[a][first] - distance[last][b];
+        if(delta < 0){
+          for(int l = i, r = j; l < r; l++, r--){
+            int tmp = seq[l];
+            seq[l] = seq[r];
+            seq[r] = tmp;
+          }
+          changed = true;
+        }
+      }
+    }
+    return changed;
+  }
+
+  /** Move parts of trip with up to three points to other place of trip, also
+   *  reversed, while it makes the trip shorter (Or-opt)
+   *
+   *  @param seq Points of trip in order, the first and the last one is fixed
+   *  @param node Number of node of each point
+   *  @param distance Distances between points
+   *  @param deadline Time when the improving must end (System.nanoTime())
+   *  @return True - if the trip was changed
+   */
+  private boolean orOpt(int[] seq, int[] node, long[][] distance, long deadline){
+    boolean changed = false;
+    for(int len = 1; len <= 3; len++){
+      for(int i = 1; i + len < seq.length; i++){
+        if(System.nanoTime() >= deadline)
+          return changed;
+        int a = seq[i - 1], first = seq[i], last = seq[i + len - 1], b = seq[i + len];
+        if(node[a] == node[b])
+          continue;
+        long removed = distance[a][first] + distance[last][b] - distance[a][b];
+
+        for(int k = 0; k + 1 < seq.length; k++){
+          if(k >= i - 1 && k < i + len)
+            continue;  //the place is inside of moved part or next to it
+          int p = seq[k], q = seq[k + 1];
+          boolean forward = node[p] != node[first] && node[last] != node[q];
+          boolean backward = node[p] != node[last] && node[first] != node[q];
+          long forwardDelta = distance[p][first] + distance[last][q] - distance[p][q] - removed;
+          long backwardDelta = distance[p][last] + distance[first][q] - distance[p][q] - removed;
+          if(forward && forwardDelta < 0 && (!backward || forwardDelta <= backwardDelta)){
+            movePart(seq, i, len, k, false);
+            changed = true;
+            break;
+          }
+          if(backward && backwardDelta < 0){
+            movePart(seq, i, len, k, true);
+            changed = true;
+            break;
+          }
+        }
+      }
+    }
+    return changed;
+  }
+
+  /** Move part of trip behind other point of trip
+   *
+   *  @param seq Points of trip in order
+   *  @param i Index of the first point of moved part
+   *  @param len Number of points of moved part
+   *  @param k Index of point behind which the part is moved
+   *  @param reversed True - if the part is moved in reversed order
+   */
+  private void movePart(int[] seq, int i, int len, int k, boolean reversed){
+    int[] part = Arrays.copyOfRange(seq, i, i + len);
+    if(reversed){
+      for(int l = 0, r = len - 1; l < r; l++, r--){
+        int tmp = part[l];
+        part[l] = part[r];
+        part[r] = tmp;
+      }
+    }
+
+    if(k < i){  //shift points between k and part to the right
+      System.arraycopy(seq, k + 1, seq, k + 1 + len, i - k - 1);
+      System.arraycopy(part, 0, seq, k + 1, len);
+    }
+    else{  //shift points between part and k to the left
+      System.arraycopy(seq, i + len, seq, i, k - i - len + 1);
+      System.arraycopy(part, 0, seq, k - len + 1, len);
+    }
+  }
+
+  /** Append the shortest path between two given nodes to the route, without
+   *  first and last node. Nothing is appended if there is no path.
+   *
+   *  @param path Route to which the nodes are appended
    *  @param u Number of start node
    *  @param v Number of target node
-   *  @return Path between start and target node
    */
-  private List<Pair<Integer, Pair<String, Integer>>> constructPath(int u, int v){
+  private void constructPath(RoutePlan path, int u, int v){
 
-    if (this.next[u][v] == -1)  //no path between nodes
-        return null;
+    List<Integer> nodes = this.routes.getPath(u, v);
+    if (nodes == null)  //no path between nodes
+        return;
 
-    Pair<String, Integer> doNotPickUp = new Pair<String,Integer>("", 0);
-    List<Pair<Integer,Pair<String, Integer>>> path = new ArrayList<Pair<Integer,Pair<String, Integer>>>();
-
-    while (u != v){
-        u = this.next[u][v];
-        if(u == v)  //final node
-          break;
-        path.add(new Pair<Integer, Pair<String, Integer>>(u, doNotPickUp));
+    for (int node: nodes){
+        path.add(node);
     }
+  }
 
-    return path;
+  /** Calculate shortest paths between nodes from the scratch
+   *
+   *  @param graph Routes between nodes of the floor plan
+   */
+  public void setMatrix(FloorGraph graph){
+    this.routes.setGraph(graph);
   }
 
-  /** Call all functions for setting distance matrix and next matrix
+  /** Update shortest paths after some routes were closed or opened, without
+   *  calculating all of them again.
    *
-   *  @param nodes Hashrable of nodes ID and NodeCircle
+   *  @param graph Routes between nodes with already updated snapshot
+   *  @param removedEdges Closed routes as pairs of nodes ID
+   *  @param addedEdges Opened routes as pairs of nodes ID
    */
-  public void setMatrix(Hashtable<Integer, NodeCircle> nodes){
-    defaultMatrix();
-    createAllEdges(nodes, 0);
-    floydWarshall();
-    return;
+  public void updateEdges(FloorGraph graph,
+          List<Pair<Integer, Integer>> removedEdges,
+          List<Pair<Integer, Integer>> addedEdges){
+    this.routes.updateEdges(graph, removedEdges, addedEdges);
   }
 
   /** Find new path if cart can't continue with old path
    *
    *  @param path Rest of path starting with last achieved node and rest of not achieved nodes
-   *  @param order List of orders with pairs of goods name and their number
-   *  @param shelfs Hashtable of shelfs ID and ShelfRectangles
+   *  @param order List of orders with pairs of goods SKU and their number
+   *  @param shelfs Hashtable of shelfs ID and Shelves
    *  @param goods_in_cart Goods quantity in cart
-   *  @return A list of nodes representing the path with the name and number
-   *          of items to be picked up for that node
+   *  @return A route of nodes with the SKU and number of items to be picked
+   *          up for each node
    */
-  public List<Pair<Integer, Pair<String, Integer>>> refindPath(List<Pair<Integer, Pair<String, Integer>>> path,
-          List<Pair<String, Integer>> order,
-          Hashtable<Integer, ShelfRectangle> shelfs,
+  public RoutePlan refindPath(RoutePlan path,
+          List<Pair<Integer, Integer>> order,
+          Hashtable<Integer, Shelf> shelfs,
           int goods_in_cart){
+    RoutePlan stops = refindStops(path, order, shelfs, goods_in_cart);
+    if(stops == null)
+      return null;
+    return planPath(stops, path.getNode(0));
+  }
 
-    int actualNode = path.get(0).getKey();
-    if(distance[actualNode][0] == Integer.MAX_VALUE){
+  /** Choose new stops if cart can't continue with old path, goods reservated
+   *  for the rest of old path are released first
+   *
+   *  @param path Rest of path starting with last achieved node and rest of not achieved nodes
+   *  @param order List of orders with pairs of goods SKU and their number
+   *  @param shelfs Hashtable of shelfs ID and Shelves
+   *  @param goods_in_cart Goods quantity in cart
+   *  @return Wanted nodes with goods, null if the cart can't return to the
+   *          dispensing point (nothing is released then)
+   */
+  public RoutePlan refindStops(RoutePlan path,
+          List<Pair<Integer, Integer>> order,
+          Hashtable<Integer, Shelf> shelfs,
+          int goods_in_cart){
+
+    int actualNode = path.getNode(0);
+    if(this.routes.getDistance(actualNode, 0) == Integer.MAX_VALUE){
       return null;
     }
 
-    List<Pair<String, Integer>> newOrder = new ArrayList<>(); //new order list
+    List<Pair<Integer, Integer>> newOrder = new ArrayList<>(); //new order list
     boolean newItem = true;
 
     for(int i = 1; i < path.size();i++){  //foreach node in path
-      if(path.get(i).getValue().getValue() > 0){ //if there is goods to pickup
+      if(path.getQuantity(i) > 0){ //if there is goods to pickup
         newItem = true;
         for(int j = 0; j < newOrder.size(); j++){ //foreach in newOrder list
-          if(newOrder.get(j).getKey().equals(path.get(i).getValue().getKey())){  //good with same name is yet in newOrder list
+          if(newOrder.get(j).getKey() == path.getSKU(i)){  //good with same SKU is yet in newOrder list
             newItem = false;
             int tmpItemsNumber = newOrder.get(j).getValue();
-            newOrder.set(j, new Pair<String, Integer>(path.get(i).getValue().getKey(), path.get(i).getValue().getValue() + tmpItemsNumber));
+            newOrder.set(j, new Pair<Integer, Integer>(path.getSKU(i), path.getQuantity(i) + tmpItemsNumber));
             break;
           }
         }
         if(newItem){  //it is new item
-          newOrder.add(new Pair<String, Integer>(path.get(i).getValue().getKey(), path.get(i).getValue().getValue()));  //add it to newOrder list
-        }
-
-        Integer value = 0;
-        //unreservate items in localShelfs
-        Set<Integer> keys = shelfs.keySet();
-        for(Integer key: keys){
-          if((shelfs.get(key).nodeID == path.get(i).getKey()) && (shelfs.get(key).getGoods().equals(path.get(i).getValue().getKey()))){  //node of shelf and name of item is same
-            value = (this.localShelfs.get(key) - path.get(i).getValue().getValue());
-            this.localShelfs.put(key,value);  //reduce number of reservated items in actual shelf
-            break;
-          }
+          newOrder.add(new Pair<Integer, Integer>(path.getSKU(i), path.getQuantity(i)));  //add it to newOrder list
         }
       }
     }
-    for(int i = 0; i < newOrder.size(); i++){
-    }
 
-    return findPath(newOrder, shelfs, actualNode, goods_in_cart);  //return new path
+    //unreservate items of not achieved nodes in shelfs reservated for the old path
+    this.ledger.release(path.getReservation(), path, 1);
+
+    return findStops(newOrder, shelfs, actualNode, goods_in_cart);  //return new stops
   }
 
   /** Finding complet semi-optimal path for a given order with data about collection of goods
    *
-   *  @param order List of orders with pairs of goods name and their number
-   *  @param shelfs Hashtable of shelfs ID and ShelfRectangles
+   *  @param order List of orders with pairs of goods SKU and their number
+   *  @param shelfs Hashtable of shelfs ID and Shelves
    *  @param actualNode The node number where the cart is currently located
    *  @param goods_in_cart Goods quantity in cart
-   *  @return A list of nodes representing the path with the name and number
-   *          of items to be picked up for that node
+   *  @return A route of nodes with the SKU and number of items to be picked
+   *          up for each node
    */
-  public List<Pair<Integer, Pair<String, Integer>>> findPath(
-          List<Pair<String, Integer>> order,
-          Hashtable<Integer, ShelfRectangle> shelfs,
+  public RoutePlan findPath(
+          List<Pair<Integer, Integer>> order,
+          Hashtable<Integer, Shelf> shelfs,
           int actualNode, int goods_in_cart){
-    Pair<String, Integer> doNotPickUp = new Pair<>("", 0);
-    List<Pair<Integer,Pair<String, Integer>>> nodes = orderProcessing(order,shelfs, actualNode, goods_in_cart);  //wanted nodes with goods
-    List<Pair<Integer,Pair<String, Integer>>> nodePath = new ArrayList<>(); //path
+    return planPath(findStops(order, shelfs, actualNode, goods_in_cart), actualNode);
+  }
+
+  /** Choose nodes with wanted goods in order of picking and reservate the goods
+   *
+   *  @param order List of orders with pairs of goods SKU and their number
+   *  @param shelfs Hashtable of shelfs ID and Shelves
+   *  @param actualNode The node number where the cart is currently located
+   *  @param goods_in_cart Goods quantity in cart
+   *  @return Wanted nodes with goods and their quantity, without path between them
+   */
+  public RoutePlan findStops(
+          List<Pair<Integer, Integer>> order,
+          Hashtable<Integer, Shelf> shelfs,
+          int actualNode, int goods_in_cart){
+    while(true){
+      RoutePlan stops = orderProcessing(order, shelfs, actualNode, goods_in_cart);
+      if(this.ledger.reserve(stops.getReservation()))  //other planner could take some goods meanwhile
+        return stops;
+    }
+  }
+
+  /** Complete path through the chosen stops -- improve their order and add
+   *  shortest paths between them. Reservations are not changed and routes are
+   *  only read, so it's safe to call it from other thread while routes don't change
+   *
+   *  @param stops Wanted nodes with goods returned by findStops() or refindStops()
+   *  @param actualNode The node number where the cart is currently located
+   *  @return A route of nodes with the SKU and number of items to be picked
+   *          up for each node
+   */
+  public RoutePlan planPath(RoutePlan stops, int actualNode){
+    RoutePlan nodes = improveStops(stops, actualNode);  //wanted nodes with goods
+    RoutePlan nodePath = new RoutePlan(); //path
 
     if(nodes.isEmpty()){
-      nodePath.add(new Pair<Integer, Pair<String, Integer>>(actualNode, doNotPickUp));
-      nodePath.addAll(constructPath(actualNode,0));
-      nodePath.add(new Pair<Integer, Pair<String, Integer>>(0, doNotPickUp)); //add starting node
+      nodePath.add(actualNode);
+      constructPath(nodePath, actualNode,0);
+      nodePath.add(0); //add starting node
     }
     else{
       //add path from actual node to first wanted node
-      nodePath.add(new Pair<Integer, Pair<String, Integer>>(actualNode, doNotPickUp));
-      nodePath.addAll(constructPath(actualNode,nodes.get(0).getKey()));
-      nodePath.add(nodes.get(0));
+      nodePath.add(actualNode);
+      constructPath(nodePath, actualNode,nodes.getNode(0));
+      nodePath.add(nodes.getNode(0), nodes.getSKU(0), nodes.getQuantity(0));
 
       for(int i = 0; i < (nodes.size()-1);i++){
-        nodePath.addAll(constructPath(nodes.get(i).getKey(),nodes.get(i+1).getKey()));
-        nodePath.add(nodes.get(i+1));
+        constructPath(nodePath, nodes.getNode(i),nodes.getNode(i+1));
+        nodePath.add(nodes.getNode(i+1), nodes.getSKU(i+1), nodes.getQuantity(i+1));
       }
 
-      nodePath.addAll(constructPath(nodes.get(nodes.size() - 1).getKey(),0)); //add path between last wanted node and starting point(default 0)
-      nodePath.add(new Pair<Integer, Pair<String, Integer>>(0, doNotPickUp)); //add starting node
+      constructPath(nodePath, nodes.getNode(nodes.size() - 1),0); //add path between last wanted node and starting point(default 0)
+      nodePath.add(0); //add starting node
     }
-    for(int i = 0; i < nodePath.size() - 1; i++){
-      if(nodePath.get(i).getKey() == nodePath.get(i + 1).getKey() && nodePath.get(i).getKey() != 0)
-      {
-        int value = nodePath.get(i + 1).getValue().getValue();
-        Pair<String, Integer> tmpPickUp = new Pair<>(nodePath.get(i).getValue().getKey(), nodePath.get(i).getValue().getValue() + value);
-        int key = nodePath.get(i).getKey();
-        nodePath.set(i, new Pair<Integer, Pair<String, Integer>>(key, tmpPickUp));
-        nodePath.remove(i+1);
+    RoutePlan merged = mergeStops(nodePath);
+    merged.setReservation(stops.getReservation());
+    return merged;
+  }
+
+  /** Merge two following stops at the same node (except the starting point)
+   *  into single one, the node following the merged stop is kept as it is
+   *
+   *  @param path Route with the stops
+   *  @return New route with merged stops
+   */
+  private RoutePlan mergeStops(RoutePlan path){
+    RoutePlan merged = new RoutePlan(path.size());
+
+    int i = 0;
+    while(i < path.size()){
+      if(i + 1 < path.size() && path.getNode(i) == path.getNode(i + 1) && path.getNode(i) != 0){
+        merged.add(path.getNode(i), path.getSKU(i), path.getQuantity(i) + path.getQuantity(i + 1));
+        i += 2;
+        if(i < path.size()){
+          merged.add(path.getNode(i), path.getSKU(i), path.getQuantity(i));
+          i++;
+        }
+      }
+      else{
+        merged.add(path.getNode(i), path.getSKU(i), path.getQuantity(i));
         i++;
       }
     }
-    return nodePath;
+
+    return merged;
   }
 }
@@ -0,0 +1,76 @@
+package ija.project.warehouse;
+
+
+/** Represents a node on which a cart can travel. The routes between the nodes
+ *  and their state are held by the FloorGraph. The class doesn't depend on
+ *  JavaFX, it's visualized by the NodeCircle.
+ *
+ * @author Tomas Beranek (xberan46)
+ * @author Simon Slobodnik (xslobo06)
+ */
+public class PathNode {
+  public int ID = -1;
+  private int x;
+  private int y;
+
+
+  /**
+   * @param x The node's x coordinate.
+   * @param y The node's y coordinate.
+   * @param id The node's ID.
+   */
+  public PathNode(int x, int y, int id) {
+    this.ID = id;
+    this.x = x;
+    this.y = y;
+  }
+
+
+  /** Gets the node's x coordinate.
+   *
+   * @return The node's x coordinate.
+   */
+  public int getX() {
+    return this.x;
+  }
+
+
+  /** Gets the node's y coordinate.
+   *
+   * @return The node's y coordinate.
+   */
+  public int getY() {
+    return this.y;
+  }
+
+
+  /** Sets the node's x coordinate.
+   *
+   * @param x The node's x coordinate.
+   */
+  public void setX(int x) {
+    this.x = x;
+  }
+
+
+  /** Sets the node's y coordinate.
+   *
+   * @param y The node's y coordinate.
+   */
+  public void setY(int y) {
+    this.y = y;
+  }
+
+
+  /** Calculates the distance between this node and given node.
+   *
+   * @param p A node to which a distance should be calculated.
+   * @return The distance between this node in 'p'.
+   */
+  public int distance(PathNode p) {
+    double dx = this.x - p.getX();
+    double dy = this.y - p.getY();
+
+    return (int)Math.sqrt(dx*dx + dy*dy);
+  }
+}
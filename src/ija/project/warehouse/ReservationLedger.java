@@ -0,0 +1,172 @@
+package ija.project.warehouse;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/** Represent reservated goods in shelfs. Number of reservated items of each
+ *  shelf is kept in atomic array and changed only by compare-and-set, so more
+ *  planners can reservate goods at once without locks and no shelf is ever
+ *  reservated over its quantity. Goods of whole order are reservated at once
+ *  or not at all.
+ *
+ *  Picked up goods stay reservated until the path of the cart is recalculated,
+ *  the same as the goods the cart hasn't picked up yet.
+ *
+ * @author Simon Slobodnik (xslobo06)
+ */
+public class ReservationLedger {
+  private final HashMap<Integer, Integer> slots = new HashMap<>(); //index of each shelf ID, never changes
+  private final Shelf[] shelfs; //shelfs by index
+  private final AtomicIntegerArray reserved; //reservated items by index
+
+  /** Goods reservated for single path -- shelfs with node and SKU of the stop
+   *  and number of items. It's filled by single planner and doesn't change
+   *  after it's reservated, so it can be shared by copies of the path.
+   */
+  public static final class Reservation {
+    private int size = 0;
+    private int[] shelfIDs = new int[4];
+    private int[] nodes = new int[4];
+    private int[] skus = new int[4];
+    private int[] quantities = new int[4];
+
+    /** Add items to the reservation, not reservated in ledger until
+     *  ReservationLedger.reserve() is called
+     *
+     *  @param shelfID ID of the shelf
+     *  @param nodeID Number of node next to the shelf
+     *  @param sku SKU of the goods
+     *  @param quantity Number of items
+     */
+    public void add(int shelfID, int nodeID, int sku, int quantity){
+      if(this.size == this.shelfIDs.length){
+        this.shelfIDs = Arrays.copyOf(this.shelfIDs, this.size * 2);
+        this.nodes = Arrays.copyOf(this.nodes, this.size * 2);
+        this.skus = Arrays.copyOf(this.skus, this.size * 2);
+        this.quantities = Arrays.copyOf(this.quantities, this.size * 2);
+      }
+      this.shelfIDs[this.size] = shelfID;
+      this.nodes[this.size] = nodeID;
+      this.skus[this.size] = sku;
+      this.quantities[this.size] = quantity;
+      this.size++;
+    }
+
+    /** Get number of items of the reservation in given shelf
+     *
+     *  @param shelfID ID of the shelf
+     *  @return Number of items
+     */
+    public int getQuantity(int shelfID){
+      int quantity = 0;
+      for(int i = 0; i < this.size; i++){
+        if(this.shelfIDs[i] == shelfID)
+          quantity += this.quantities[i];
+      }
+      return quantity;
+    }
+  }
+
+  /**
+   * @param shelfs Hashtable of shelfs ID and object Shelf
+   */
+  public ReservationLedger(Hashtable<Integer, Shelf> shelfs) {
+    this.shelfs = new Shelf[shelfs.size()];
+    this.reserved = new AtomicIntegerArray(shelfs.size());
+    for(Shelf shelf: shelfs.values()){
+      this.shelfs[this.slots.size()] = shelf;
+      this.slots.put(shelf.shelfID, this.slots.size());
+    }
+  }
+
+  /** Get number of reservated items in shelf
+   *
+   *  @param shelfID ID of the shelf
+   *  @return Number of reservated items
+   */
+  public int getReserved(int shelfID){
+    return this.reserved.get(this.slots.get(shelfID));
+  }
+
+  /** Reservate all goods of the reservation, if any shelf hasn't enough free
+   *  items (other planner was faster), nothing is reservated
+   *
+   *  @param reservation Goods of whole order
+   *  @return True - if the goods were reservated
+   */
+  public boolean reserve(Reservation reservation){
+    for(int i = 0; i < reservation.size; i++){
+      if(!tryReserve(reservation.shelfIDs[i], reservation.quantities[i])){
+        for(int j = 0; j < i; j++)  //roll back
+          this.reserved.addAndGet(this.slots.get(reservation.shelfIDs[j]), -reservation.quantities[j]);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Reservate items in single shelf if there are enough free items
+   *
+   *  @param shelfID ID of the shelf
+   *  @param quantity Number of items
+   *  @return True - if the items were reservated
+   */
+  private boolean tryReserve(int shelfID, int quantity){
+    int slot = this.slots.get(shelfID);
+    while(true){
+      int current = this.reserved.get(slot);
+      if(current + quantity > this.shelfs[slot].getQuantity())
+        return false;
+      if(this.reserved.compareAndSet(slot, current, current + quantity))
+        return true;
+    }
+  }
+
+  /** Release goods of the reservation which are still to be picked up by
+   *  the rest of the path. Only shelfs of the reservation are released and never
+   *  more items than the reservation has.
+   *
+   *  @param reservation Goods reservated for the path, nothing is released if null
+   *  @param path The path for which the goods were reservated
+   *  @param from Index of the first stop of the path which is not achieved yet
+   */
+  public void release(Reservation reservation, RoutePlan path, int from){
+    if(reservation == null)
+      return;
+
+    int[] left = Arrays.copyOf(reservation.quantities, reservation.size);
+    for(int i = from; i < path.size(); i++){
+      int quantity = path.getQuantity(i);
+      for(int j = 0; j < reservation.size && quantity > 0; j++){
+        if(reservation.nodes[j] != path.getNode(i) || reservation.skus[j] != path.getSKU(i))
+          continue;
+        int released = Math.min(quantity, left[j]);
+        left[j] -= released;
+        quantity -= released;
+        this.reserved.addAndGet(this.slots.get(reservation.shelfIDs[j]), -released);
+      }
+    }
+  }
+
+  /** Get copy of reservated goods, only shelfs with some reservated goods are included
+   *
+   *  @return Hashtable of shelfs ID and numbers of reservated items
+   */
+  public Hashtable<Integer, Integer> getReservations(){
+    Hashtable<Integer, Integer> reservations = new Hashtable<>();
+    for(int i = 0; i < this.shelfs.length; i++){
+      if(this.reserved.get(i) != 0)
+        reservations.put(this.shelfs[i].shelfID, this.reserved.get(i));
+    }
+    return reservations;
+  }
+
+  /** Replace reservated goods, shelfs which are not included have no reservated goods
+   *
+   *  @param reservations Hashtable of shelfs ID and numbers of reservated items
+   */
+  public void setReservations(Hashtable<Integer, Integer> reservations){
+    for(int i = 0; i < this.shelfs.length; i++)
+      this.reserved.set(i, reservations.getOrDefault(this.shelfs[i].shelfID, 0));
+  }
+}
@@ -0,0 +1,318 @@
+package ija.project.warehouse;
+
+import java.util.*;
+
+/** Represent space-time reservations of carts -- which cart occupies a cell
+ *  (node or route) in each time slot of SLOT ms. The slots are grouped into
+ *  buckets of BUCKET_SLOTS consecutive slots, each bucket is a small hash
+ *  table with open addressing from cell and slot to the cart, so the memory
+ *  grows only with the number of reservated cells and not with the size of
+ *  the floor plan. The buckets are kept in a window of consecutive buckets,
+ *  so a bucket is found without hashing, the buckets which have passed are
+ *  dropped from the window and reused.
+ *
+ *  A cell is a number chosen by the user of the table, TrafficPlanner uses
+ *  cells 0..n-1 for nodes and two cells after them for each route, one for
+ *  each direction. A cell is reservated either by single cart (a node) or
+ *  shared by more carts (carts following each other on a route), a shared
+ *  cell has an entry for each of its carts.
+ *
+ * @author Simon Slobodnik (xslobo06)
+ */
+public class ReservationTable {
+  /** Length of a time slot in ms */
+  public static final int SLOT = 250;
+  private static final int BUCKET_SLOTS = 64; //slots of single bucket
+  private Bucket[] window = new Bucket[16]; //consecutive buckets, null if nothing is reservated there
+  private int count = 0; //number of buckets in window
+  private long first = 0; //index of the first bucket of window
+  private long oldest = Long.MIN_VALUE; //buckets before this index were dropped
+  private final ArrayDeque<Bucket> unused = new ArrayDeque<>(); //dropped buckets for reuse
+
+  /** Reservations of BUCKET_SLOTS consecutive slots, hash table with linear
+   *  probing, key is cell * BUCKET_SLOTS + slot in bucket + 1 and 0 is empty,
+   *  a shared key has more entries with different owners in the same cluster
+   */
+  private static final class Bucket {
+    private int[] keys = new int[64];
+    private int[] owners = new int[64];
+    private int size = 0;
+
+    private int index(int key){
+      return (key * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(this.keys.length));
+    }
+
+    private int get(int key){
+      int mask = this.keys.length - 1;
+      for(int i = index(key); this.keys[i] != 0; i = (i + 1) & mask){
+        if(this.keys[i] == key)
+          return this.owners[i];
+      }
+      return 0;
+    }
+
+    private boolean isFree(int key, int owner){
+      int mask = this.keys.length - 1;
+      for(int i = index(key); this.keys[i] != 0; i = (i + 1) & mask){
+        if(this.keys[i] == key && this.owners[i] != owner)
+          return false;
+      }
+      return true;
+    }
+
+    private boolean put(int key, int owner, boolean shared){
+      if(2 * (this.size + 1) > this.keys.length)
+        grow();
+
+      int mask = this.keys.length - 1;
+      int i = index(key);
+      for(; this.keys[i] != 0; i = (i + 1) & mask){
+        if(this.keys[i] == key && (this.owners[i] == owner || !shared))
+          return this.owners[i] == owner;
+      }
+      this.keys[i] = key;
+      this.owners[i] = owner;
+      this.size++;
+      return true;
+    }
+
+    private void remove(int key, int owner){
+      int mask = this.keys.length - 1;
+      int i = index(key);
+      while(this.keys[i] != key || this.owners[i] != owner){
+        if(this.keys[i] == 0)
+          return;
+        i = (i + 1) & mask;
+      }
+
+      //shift following keys of the cluster back, so no key is behind a hole
+      int hole = i;
+      for(i = (i + 1) & mask; this.keys[i] != 0; i = (i + 1) & mask){
+        int home = index(this.keys[i]);
+        if(((i - home) & mask) >= ((i - hole) & mask)){
+          this.keys[hole] = this.keys[i];
+          this.owners[hole] = this.owners[i];
+          hole = i;
+        }
+      }
+      this.keys[hole] = 0;
+      this.size--;
+    }
+
+    private void grow(){
+      int[] keys = this.keys;
+      int[] owners = this.owners;
+      this.keys = new int[keys.length * 2];
+      this.owners = new int[keys.length * 2];
+      this.size = 0;
+      for(int i = 0; i < keys.length; i++){
+        if(keys[i] != 0)
+          put(keys[i], owners[i], true);
+      }
+    }
+
+    private void clear(){
+      Arrays.fill(this.keys, 0);
+      this.size = 0;
+    }
+  }
+
+  /** Get slot of the time
+   *
+   *  @param time Time in ms
+   *  @return Index of slot
+   */
+  public static long slot(long time){
+    return Math.floorDiv(time, SLOT);
+  }
+
+  /** Get key of reservated cell in slot, used to release the reservation
+   *
+   *  @param cell Number of cell
+   *  @param slot Index of slot
+   *  @return Key of the reservation
+   */
+  public static long key(int cell, long slot){
+    return (slot << 32) | cell;
+  }
+
+  /** Get cart which reservated the cell in slot
+   *
+   *  @param cell Number of cell
+   *  @param slot Index of slot
+   *  @return ID of the cart (any of them if the cell is shared), 0 if the cell is free
+   */
+  public int getOwner(int cell, long slot){
+    Bucket bucket = getBucket(Math.floorDiv(slot, BUCKET_SLOTS));
+    if(bucket == null)
+      return 0;
+    return bucket.get(bucketKey(cell, slot));
+  }
+
+  /** Check if the cell is free in all slots of the time interval
+   *
+   *  @param cell Number of cell
+   *  @param from Start of the interval in ms
+   *  @param to End of the interval in ms
+   *  @param owner ID of the cart, its own reservations are free
+   *  @return True - if no other cart reservated the cell
+   */
+  public boolean isFree(int cell, long from, long to, int owner){
+    for(long slot = slot(from); slot <= slot(to); slot++){
+      Bucket bucket = getBucket(Math.floorDiv(slot, BUCKET_SLOTS));
+      if(bucket != null && !bucket.isFree(bucketKey(cell, slot), owner))
+        return false;
+    }
+    return true;
+  }
+
+  /** Reservate the cell in slot only for the cart, a slot reservated by other
+   *  cart is kept
+   *
+   *  @param cell Number of cell
+   *  @param slot Index of slot
+   *  @param owner ID of the cart, greater than 0
+   *  @return True - if the slot is reservated for the cart, false if other cart
+   *          has it or the slot has passed
+   */
+  public boolean reserve(int cell, long slot, int owner){
+    return put(cell, slot, owner, false);
+  }
+
+  /** Reservate the cell in slot for the cart together with other carts which
+   *  share it
+   *
+   *  @param cell Number of cell
+   *  @param slot Index of slot
+   *  @param owner ID of the cart, greater than 0
+   *  @return True - if the slot is reservated for the cart, false if the slot
+   *          has passed
+   */
+  public boolean share(int cell, long slot, int owner){
+    return put(cell, slot, owner, true);
+  }
+
+  /** Release reservations of the cart, slots of other carts are kept
+   *
+   *  @param keys Keys of the reservations
+   *  @param owner ID of the cart
+   */
+  public void release(long[] keys, int owner){
+    if(keys == null)
+      return;
+
+    for(long key: keys){
+      long slot = key >> 32;
+      Bucket bucket = getBucket(Math.floorDiv(slot, BUCKET_SLOTS));
+      if(bucket != null)
+        bucket.remove(bucketKey((int)key, slot), owner);
+    }
+  }
+
+  /** Drop buckets which ended before the time, they can't be reservated anymore
+   *
+   *  @param time Current time in ms
+   */
+  public void expire(long time){
+    long limit = Math.floorDiv(slot(time), BUCKET_SLOTS);
+    if(limit <= this.oldest)
+      return;
+
+    this.oldest = limit;
+    int dropped = (int)Math.max(0, Math.min(this.count, limit - this.first));
+    for(int i = 0; i < dropped; i++)
+      drop(i);
+    System.arraycopy(this.window, dropped, this.window, 0, this.count - dropped);
+    Arrays.fill(this.window, this.count - dropped, this.count, null);
+    this.count -= dropped;
+    this.first += dropped;
+  }
+
+  /** Drop all reservations
+   */
+  public void clear(){
+    for(int i = 0; i < this.count; i++)
+      drop(i);
+    Arrays.fill(this.window, 0, this.count, null);
+    this.count = 0;
+    this.oldest = Long.MIN_VALUE;
+  }
+
+  /** Get key of the cell in slot inside its bucket
+   *
+   *  @param cell Number of cell
+   *  @param slot Index of slot
+   *  @return Key of the bucket's hash table
+   */
+  private static int bucketKey(int cell, long slot){
+    //BUCKET_SLOTS divides 2^32, so the low 32 bits of slot give the same slot in bucket
+    return cell * BUCKET_SLOTS + Math.floorMod((int)slot, BUCKET_SLOTS) + 1;
+  }
+
+  /** Reservate the cell in slot for the cart, the bucket is added to the
+   *  window if it isn't there
+   *
+   *  @param cell Number of cell
+   *  @param slot Index of slot
+   *  @param owner ID of the cart, greater than 0
+   *  @param shared True - if other carts can have the slot too
+   *  @return True - if the slot is reservated for the cart
+   */
+  private boolean put(int cell, long slot, int owner, boolean shared){
+    long index = Math.floorDiv(slot, BUCKET_SLOTS);
+    if(index < this.oldest)
+      return false;
+
+    if(this.count == 0)
+      this.first = index;
+    if(index < this.first){
+      //move the window to start with the bucket
+      int shift = (int)(this.first - index);
+      ensureCapacity(this.count + shift);
+      System.arraycopy(this.window, 0, this.window, shift, this.count);
+      Arrays.fill(this.window, 0, shift, null);
+      this.count += shift;
+      this.first = index;
+    }
+    if(index >= this.first + this.count){
+      ensureCapacity((int)(index - this.first) + 1);
+      this.count = (int)(index - this.first) + 1;
+    }
+
+    int i = (int)(index - this.first);
+    if(this.window[i] == null)
+      this.window[i] = this.unused.isEmpty() ? new Bucket() : this.unused.pop();
+    return this.window[i].put(bucketKey(cell, slot), owner, shared);
+  }
+
+  /** Get bucket of the window
+   *
+   *  @param index Index of the bucket
+   *  @return The bucket, null if nothing is reservated in it
+   */
+  private Bucket getBucket(long index){
+    if(index < this.first || index >= this.first + this.count)
+      return null;
+    return this.window[(int)(index - this.first)];
+  }
+
+  /** Clear bucket of the window for reuse
+   *
+   *  @param i Index in the window
+   */
+  private void drop(int i){
+    if(this.window[i] != null){
+      this.window[i].clear();
+      this.unused.push(this.window[i]);
+    }
+  }
+
+  /** Make the window large enough
+   *
+   *  @param capacity Number of buckets
+   */
+  private void ensureCapacity(int capacity){
+    if(capacity > this.window.length)
+      this.window = Arrays.copyOf(this.window, Math.max(capacity, this.window.length * 2));
+  }
+}
@@ -0,0 +1,89 @@
+package ija.project.warehouse;
+
+import java.util.*;
+
+
+/** Indexes the batches of the busy carts by the routes of their paths, so
+ *  closing a route finds exactly the carts which may use it without checking
+ *  all of them. A path is indexed from the cart's position when it was
+ *  assigned, the routes passed since then stay in the index until the cart
+ *  gets another path -- the cart itself decides if a closed route is still
+ *  ahead. The batches whose carts have no path (e.g. the dispensing point is
+ *  unreachable) are kept aside, any change of the routes may help them.
+ *
+ * @author Tomas Beranek (xberan46)
+ */
+public class RouteIndex {
+  private ArrayList<List<OrderBatch>> batches = new ArrayList<>(); // by the route ID, a batch for each use
+  private HashMap<OrderBatch, int[]> routes = new HashMap<>(); // the indexed routes of each batch
+  private Set<OrderBatch> stranded = new HashSet<>(); // the carts without a path
+
+
+  /** Indexes the current path of the batch's cart instead of its previous
+   *  one.
+   *
+   * @param batch The batch whose cart has got a path.
+   */
+  public void update(OrderBatch batch) {
+    remove(batch);
+
+    int[] routes = batch.cart.getRemainingRoutes();
+    if (routes == null) {
+      this.stranded.add(batch);
+      return;
+    }
+
+    this.routes.put(batch, routes);
+    for (int route : routes) {
+      while (this.batches.size() <= route)
+        this.batches.add(null);
+      if (this.batches.get(route) == null)
+        this.batches.set(route, new ArrayList<>(2));
+      this.batches.get(route).add(batch);
+    }
+  }
+
+
+  /** Removes the batch from the index, e.g. when it's finished.
+   *
+   * @param batch The removed batch.
+   */
+  public void remove(OrderBatch batch) {
+    this.stranded.remove(batch);
+
+    int[] routes = this.routes.remove(batch);
+    if (routes == null)
+      return;
+
+    for (int route : routes) {
+      this.batches.get(route).remove(batch);
+    }
+  }
+
+
+  /** Finds the batches which may be affected by closing the routes -- those
+   *  whose carts' paths use any of them and those whose carts have no path.
+   *
+   * @param graph The routes of the floor plan.
+   * @param closedRoutes The closed routes specified as -- node1ID and node2ID.
+   * @return The affected batches.
+   */
+  public Set<OrderBatch> getAffected(FloorGraph graph, List<Pair<Integer, Integer>> closedRoutes) {
+    Set<OrderBatch> affected = new HashSet<>(this.stranded);
+    for (Pair<Integer, Integer> closed : closedRoutes) {
+      int route = graph.findRoute(closed.getKey(), closed.getValue());
+      if (route >= 0 && route < this.batches.size() && this.batches.get(route) != null)
+        affected.addAll(this.batches.get(route));
+    }
+    return affected;
+  }
+
+
+  /** Removes all the batches from the index.
+   */
+  public void clear() {
+    this.batches.clear();
+    this.routes.clear();
+    this.stranded.clear();
+  }
+}
@@ -0,0 +1,169 @@
+package ija.project.warehouse;
+
+import java.nio.*;
+
+/** Represent n*n matrix of distances or next nodes stored off the heap in
+ *  a ByteBuffer (direct or memory-mapped), row by row. The cells are only as
+ *  wide as the range of the values allows -- 16 or 32 bits. A buffer holds at
+ *  most 2 GB, so n*n cells always have an int index.
+ *
+ * @author Simon Slobodnik (xslobo06)
+ */
+public interface RouteMatrix {
+  /** Get value of cell
+   *
+   *  @param u Row
+   *  @param v Column
+   *  @return Value of the cell
+   */
+  int get(int u, int v);
+
+  /** Set value of cell
+   *
+   *  @param u Row
+   *  @param v Column
+   *  @param value New value of the cell
+   */
+  void set(int u, int v, int value);
+
+  /** Set all cells to the same value
+   *
+   *  @param value New value of all cells
+   */
+  void fill(int value);
+
+  /** Get index of cell
+   *
+   *  @param u Row
+   *  @param v Column
+   *  @param n Number of nodes
+   *  @return Index of the cell in the buffer
+   */
+  static int index(int u, int v, int n) {
+    return (int)((long)u * n + v);  //less than n*n, checked by cellCount
+  }
+
+  /** Check that n*n cells fit into the buffer
+   *
+   *  @param n Number of nodes
+   *  @param capacity Number of cells of the buffer
+   *  @return Number of cells of the matrix
+   */
+  static int cellCount(int n, int capacity) {
+    long size = (long)n * n;
+    if (size > capacity)
+      throw new IllegalArgumentException("matrix of " + n + " nodes needs " + size + " cells, the buffer has " + capacity);
+    return (int)size;
+  }
+
+
+  /** Matrix of distances with 16-bit unsigned cells, Integer.MAX_VALUE (no
+   *  path) is stored as 0xFFFF, so the distances must be less than that.
+   *  Longer distances are stored as no path too, Floyd-Warshall can meet them
+   *  on the way even if all the final distances are shorter.
+   */
+  final class Distances16 implements RouteMatrix {
+    private final CharBuffer cells;
+    private final int n;
+    private final int size; //n*n
+
+    /**
+     * @param buffer Memory of the matrix, at least 2*n*n bytes
+     * @param n Number of nodes
+     */
+    public Distances16(ByteBuffer buffer, int n) {
+      this.cells = buffer.order(ByteOrder.nativeOrder()).asCharBuffer();
+      this.n = n;
+      this.size = cellCount(n, this.cells.capacity());
+    }
+
+    @Override
+    public int get(int u, int v) {
+      char value = this.cells.get(index(u, v, this.n));
+      return value == Character.MAX_VALUE ? Integer.MAX_VALUE : value;
+    }
+
+    @Override
+    public void set(int u, int v, int value) {
+      this.cells.put(index(u, v, this.n), value >= Character.MAX_VALUE ? Character.MAX_VALUE : (char)value);
+    }
+
+    @Override
+    public void fill(int value) {
+      char cell = value >= Character.MAX_VALUE ? Character.MAX_VALUE : (char)value;
+      for (int i = 0; i < this.size; i++)
+        this.cells.put(i, cell);
+    }
+  }
+
+
+  /** Matrix of node numbers with 16-bit signed cells, enough for less than
+   *  32768 nodes and small negative marks.
+   */
+  final class Nodes16 implements RouteMatrix {
+    private final ShortBuffer cells;
+    private final int n;
+    private final int size; //n*n
+
+    /**
+     * @param buffer Memory of the matrix, at least 2*n*n bytes
+     * @param n Number of nodes
+     */
+    public Nodes16(ByteBuffer buffer, int n) {
+      this.cells = buffer.order(ByteOrder.nativeOrder()).asShortBuffer();
+      this.n = n;
+      this.size = cellCount(n, this.cells.capacity());
+    }
+
+    @Override
+    public int get(int u, int v) {
+      return this.cells.get(index(u, v, this.n));
+    }
+
+    @Override
+    public void set(int u, int v, int value) {
+      this.cells.put(index(u, v, this.n), (short)value);
+    }
+
+    @Override
+    public void fill(int value) {
+      for (int i = 0; i < this.size; i++)
+        this.cells.put(i, (short)value);
+    }
+  }
+
+
+  /** Matrix with 32-bit cells for any distances and node numbers.
+   */
+  final class Ints32 implements RouteMatrix {
+    private final IntBuffer cells;
+    private final int n;
+    private final int size; //n*n
+
+    /**
+     * @param buffer Memory of the matrix, at least 4*n*n bytes
+     * @param n Number of nodes
+     */
+    public Ints32(ByteBuffer buffer, int n) {
+      this.cells = buffer.order(ByteOrder.nativeOrder()).asIntBuffer();
+      this.n = n;
+      this.size = cellCount(n, this.cells.capacity());
+    }
+
+    @Override
+    public int get(int u, int v) {
+      return this.cells.get(index(u, v, this.n));
+    }
+
+    @Override
+    public void set(int u, int v, int value) {
+      this.cells.put(index(u, v, this.n), value);
+    }
+
+    @Override
+    public void fill(int value) {
+      for (int i = 0; i < this.size; i++)
+        this.cells.put(i, value);
+    }
+  }
+}
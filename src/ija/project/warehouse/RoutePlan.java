@@ -0,0 +1,305 @@
+package ija.project.warehouse;
+
+import java.util.*;
+
+
+/** Represents a planned route of a cart -- a sequence of nodes, each with
+ *  the goods (SKU) and quantity to be picked up at it. The route is stored in
+ *  parallel arrays of primitives, so even a long route with many trips to
+ *  the dispensing point takes only a few objects.
+ *
+ *  A node at which the cart only passes through has the SKU
+ *  GoodsDictionary.NONE, a node at which the cart dispenses the goods has
+ *  the SKU GoodsDictionary.DISPENSE.
+ *
+ * @author Tomas Beranek (xberan46)
+ */
+public class RoutePlan {
+  private int size = 0;
+  private int[] nodes;
+  private int[] skus;
+  private int[] quantities;
+  private int[] distances; // from the first node along the route
+  private int[] routes; // route to the next node, -1 if there is none
+  private ReservationLedger.Reservation reservation = null; // the goods reserved for the route
+  private int[] dwells = null; // the planned time spent at each node in ms, null if untimed
+  private long[] slots = null; // the cells reserved in ReservationTable for the route
+  private int horizon = -1; // the cart stops here to be replanned, -1 if the whole route is timed
+
+
+  public RoutePlan() {
+    this(16);
+  }
+
+
+  /**
+   * @param capacity The expected number of nodes in the route.
+   */
+  public RoutePlan(int capacity) {
+    capacity = Math.max(capacity, 1);
+    this.nodes = new int[capacity];
+    this.skus = new int[capacity];
+    this.quantities = new int[capacity];
+    this.distances = new int[capacity];
+    this.routes = new int[capacity];
+  }
+
+
+  /** Appends a node to the end of the route.
+   *
+   * @param nodeID The ID of the node.
+   * @param sku The SKU of the goods to be picked up at the node.
+   * @param quantity The quantity of the goods to be picked up at the node.
+   */
+  public void add(int nodeID, int sku, int quantity) {
+    if (this.size == this.nodes.length) {
+      int capacity = this.size * 2;
+      this.nodes = Arrays.copyOf(this.nodes, capacity);
+      this.skus = Arrays.copyOf(this.skus, capacity);
+      this.quantities = Arrays.copyOf(this.quantities, capacity);
+      this.distances = Arrays.copyOf(this.distances, capacity);
+      this.routes = Arrays.copyOf(this.routes, capacity);
+      if (this.dwells != null)
+        this.dwells = Arrays.copyOf(this.dwells, capacity);
+    }
+
+    this.nodes[this.size] = nodeID;
+    this.skus[this.size] = sku;
+    this.quantities[this.size] = quantity;
+    this.size++;
+  }
+
+
+  /** Appends a node at which the cart only passes through.
+   *
+   * @param nodeID The ID of the node.
+   */
+  public void add(int nodeID) {
+    add(nodeID, GoodsDictionary.NONE, 0);
+  }
+
+
+  /** Gets the number of nodes in the route.
+   *
+   * @return The number of nodes.
+   */
+  public int size() {
+    return this.size;
+  }
+
+
+  /** Checks if there is no node in the route.
+   *
+   * @return True - if the route is empty.
+   */
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+
+  /** Gets the ID of the i-th node of the route.
+   *
+   * @param i The index in the route.
+   * @return The ID of the node.
+   */
+  public int getNode(int i) {
+    return this.nodes[i];
+  }
+
+
+  /** Gets the SKU of the goods to be picked up at the i-th node of the route.
+   *
+   * @param i The index in the route.
+   * @return The SKU of the goods.
+   */
+  public int getSKU(int i) {
+    return this.skus[i];
+  }
+
+
+  /** Gets the quantity of the goods to be picked up at the i-th node of
+   *  the route.
+   *
+   * @param i The index in the route.
+   * @return The quantity of the goods.
+   */
+  public int getQuantity(int i) {
+    return this.quantities[i];
+  }
+
+
+  /** Gets the distance from the first node to the i-th node along the route.
+   *  The distances must be calculated by measure() first.
+   *
+   * @param i The index in the route.
+   * @return The distance along the route.
+   */
+  public int getDistance(int i) {
+    return this.distances[i];
+  }
+
+
+  /** Gets the ID of the route from the i-th node to the next node of
+   *  the route. The routes must be found by measure() first.
+   *
+   * @param i The index in the route.
+   * @return The ID of the route, -1 if there is no route between the nodes.
+   */
+  public int getRoute(int i) {
+    return this.routes[i];
+  }
+
+
+  /** Gets the length of the whole route. The distances must be calculated by
+   *  measure() first.
+   *
+   * @return The length of the route.
+   */
+  public int getLength() {
+    if (this.size == 0)
+      return 0;
+
+    return this.distances[this.size - 1];
+  }
+
+
+  /** Calculates the distances from the first node to each node along
+   *  the route and finds the routes between the consecutive nodes.
+   *
+   * @param graph The routes of the floor plan.
+   */
+  public void measure(FloorGraph graph) {
+    if (this.size == 0)
+      return;
+
+    this.distances[0] = 0;
+
+    for (int i = 1; i < this.size; i++) {
+      this.distances[i] = this.distances[i-1] + graph.distance(this.nodes[i-1], this.nodes[i]);
+      this.routes[i-1] = graph.findRoute(this.nodes[i-1], this.nodes[i]);
+    }
+    this.routes[this.size - 1] = -1;
+  }
+
+
+  /** Checks if the route has a planned schedule of the times spent at
+   *  the nodes.
+   *
+   * @return True - if the route is timed.
+   */
+  public boolean isTimed() {
+    return this.dwells != null;
+  }
+
+
+  /** Gets the planned time the cart spends at the i-th node of the route,
+   *  including picking up the goods and waiting for other carts.
+   *
+   * @param i The index in the route.
+   * @return The time in ms, 0 if the route isn't timed.
+   */
+  public int getDwell(int i) {
+    if (this.dwells == null)
+      return 0;
+
+    return this.dwells[i];
+  }
+
+
+  /** Sets the planned time the cart spends at the i-th node of the route,
+   *  which makes the route timed.
+   *
+   * @param i The index in the route.
+   * @param dwell The time in ms.
+   */
+  public void setDwell(int i, int dwell) {
+    if (this.dwells == null)
+      this.dwells = new int[this.nodes.length];
+
+    this.dwells[i] = dwell;
+  }
+
+
+  /** Gets the index of the node at which the cart stops to be replanned,
+   *  the timed route ends there and the rest is only the shortest way
+   *  through the stops.
+   *
+   * @return The index in the route, -1 if the whole route is timed.
+   */
+  public int getHorizon() {
+    return this.horizon;
+  }
+
+
+  /** Sets the index of the node at which the cart stops to be replanned.
+   *
+   * @param horizon The index in the route, -1 if the whole route is timed.
+   */
+  public void setHorizon(int horizon) {
+    this.horizon = horizon;
+  }
+
+
+  /** Gets the cells of the space-time reservation table reserved for
+   *  the route.
+   *
+   * @return The keys of the reservations, null if there are none.
+   */
+  public long[] getSlots() {
+    return this.slots;
+  }
+
+
+  /** Sets the cells of the space-time reservation table reserved for
+   *  the route.
+   *
+   * @param slots The keys of the reservations.
+   */
+  public void setSlots(long[] slots) {
+    this.slots = slots;
+  }
+
+
+  /** Gets the goods reserved in the shelves for the route.
+   *
+   * @return The reservation, null if the route hasn't reserved anything.
+   */
+  public ReservationLedger.Reservation getReservation() {
+    return this.reservation;
+  }
+
+
+  /** Sets the goods reserved in the shelves for the route.
+   *
+   * @param reservation The reservation.
+   */
+  public void setReservation(ReservationLedger.Reservation reservation) {
+    this.reservation = reservation;
+  }
+
+
+  /** Creates a copy of the route from the given index to the end.
+   *  The copy keeps the reservation of the whole route. The
+   *  distances are measured from the new first node.
+   *
+   * @param from The index of the first node of the new route.
+   * @return The rest of the route.
+   */
+  public RoutePlan subPlan(int from) {
+    RoutePlan plan = new RoutePlan(this.size - from);
+    plan.size = this.size - from;
+    plan.reservation = this.reservation;
+
+    System.arraycopy(this.nodes, from, plan.nodes, 0, plan.size);
+    System.arraycopy(this.skus, from, plan.skus, 0, plan.size);
+    System.arraycopy(this.quantities, from, plan.quantities, 0, plan.size);
+    System.arraycopy(this.routes, from, plan.routes, 0, plan.size);
+    for (int i = 0; i < plan.size; i++) {
+      plan.distances[i] = this.distances[from + i] - this.distances[from];
+    }
+    if (this.dwells != null)
+      plan.dwells = Arrays.copyOfRange(this.dwells, from, from + plan.size);
+
+    return plan;
+  }
+}
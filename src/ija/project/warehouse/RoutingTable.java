@@ -0,0 +1,66 @@
+package ija.project.warehouse;
+
+import java.util.*;
+
+/** Represent shortest paths between nodes of a floor plan used by PathFinder.
+ *  The paths can be precalculated for all pairs of nodes (matrix) or searched
+ *  on demand (sparse), the backend is chosen by the floor plan.
+ *
+ * @author Simon Slobodnik (xslobo06)
+ */
+public interface RoutingTable {
+  /** All-pairs matrixes calculated by Floyd-Warshall */
+  String MATRIX = "matrix";
+  /** Shortest-path trees searched on demand by Dijkstra and A* */
+  String SPARSE = "sparse";
+
+  /** Create shortest paths of the floor plan, a floor plan too large for
+   *  matrixes gets sparse routing instead
+   *
+   *  @param graph Routes between nodes of the floor plan
+   *  @param routing Backend of shortest paths -- MATRIX or SPARSE
+   *  @return Calculated shortest paths
+   */
+  static RoutingTable create(FloorGraph graph, String routing){
+    if(routing.equals(SPARSE))
+      return new SparseRoutingTable(graph);
+    if(!MatrixRoutingTable.fits(graph)){
+      System.err.printf("WARNING: routing matrixes support at most %d nodes, the floor plan has %d, using sparse routing%n",
+                        MatrixRoutingTable.MAX_NODES, graph.size());
+      return new SparseRoutingTable(graph);
+    }
+    return new MatrixRoutingTable(graph);
+  }
+
+  /** Calculate shortest paths of the floor plan from the scratch
+   *
+   *  @param graph Routes between nodes of the floor plan
+   */
+  void setGraph(FloorGraph graph);
+
+  /** Update shortest paths after some routes were closed or opened
+   *
+   *  @param graph Routes between nodes with already updated snapshot
+   *  @param removedEdges Closed routes as pairs of nodes ID
+   *  @param addedEdges Opened routes as pairs of nodes ID
+   */
+  void updateEdges(FloorGraph graph,
+          List<Pair<Integer, Integer>> removedEdges,
+          List<Pair<Integer, Integer>> addedEdges);
+
+  /** Get length of the shortest path between two nodes
+   *
+   *  @param u Number of start node
+   *  @param v Number of target node
+   *  @return Length of the path, Integer.MAX_VALUE if there is no path
+   */
+  int getDistance(int u, int v);
+
+  /** Get the shortest path between two nodes, without first and last node
+   *
+   *  @param u Number of start node
+   *  @param v Number of target node
+   *  @return Numbers of nodes on the path, null if there is no path
+   */
+  List<Integer> getPath(int u, int v);
+}
@@ -0,0 +1,129 @@
+package ija.project.warehouse;
+
+
+/** Represents a shelf in a warehouse. A shelf can contain only a single type
+ *  of goods. The class doesn't depend on JavaFX, it's visualized by
+ *  the ShelfRectangle.
+ *
+ * @author Tomas Beranek (xberan46)
+ */
+public class Shelf {
+  public int shelfID = -1;
+  public int nodeID = -1;
+  private int x;
+  private int y;
+  private int width;
+  private int height;
+  private int goodsSKU = GoodsDictionary.NONE;
+  private Integer goodsQuantity;
+
+
+  /**
+   * @param x The shelf's x coordinate of the top left corner.
+   * @param y The shelf's y coordinate of the top left corner.
+   * @param w The shelf's width.
+   * @param h The shelf's height.
+   * @param ID The shelf's ID.
+   * @param nodeID The associated node's ID.
+   */
+  public Shelf(int x, int y, int w, int h, int ID, int nodeID) {
+    this.x = x;
+    this.y = y;
+    this.width = w;
+    this.height = h;
+    this.shelfID = ID;
+    this.nodeID = nodeID;
+  }
+
+
+  /** Gets the shelf's x coordinate of the top left corner.
+   *
+   * @return The shelf's x coordinate.
+   */
+  public int getX() {
+    return this.x;
+  }
+
+
+  /** Gets the shelf's y coordinate of the top left corner.
+   *
+   * @return The shelf's y coordinate.
+   */
+  public int getY() {
+    return this.y;
+  }
+
+
+  /** Gets the shelf's width.
+   *
+   * @return The shelf's width.
+   */
+  public int getWidth() {
+    return this.width;
+  }
+
+
+  /** Gets the shelf's height.
+   *
+   * @return The shelf's height.
+   */
+  public int getHeight() {
+    return this.height;
+  }
+
+
+  /** Overwrittes goods in the shelf.
+   *
+   * @param sku The SKU of the goods.
+   * @param quantity The quantinty of the goods in the shelf.
+   */
+  public void addGoods(int sku, Integer quantity) {
+    this.goodsSKU = sku;
+    this.goodsQuantity = quantity;
+  }
+
+
+  /** Gets the SKU of the goods stored in the shelf.
+   *
+   * @return The SKU of the goods, GoodsDictionary.NONE if the shelf is empty.
+   */
+  public int getGoods() {
+    return this.goodsSKU;
+  }
+
+
+  /** Gets the ID of the assigned node.
+   *
+   * @return The ID of the assigned node.
+   */
+  public int getNode() {
+    return this.nodeID;
+  }
+
+
+  /** Gets the quantity of the goods stored in the shelf.
+   *
+   * @return The quantity of the goods.
+   */
+  public Integer getQuantity() {
+    return this.goodsQuantity;
+  }
+
+
+  /** Sets the quantity of the goods stored in the shelf.
+   *
+   * @param quantity The new quantity of the goods.
+   */
+  public void setQuantity(Integer quantity) {
+    this.goodsQuantity = quantity;
+  }
+
+
+  /** Deacreases the quantity of the goods stored in the shelf by toRemove.
+   *
+   * @param toRemove The new quantity of the goods.
+   */
+  public void decreaseQuantity(int toRemove) {
+    this.goodsQuantity -= toRemove;
+  }
+}
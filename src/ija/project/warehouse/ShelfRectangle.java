@@ -5,50 +5,44 @@ import java.util.*;
 import javafx.scene.shape.Rectangle;
 
 
-/** Represents a shelf in a warehouse. A shelf can contain only a single type
- *  of goods. The class is inherited from the Rectangle class in JavaFX.
+/** Visualizes a shelf in a warehouse. The shelf's state is held by the Shelf,
+ *  this class only delegates to it. The class is inherited from the Rectangle
+ *  class in JavaFX.
  *
  * @author Tomas Beranek (xberan46)
  */
 public class ShelfRectangle extends Rectangle {
   public int shelfID = -1;
   public int nodeID = -1;
-  private String goodsName;
-  private Integer goodsQuantity;
+  private Shelf shelf;
 
 
   /**
-   * @param x The shelf’s x coordinate of the top left corner.
-   * @param y The shelf’s y coordinate of the top left corner.
-   * @param w The shelf’s width.
-   * @param h The shelf’s height.
-   * @param ID The shelf’s ID.
-   * @param nodeID The associated node's ID.
+   * @param shelf The visualized shelf.
    */
-  public ShelfRectangle(int x, int y, int w, int h, int ID, int nodeID) {
-    super(x, y, w, h);
-    this.shelfID = ID;
-    this.nodeID = nodeID;
+  public ShelfRectangle(Shelf shelf) {
+    super(shelf.getX(), shelf.getY(), shelf.getWidth(), shelf.getHeight());
+    this.shelfID = shelf.shelfID;
+    this.nodeID = shelf.nodeID;
+    this.shelf = shelf;
   }
 
 
-  /** Overwrittes goods in the shelf.
+  /** Gets the visualized shelf.
    *
-   * @param name The name of the goods.
-   * @param quantity The quantinty of the goods in the shelf.
+   * @return The visualized shelf.
    */
-  public void addGoods(String name, Integer quantity) {
-    this.goodsName = name;
-    this.goodsQuantity = quantity;
+  public Shelf getShelf() {
+    return this.shelf;
   }
 
 
-  /** Gets the name of the goods stored in the shelf.
+  /** Gets the SKU of the goods stored in the shelf.
    *
-   * @return The name of the goods.
+   * @return The SKU of the goods.
    */
-  public String getGoods() {
-    return this.goodsName;
+  public int getGoods() {
+    return this.shelf.getGoods();
   }
 
 
@@ -57,7 +51,7 @@ public class ShelfRectangle extends Rectangle {
    * @return The ID of the assigned node.
    */
   public int getNode() {
-    return this.nodeID;
+    return this.shelf.getNode();
   }
 
 
@@ -66,24 +60,6 @@ public class ShelfRectangle extends Rectangle {
    * @return The quantity of the goods.
    */
   public Integer getQuantity() {
-    return this.goodsQuantity;
-  }
-
-
-  /** Sets the quantity of the goods stored in the shelf.
-   *
-   * @param quantity The new quantity of the goods.
-   */
-  public void setQuantity(Integer quantity) {
-    this.goodsQuantity = quantity;
-  }
-
-
-  /** Deacreases the quantity of the goods stored in the shelf by toRemove.
-   *
-   * @param toRemove The new quantity of the goods.
-   */
-  public void decreaseQuantity(int toRemove) {
-    this.goodsQuantity -= toRemove;
+    return this.shelf.getQuantity();
   }
 }
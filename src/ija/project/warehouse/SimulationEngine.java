@@ -0,0 +1,1062 @@
+package ija.project.warehouse;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+
+/** Holds the whole state of the warehouse simulation and advances it in time.
+ *  The engine doesn't depend on JavaFX -- the GUI is only one of its views,
+ *  the simulation can be run headless as fast as the CPU allows.
+ *
+ *  The simulation is driven by discrete events -- arrivals of orders and
+ *  the carts' events (picking up or dispensing goods, stopping to be
+ *  replanned or reaching the end of the path) kept in a priority queue by
+ *  their time. The time jumps from one event to the next one, nothing is
+ *  computed between them. The carts don't check the routes on the way,
+ *  closing a route stops only the carts indexed by it.
+ *
+ *  The orders are read from a stream only shortly before they start -- up to
+ *  READ_AHEAD ms after the next event. The read orders which haven't started
+ *  yet wait in a min-heap by their start, the started ones are kept in a list
+ *  of active orders and the finished ones are moved to a compact history and
+ *  released. Neither the memory nor the speed of the simulation depends on
+ *  the number of future or finished orders.
+ *
+ *  Keyframes -- snapshots of the whole state -- are taken periodically, so
+ *  the simulation can seek to any time by restoring the nearest earlier
+ *  keyframe and processing only the events after it. The number of keyframes
+ *  is bounded, when there are too many of them every second one is dropped
+ *  and the period is doubled.
+ *
+ *  The paths can be planned by a pool of threads. The goods are reserved
+ *  right away in the order of the requests, only completing the path runs in
+ *  the background and the cart waits at its node meanwhile. A frame of the GUI
+ *  (step()) applies the plans finished since the previous frame and doesn't
+ *  wait for the rest. The other ways of running the simulation wait for each
+ *  plan right after the event which requested it.
+ *
+ * @author Tomas Beranek (xberan46)
+ */
+public class SimulationEngine {
+  private FloorGraph graph;
+  private Hashtable<Integer, Shelf> shelves;
+  private GoodsIndex goodsIndex;
+  private Hashtable<Integer, Integer> shelvesInitialQuantity = new Hashtable<>();
+  private OrderStream stream;
+  private Hashtable<Integer, Order> orders = new Hashtable<>(); // the read orders which haven't finished yet
+  private int orderCount = 0; // the number of read and added orders
+  private long lastReadTime = Long.MIN_VALUE; // the start of the last order read from the stream
+  private List<Order> addedOrders = new ArrayList<>();
+  private PriorityQueue<Integer> futureOrders; // indexes of orders by their start
+  private LinkedHashMap<Order, Integer> activeOrders = new LinkedHashMap<>(); // in order of arrival, with indexes
+  private OrderHistory history = new OrderHistory();
+  private Hashtable<Order, OrderBatch> batches = new Hashtable<>();
+  private List<OrderBatch> waitingBatches = new ArrayList<>();
+  private List<Cart> fleet = new ArrayList<>();
+  private Hashtable<Cart, OrderBatch> assignedBatches = new Hashtable<>();
+  private int fleetSize = 0;
+  private PathFinder pathFinder;
+  private int cartCapacity;
+  private String routing;
+  private RoutingTable sharedRoutes = null; // shared with other simulations, null -- own routing
+  private int pickUpTime = Cart.DEFAULT_PICK_UP_TIME; // in ms
+  private long improveTime = PathFinder.DEFAULT_IMPROVE_TIME;
+  private long waveWindow = 0; // in ms
+  private Long currentEpochTime = 0L; // in ms
+  private PriorityQueue<Event> events = new PriorityQueue<>();
+  private long eventCount = 0;
+  private List<Keyframe> keyframes = new ArrayList<>(); // ordered by time
+  private long keyframeInterval = KEYFRAME_INTERVAL;
+  private long nextKeyframeTime = 0;
+  private long lastChangeTime = 0; // the last event or change of the routes or orders
+  private ExecutorService planner = null; // null -- the paths are planned right away
+  private LinkedHashMap<OrderBatch, Plan> plans = new LinkedHashMap<>(); // in order of the requests
+  private RouteIndex routeIndex = new RouteIndex(); // the busy batches by the routes of their paths
+  private TrafficPlanner traffic = null; // null -- the carts pass through each other
+
+  /** The initial period of taking the keyframes in ms. */
+  public static final long KEYFRAME_INTERVAL = 60000;
+  /** The maximal number of kept keyframes. */
+  public static final int MAX_KEYFRAMES = 64;
+  /** How far ahead of the next event the orders are read from the stream in ms. */
+  public static final long READ_AHEAD = 60000;
+
+
+  /** Represents a timestamped event of the simulation -- the end of
+   *  the wave window of an order or the next event of a cart. The events of
+   *  the same time are ordered by their creation.
+   */
+  private static final class Event implements Comparable<Event> {
+    private final long time;
+    private final long sequence;
+    private final int orderIndex; // -1 for an event of a cart
+    private final OrderBatch batch;
+
+    private Event(long time, long sequence, int orderIndex, OrderBatch batch) {
+      this.time = time;
+      this.sequence = sequence;
+      this.orderIndex = orderIndex;
+      this.batch = batch;
+    }
+
+    @Override
+    public int compareTo(Event other) {
+      if (this.time != other.time)
+        return Long.compare(this.time, other.time);
+      return Long.compare(this.sequence, other.sequence);
+    }
+  }
+
+
+  /** Represents a path being planned in the background for the batch's cart.
+   */
+  private static final class Plan {
+    private final RoutePlan stops;
+    private final int startNode;
+    private final Future<RoutePlan> path;
+
+    private Plan(RoutePlan stops, int startNode, Future<RoutePlan> path) {
+      this.stops = stops;
+      this.startNode = startNode;
+      this.path = path;
+    }
+  }
+
+
+  /** Represents a snapshot of the simulation at some time. The carts and
+   *  batches are copied, the shelves and reservations are stored only as
+   *  differences from their initial state. The orders are shared, only
+   *  the unfinished ones, the position of the stream and the size of
+   *  the history are stored.
+   */
+  private static final class Keyframe {
+    private long time;
+    private long eventCount;
+    private int routesVersion;
+    private Hashtable<Integer, Order> orders;
+    private LinkedHashMap<Order, Integer> activeOrders;
+    private int orderCount;
+    private int streamCount;
+    private int addedCount;
+    private long lastReadTime;
+    private int historySize;
+    private List<Cart> fleet = new ArrayList<>();
+    private Hashtable<Order, OrderBatch> batches = new Hashtable<>();
+    private List<OrderBatch> waitingBatches = new ArrayList<>();
+    private Hashtable<Cart, OrderBatch> assignedBatches = new Hashtable<>();
+    private List<Event> events = new ArrayList<>();
+    private Hashtable<Integer, Integer> shelves = new Hashtable<>(); // only the changed ones
+    private Hashtable<Integer, Integer> reservations;
+  }
+
+
+  /**
+   * @param graph The nodes and routes of the floor plan.
+   * @param shelves All the shelves with loaded goods.
+   * @param goodsIndex The index of shelves by the goods stored in them.
+   * @param orders The orders to be processed.
+   * @param cartCapacity The capacity of each cart.
+   * @param routing The routing backend of the floor plan -- RoutingTable.MATRIX
+   *     or RoutingTable.SPARSE.
+   */
+  public SimulationEngine(FloorGraph graph, Hashtable<Integer, Shelf> shelves, GoodsIndex goodsIndex, List<Order> orders, int cartCapacity, String routing) {
+    this(graph, shelves, goodsIndex, new OrderStream(orders), cartCapacity, routing);
+  }
+
+
+  /**
+   * @param graph The nodes and routes of the floor plan.
+   * @param shelves All the shelves with loaded goods.
+   * @param goodsIndex The index of shelves by the goods stored in them.
+   * @param stream The stream of the orders to be processed.
+   * @param cartCapacity The capacity of each cart.
+   * @param routing The routing backend of the floor plan -- RoutingTable.MATRIX
+   *     or RoutingTable.SPARSE.
+   */
+  public SimulationEngine(FloorGraph graph, Hashtable<Integer, Shelf> shelves, GoodsIndex goodsIndex, OrderStream stream, int cartCapacity, String routing) {
+    this(graph, shelves, goodsIndex, stream, cartCapacity, routing, null);
+  }
+
+
+  /** Creates a simulation which shares already calculated shortest paths
+   *  with other simulations of the same floor plan. The floor plan and
+   *  the paths are only read, so the routes of the simulation cannot be
+   *  closed or opened.
+   *
+   * @param graph The nodes and routes of the floor plan.
+   * @param shelves All the shelves with loaded goods.
+   * @param goodsIndex The index of shelves by the goods stored in them.
+   * @param stream The stream of the orders to be processed.
+   * @param cartCapacity The capacity of each cart.
+   * @param routes The shortest paths of the floor plan.
+   */
+  public SimulationEngine(FloorGraph graph, Hashtable<Integer, Shelf> shelves, GoodsIndex goodsIndex, OrderStream stream, int cartCapacity, RoutingTable routes) {
+    this(graph, shelves, goodsIndex, stream, cartCapacity, null, routes);
+  }
+
+
+  /**
+   * @param graph The nodes and routes of the floor plan.
+   * @param shelves All the shelves with loaded goods.
+   * @param goodsIndex The index of shelves by the goods stored in them.
+   * @param stream The stream of the orders to be processed.
+   * @param cartCapacity The capacity of each cart.
+   * @param routing The routing backend, used if there are no shared paths.
+   * @param sharedRoutes The shared shortest paths, null to calculate them.
+   */
+  private SimulationEngine(FloorGraph graph, Hashtable<Integer, Shelf> shelves, GoodsIndex goodsIndex, OrderStream stream, int cartCapacity, String routing, RoutingTable sharedRoutes) {
+    this.graph = graph;
+    this.shelves = shelves;
+    this.goodsIndex = goodsIndex;
+    this.stream = stream;
+    this.cartCapacity = cartCapacity;
+    this.routing = routing;
+    this.sharedRoutes = sharedRoutes;
+    this.futureOrders = new PriorityQueue<>((a, b) -> {
+      int order = this.orders.get(a).getStartEpochTime().compareTo(this.orders.get(b).getStartEpochTime());
+      return order != 0 ? order : Integer.compare(a, b);
+    });
+
+    // save initial shelves quantity
+    for (Integer shelfID : this.shelves.keySet()) {
+      this.shelvesInitialQuantity.put(shelfID, this.shelves.get(shelfID).getQuantity());
+    }
+
+    this.pathFinder = createPathFinder();
+  }
+
+
+  /** Creates the PathFinder -- either with the shared shortest paths or with
+   *  its own matrix of distances or sparse routing.
+   *
+   * @return The new PathFinder with no reserved goods.
+   */
+  private PathFinder createPathFinder() {
+    if (this.sharedRoutes != null)
+      return new PathFinder(this.shelves, this.goodsIndex, this.cartCapacity, this.sharedRoutes);
+
+    return new PathFinder(this.graph, this.shelves, this.goodsIndex, this.cartCapacity, this.routing);
+  }
+
+
+  /** Gets the current time of the simulation.
+   *
+   * @return The current time of the simulation in ms.
+   */
+  public Long getCurrentEpochTime() {
+    return this.currentEpochTime;
+  }
+
+
+  /** Gets the number of orders read from the stream or added so far.
+   *
+   * @return The number of orders.
+   */
+  public int getOrderCount() {
+    return this.orderCount;
+  }
+
+
+  /** Gets an unfinished order, the finished ones are only in the history.
+   *
+   * @param index The index of the order.
+   * @return The order, null if it has finished or hasn't been read yet.
+   */
+  public Order getOrder(int index) {
+    return this.orders.get(index);
+  }
+
+
+  /** Gets the records of the finished orders.
+   *
+   * @return The history of the finished orders.
+   */
+  public OrderHistory getHistory() {
+    return this.history;
+  }
+
+
+  /** Gets the nodes and routes of the floor plan.
+   *
+   * @return The floor plan graph.
+   */
+  public FloorGraph getGraph() {
+    return this.graph;
+  }
+
+
+  /** Gets all the shelves of the warehouse.
+   *
+   * @return All the shelves indexed by their ID.
+   */
+  public Hashtable<Integer, Shelf> getShelves() {
+    return this.shelves;
+  }
+
+
+  /** Gets the index of shelves by the goods stored in them.
+   *
+   * @return The index of shelves.
+   */
+  public GoodsIndex getGoodsIndex() {
+    return this.goodsIndex;
+  }
+
+
+  /** Sets the time budget of improving the order of picking of each planned
+   *  path.
+   *
+   * @param improveTime The time budget in ms, 0 turns the improving off.
+   */
+  public void setImproveTime(long improveTime) {
+    this.improveTime = improveTime;
+    this.pathFinder.setImproveTime(improveTime);
+  }
+
+
+  /** Sets the time window of batching the orders into waves. An order waits
+   *  for the others until the window passes, then all the waiting orders are
+   *  picked up by carts in batches within the cart's capacity.
+   *
+   * @param waveWindow The time window in ms, 0 turns the batching off.
+   */
+  public void setWaveWindow(long waveWindow) {
+    this.waveWindow = waveWindow;
+  }
+
+
+  /** Sets the number of carts of the fleet. The carts are reused, the batches
+   *  of orders wait in a queue until some cart is idle.
+   *
+   * @param fleetSize The number of carts, 0 for an unlimited fleet.
+   */
+  public void setFleetSize(int fleetSize) {
+    this.fleetSize = fleetSize;
+  }
+
+
+  /** Sets the time of picking up the goods at a single node, used by
+   *  the carts created from now on.
+   *
+   * @param pickUpTime The time in ms.
+   */
+  public void setPickUpTime(int pickUpTime) {
+    this.pickUpTime = pickUpTime;
+  }
+
+
+  /** Sets the number of threads which plan the paths in the background.
+   *
+   * @param threads The number of threads, 0 to plan the paths right away.
+   */
+  public void setPlanningThreads(int threads) {
+    applyPlans(true);
+    if (this.planner != null)
+      this.planner.shutdown();
+
+    this.planner = null;
+    if (threads > 0) {
+      this.planner = Executors.newFixedThreadPool(threads, task -> {
+        Thread thread = new Thread(task, "path-planner");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+
+  /** Sets whether the carts avoid each other. With TrafficPlanner.RESERVED
+   *  each new path is timed so that no two carts are at the same node or on
+   *  the same route at once, the carts wait or go around the others.
+   *
+   * @param traffic TrafficPlanner.FREE or TrafficPlanner.RESERVED.
+   */
+  public void setTraffic(String traffic) {
+    this.traffic = null;
+    if (traffic.equals(TrafficPlanner.RESERVED))
+      this.traffic = new TrafficPlanner(this.graph, this.goodsIndex, Cart.DEFAULT_SPEED);
+  }
+
+
+  /** Gets all the carts of the fleet, both idle and busy ones.
+   *
+   * @return The list of carts.
+   */
+  public List<Cart> getCarts() {
+    return this.fleet;
+  }
+
+
+  /** Adds a new order to the simulation.
+   *
+   * @param order The order to be added.
+   */
+  public void addOrder(Order order) {
+    this.addedOrders.add(order);
+    queueOrder(order);
+    dropKeyframes();
+  }
+
+
+  /** Moves the simulation to the given time, both forward and backward. When
+   *  moving backward, the nearest earlier keyframe is restored first, then
+   *  the events up to the given time are processed.
+   *
+   * @param epochTime The time to which the simulation should move in ms.
+   */
+  public void seek(Long epochTime) {
+    applyPlans(true);
+
+    Keyframe nearest = null;
+    for (Keyframe keyframe : this.keyframes) {
+      if (keyframe.time > epochTime)
+        break;
+      nearest = keyframe;
+    }
+
+    if (nearest != null && epochTime < this.currentEpochTime)
+      restore(nearest);
+    runUntil(epochTime);
+  }
+
+
+  /** Processes the events up to the incremented time, used by the GUI to
+   *  advance the simulation by a single frame. The paths planned since
+   *  the previous frame are applied first, the frame doesn't wait for the paths
+   *  still being planned.
+   *
+   * @param duration The time increment in ms.
+   */
+  public void step(Long duration) {
+    long epochTime = this.currentEpochTime + duration;
+    processEvents(epochTime, false);
+    this.currentEpochTime = Math.max(this.currentEpochTime, epochTime);
+  }
+
+
+  /** Processes all the events up to the given time and then moves the time
+   *  there.
+   *
+   * @param epochTime The time until which the simulation should run in ms.
+   */
+  public void runUntil(Long epochTime) {
+    processEvents(epochTime, true);
+    this.currentEpochTime = Math.max(this.currentEpochTime, epochTime);
+  }
+
+
+  /** Processes the events until there is none left or until the given time
+   *  is reached. The time stays at the last processed event, so it's the end
+   *  of the last order if all the orders are processed.
+   *
+   * @param epochTime The time limit of the simulation in ms.
+   */
+  public void run(Long epochTime) {
+    processEvents(epochTime, true);
+  }
+
+
+  /** Processes the events up to the given time, a keyframe is taken before
+   *  the first event after each period. Nothing happens between the last
+   *  change and the next event, so the keyframe can be taken at the multiple
+   *  of the period between them.
+   *
+   * @param epochTime The time until which the events should be processed.
+   * @param wait True - if each event waits for the paths it requested.
+   */
+  private void processEvents(Long epochTime, boolean wait) {
+    applyPlans(wait);
+    while (true) {
+      readOrders(this.events.isEmpty() ? epochTime : Math.min(epochTime, this.events.peek().time));
+      if (this.futureOrders.isEmpty() && this.events.isEmpty())
+        break;
+
+      // the arrivals of orders go before the events of the same time
+      long arrival = this.futureOrders.isEmpty() ? Long.MAX_VALUE : this.orders.get(this.futureOrders.peek()).getStartEpochTime();
+      long time = this.events.isEmpty() ? arrival : Math.min(arrival, this.events.peek().time);
+      if (time > epochTime)
+        break;
+
+      if (time >= this.nextKeyframeTime) {
+        long keyframeTime = time / this.keyframeInterval * this.keyframeInterval;
+        if (keyframeTime >= this.lastChangeTime) {
+          applyPlans(true); // the keyframe cannot store a plan in progress
+          addKeyframe(keyframeTime);
+        }
+        this.nextKeyframeTime = time / this.keyframeInterval * this.keyframeInterval + this.keyframeInterval;
+      }
+
+      this.lastChangeTime = time;
+      if (arrival == time)
+        arrive(this.futureOrders.poll());
+      else
+        processEvent(this.events.poll());
+      applyPlans(wait);
+    }
+  }
+
+
+  /** Reads the orders from the stream until the last read one starts more
+   *  than READ_AHEAD ms after the next arrival or the given time. The stream
+   *  is ordered by the start of the orders, so all the orders which start
+   *  before are in the heap of future orders then.
+   *
+   * @param epochTime The time of the next event or the time limit.
+   */
+  private void readOrders(long epochTime) {
+    while (!this.stream.hasEnded()) {
+      long next = epochTime;
+      if (!this.futureOrders.isEmpty())
+        next = Math.min(next, this.orders.get(this.futureOrders.peek()).getStartEpochTime());
+      if (this.lastReadTime > next && this.lastReadTime - next > READ_AHEAD)
+        break;
+
+      Order order = this.stream.next();
+      if (order == null)
+        break;
+
+      this.lastReadTime = order.getStartEpochTime();
+      queueOrder(order);
+    }
+  }
+
+
+  /** Moves the time to the start of the order and makes it active. The order
+   *  waits for the others until the wave window passes.
+   *
+   * @param index The index of the order.
+   */
+  private void arrive(int index) {
+    Order order = this.orders.get(index);
+    this.currentEpochTime = Math.max(this.currentEpochTime, order.getStartEpochTime());
+    this.activeOrders.put(order, index);
+
+    if (this.waveWindow > 0) {
+      scheduleOrder(index, order.getStartEpochTime() + this.waveWindow);
+    } else {
+      createBatch(order);
+      dispatch();
+    }
+  }
+
+
+  /** Interpolates the positions of all the carts at the current time. Only
+   *  needed to draw the carts, the simulation itself doesn't use them.
+   */
+  public void updateCartPositions() {
+    for (Cart cart : this.fleet) {
+      cart.moveTo(this.currentEpochTime, this.graph);
+    }
+  }
+
+
+  /** Moves the time to the event and processes it.
+   *
+   * @param event The earliest event.
+   */
+  private void processEvent(Event event) {
+    this.currentEpochTime = Math.max(this.currentEpochTime, event.time);
+
+    if (event.orderIndex >= 0) {
+      Order order = this.orders.get(event.orderIndex);
+      if (order == null || !this.activeOrders.containsKey(order) || this.batches.containsKey(order))
+        return; // already batched with an earlier order
+
+      createBatch(order);
+      dispatch();
+      return;
+    }
+
+    //the event is outdated if the cart's path has changed since it was scheduled
+    OrderBatch batch = event.batch;
+    if (batch.isFinished() || batch.cart.getNextEventTime() != event.time)
+      return;
+
+    if (!batch.updateCart(this.currentEpochTime, this.graph)){
+      //we need to recalculate the path
+      replan(batch);
+    }
+
+    for (Order order : batch.getOrders()) {
+      if (order.isFinished(this.currentEpochTime) && this.activeOrders.containsKey(order))
+        retire(order);
+    }
+
+    if (batch.isFinished()) {
+      this.routeIndex.remove(batch);
+      if (this.traffic != null)
+        this.traffic.release(batch.cart.path, this.fleet.indexOf(batch.cart) + 1);
+      dispatch(); // the cart is idle now
+    } else {
+      scheduleCart(batch);
+    }
+  }
+
+
+  /** Moves the finished order from the active orders to the history and
+   *  releases the order and its cart.
+   *
+   * @param order The finished order.
+   */
+  private void retire(Order order) {
+    int index = this.activeOrders.remove(order);
+    this.orders.remove(index);
+    this.batches.remove(order);
+    order.cart = null;
+    this.history.add(index, order.getStartEpochTime(), order.getEndEpochTime());
+  }
+
+
+  /** Recalculates the rest of the cart's path from its last visited node.
+   *
+   * @param batch The batch picked up by the cart.
+   */
+  private void replan(OrderBatch batch) {
+    RoutePlan remainingPath = batch.cart.getRemainingPath();
+    RoutePlan stops = this.pathFinder.refindStops(remainingPath, batch.getGoods(), this.shelves, batch.cart.currCapacity);
+    plan(batch, stops, remainingPath.getNode(0));
+  }
+
+
+  /** Completes the path of the batch's cart through the chosen stops, right
+   *  away or in the background. The cart waits at its node until the path is
+   *  applied. The paths of the carts which avoid each other are always
+   *  planned right away, they are reserved in the order of planning.
+   *
+   * @param batch The batch picked up by the cart.
+   * @param stops The chosen stops, null if the cart cannot move.
+   * @param startNode The node at which the cart is.
+   */
+  private void plan(OrderBatch batch, RoutePlan stops, int startNode) {
+    if (this.planner == null || this.traffic != null || stops == null) {
+      setCartPath(batch, stops == null ? null : this.pathFinder.planPath(stops, startNode));
+      return;
+    }
+
+    PathFinder finder = this.pathFinder;
+    setCartPath(batch, null);
+    this.plans.put(batch, new Plan(stops, startNode, this.planner.submit(() -> finder.planPath(stops, startNode))));
+  }
+
+
+  /** Passes the planned paths to the carts which depart at the current time
+   *  and schedules their events.
+   *
+   * @param wait True - if all the paths should be waited for, otherwise only
+   *     the finished ones are applied.
+   */
+  private void applyPlans(boolean wait) {
+    Iterator<Map.Entry<OrderBatch, Plan>> it = this.plans.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<OrderBatch, Plan> entry = it.next();
+      Plan plan = entry.getValue();
+      if (!wait && !plan.path.isDone())
+        continue;
+
+      RoutePlan path;
+      try {
+        path = plan.path.get();
+      } catch (InterruptedException | ExecutionException e) {
+        path = this.pathFinder.planPath(plan.stops, plan.startNode); // plan it here then
+      }
+
+      it.remove();
+      setCartPath(entry.getKey(), path);
+      scheduleCart(entry.getKey());
+    }
+  }
+
+
+  /** Takes a keyframe of the current state.
+   *
+   * @param epochTime The time of the keyframe, a multiple of the period.
+   */
+  private void addKeyframe(long epochTime) {
+    Keyframe keyframe = copyState(this.fleet, this.batches, this.waitingBatches, this.assignedBatches, this.events);
+    keyframe.time = epochTime;
+    keyframe.eventCount = this.eventCount;
+    keyframe.routesVersion = this.graph.getSnapshot().getVersion();
+    keyframe.reservations = this.pathFinder.getReservations();
+
+    keyframe.orders = new Hashtable<>(this.orders);
+    keyframe.activeOrders = new LinkedHashMap<>(this.activeOrders);
+    keyframe.orderCount = this.orderCount;
+    keyframe.streamCount = this.stream.getCount();
+    keyframe.addedCount = this.addedOrders.size();
+    keyframe.lastReadTime = this.lastReadTime;
+    keyframe.historySize = this.history.size();
+
+    for (Integer shelfID : this.shelves.keySet()) {
+      int quantity = this.shelves.get(shelfID).getQuantity();
+      if (quantity != this.shelvesInitialQuantity.get(shelfID))
+        keyframe.shelves.put(shelfID, quantity);
+    }
+
+    // replace the keyframe of the same time taken before the last seek
+    int i = 0;
+    while (i < this.keyframes.size() && this.keyframes.get(i).time < epochTime)
+      i++;
+    if (i < this.keyframes.size() && this.keyframes.get(i).time == epochTime)
+      this.keyframes.set(i, keyframe);
+    else
+      this.keyframes.add(i, keyframe);
+
+    // keep only the keyframes at the multiples of the doubled period
+    while (this.keyframes.size() > MAX_KEYFRAMES) {
+      this.keyframeInterval *= 2;
+      this.keyframes.removeIf(k -> k.time % this.keyframeInterval != 0);
+    }
+  }
+
+
+  /** Restores the state of the simulation from the keyframe. The keyframe
+   *  stays unchanged, so it can be restored again.
+   *
+   * @param keyframe The restored keyframe.
+   */
+  private void restore(Keyframe keyframe) {
+    Keyframe copy = copyState(keyframe.fleet, keyframe.batches, keyframe.waitingBatches, keyframe.assignedBatches, keyframe.events);
+    this.fleet = copy.fleet;
+    this.batches = copy.batches;
+    this.waitingBatches = copy.waitingBatches;
+    this.assignedBatches = copy.assignedBatches;
+    this.events = new PriorityQueue<>(copy.events);
+    this.eventCount = keyframe.eventCount;
+    this.currentEpochTime = keyframe.time;
+    this.nextKeyframeTime = keyframe.time + this.keyframeInterval;
+    this.lastChangeTime = keyframe.time;
+    this.pathFinder.setReservations(keyframe.reservations);
+
+    for (Integer shelfID : this.shelves.keySet()) {
+      this.shelves.get(shelfID).setQuantity(keyframe.shelves.getOrDefault(shelfID, this.shelvesInitialQuantity.get(shelfID)));
+    }
+
+    // the orders unfinished at the keyframe are active or in the future again
+    this.history.truncate(keyframe.historySize);
+    this.orders = new Hashtable<>(keyframe.orders);
+    this.orderCount = keyframe.orderCount;
+    this.activeOrders = new LinkedHashMap<>(keyframe.activeOrders);
+    this.futureOrders.clear();
+    for (Integer index : this.orders.keySet()) {
+      Order order = this.orders.get(index);
+      OrderBatch batch = this.batches.get(order);
+      order.finish(Long.MAX_VALUE);
+      order.cart = batch == null ? null : batch.cart;
+      if (!this.activeOrders.containsKey(order))
+        this.futureOrders.add(index);
+    }
+
+    // the orders read or added after the keyframe are read or added again
+    if (this.stream.getCount() != keyframe.streamCount) {
+      this.stream.rewind();
+      this.stream.skip(keyframe.streamCount);
+    }
+    this.lastReadTime = keyframe.lastReadTime;
+    for (int i = keyframe.addedCount; i < this.addedOrders.size(); i++) {
+      queueOrder(this.addedOrders.get(i));
+    }
+
+    this.routeIndex.clear();
+    for (OrderBatch batch : this.assignedBatches.values()) {
+      if (!batch.isFinished())
+        this.routeIndex.update(batch);
+    }
+
+    if (this.traffic != null) {
+      this.traffic.clear();
+      for (int i = 0; i < this.fleet.size(); i++) {
+        OrderBatch batch = this.assignedBatches.get(this.fleet.get(i));
+        if (!batch.isFinished())
+          this.traffic.reserve(batch.cart.path, i + 1);
+      }
+    }
+
+    // the routes have changed since the keyframe
+    if (keyframe.routesVersion != this.graph.getSnapshot().getVersion())
+      checkRoutes(new HashSet<>(this.assignedBatches.values()));
+  }
+
+
+  /** Creates copies of the carts and batches which refer to each other in
+   *  the same way as the originals. The outdated events are left out.
+   *
+   * @param fleet The carts.
+   * @param batches The batches of orders.
+   * @param waitingBatches The batches waiting for a cart.
+   * @param assignedBatches The batches assigned to the carts.
+   * @param events The events.
+   * @return The copies stored in a keyframe without time.
+   */
+  private Keyframe copyState(List<Cart> fleet, Hashtable<Order, OrderBatch> batches, List<OrderBatch> waitingBatches,
+                             Hashtable<Cart, OrderBatch> assignedBatches, Collection<Event> events) {
+    Keyframe copy = new Keyframe();
+    Hashtable<Cart, Cart> carts = new Hashtable<>();
+    Hashtable<OrderBatch, OrderBatch> copies = new Hashtable<>();
+
+    for (Cart cart : fleet) {
+      Cart cartCopy = new Cart(cart);
+      carts.put(cart, cartCopy);
+      copy.fleet.add(cartCopy);
+    }
+
+    // the batches of the retired orders are referred only by their carts
+    java.util.function.Function<OrderBatch, OrderBatch> copyOf =
+        batch -> copies.computeIfAbsent(batch, b -> new OrderBatch(b, b.cart == null ? null : carts.get(b.cart)));
+
+    for (Order order : batches.keySet()) {
+      copy.batches.put(order, copyOf.apply(batches.get(order)));
+    }
+    for (OrderBatch batch : waitingBatches) {
+      copy.waitingBatches.add(copyOf.apply(batch));
+    }
+    for (Cart cart : assignedBatches.keySet()) {
+      copy.assignedBatches.put(carts.get(cart), copyOf.apply(assignedBatches.get(cart)));
+    }
+
+    for (Event event : events) {
+      if (event.batch == null)
+        copy.events.add(event);
+      else if (!event.batch.isFinished() && event.batch.cart.getNextEventTime() == event.time)
+        copy.events.add(new Event(event.time, event.sequence, -1, copyOf.apply(event.batch)));
+    }
+
+    return copy;
+  }
+
+
+  /** Puts the end of the wave window of an order into the queue of events.
+   *
+   * @param index The index of the order.
+   * @param epochTime The time at which the order should be batched.
+   */
+  private void scheduleOrder(int index, long epochTime) {
+    this.events.add(new Event(epochTime, this.eventCount++, index, null));
+  }
+
+
+  /** Puts the next event of the batch's cart into the queue of events. A cart
+   *  without a path has no event, it waits for a change of the routes.
+   *
+   * @param batch The batch picked up by the cart.
+   */
+  private void scheduleCart(OrderBatch batch) {
+    long time = batch.cart.getNextEventTime();
+    if (time >= 0)
+      this.events.add(new Event(time, this.eventCount++, -1, batch));
+  }
+
+
+  /** Gives the order the next index and puts it into the heap of future
+   *  orders.
+   *
+   * @param order The read or added order.
+   */
+  private void queueOrder(Order order) {
+    order.finish(Long.MAX_VALUE);
+    order.cart = null;
+    this.orders.put(this.orderCount, order);
+    this.futureOrders.add(this.orderCount++);
+  }
+
+
+  /** Creates a batch of the given order and the following waiting orders which
+   *  fit into the cart and puts it into the queue of batches waiting for a cart.
+   *
+   * @param first The first order of the batch.
+   */
+  private void createBatch(Order first) {
+    OrderBatch batch = new OrderBatch();
+    batch.addOrder(first);
+
+    if (this.waveWindow > 0) {
+      boolean following = false;
+      for (Order order : this.activeOrders.keySet()) {
+        if (order == first)
+          following = true;
+        if (!following || this.batches.containsKey(order) || order == first)
+          continue;
+
+        if (batch.getQuantity() + order.getQuantity() <= this.cartCapacity)
+          batch.addOrder(order);
+      }
+    }
+
+    for (Order order : batch.getOrders()) {
+      this.batches.put(order, batch);
+    }
+    this.waitingBatches.add(batch);
+  }
+
+
+  /** Assigns the waiting batches to the idle carts in the order of arrival,
+   *  each batch gets the idle cart nearest to its goods. A new cart is added
+   *  to the fleet if there is no idle one and the fleet isn't full yet. The
+   *  rest of the batches keeps waiting.
+   */
+  private void dispatch() {
+    while (!this.waitingBatches.isEmpty()) {
+      OrderBatch batch = this.waitingBatches.get(0);
+
+      // find the nearest idle cart
+      Cart nearest = null;
+      int minDistance = Integer.MAX_VALUE;
+      for (Cart cart : this.fleet) {
+        OrderBatch assigned = this.assignedBatches.get(cart);
+        if (!assigned.isFinished())
+          continue;
+
+        int distance = this.pathFinder.distanceToGoods(batch.getGoods(), cart.getEndNode());
+        if (nearest == null || distance < minDistance) {
+          nearest = cart;
+          minDistance = distance;
+        }
+      }
+
+      int startNode = 0;
+      if (nearest != null) {
+        startNode = nearest.getEndNode();
+        nearest.restart();
+      } else if (this.fleetSize == 0 || this.fleet.size() < this.fleetSize) {
+        nearest = new Cart(this.graph.getX(0), this.graph.getY(0), this.goodsIndex, this.cartCapacity);
+        nearest.setPickUpTime(this.pickUpTime);
+        this.fleet.add(nearest);
+      } else {
+        return; // all the carts are busy
+      }
+
+      RoutePlan stops = this.pathFinder.findStops(batch.getGoods(), this.shelves, startNode, 0);
+      batch.addCart(nearest, null, this.graph, this.currentEpochTime);
+      plan(batch, stops, startNode);
+      this.assignedBatches.put(nearest, batch);
+      this.waitingBatches.remove(0);
+      scheduleCart(batch);
+    }
+  }
+
+
+  /** Checks if all the orders have already been processed.
+   *
+   * @return True - if all the orders have already been processed.
+   */
+  public boolean allOrdersFinished() {
+    return this.stream.hasEnded() && this.futureOrders.isEmpty() && this.activeOrders.isEmpty();
+  }
+
+
+  /** Recalculates the paths after the routes between nodes have changed. Only
+   *  the carts whose paths use a closed route are looked up in the index and
+   *  replanned, at their nearest node. The opened routes are used by
+   *  the paths planned from now on.
+   *
+   * @param closedRoutes The closed routes specified as -- node1ID and node2ID.
+   * @param openedRoutes The opened routes specified as -- node1ID and node2ID.
+   */
+  public void updateRoutes(List<Pair<Integer, Integer>> closedRoutes, List<Pair<Integer, Integer>> openedRoutes) {
+    if (closedRoutes.isEmpty() && openedRoutes.isEmpty())
+      return;
+    if (this.sharedRoutes != null)
+      throw new IllegalStateException("the routes of a shared floor plan cannot be changed");
+
+    applyPlans(true); // the routes cannot change under the planning threads
+    this.graph.updateRoutes(closedRoutes, openedRoutes);
+    this.pathFinder.updateEdges(this.graph, closedRoutes, openedRoutes);
+    checkRoutes(this.routeIndex.getAffected(this.graph, closedRoutes));
+    dropKeyframes();
+  }
+
+
+  /** Stops the carts whose paths go through a closed route at their nearest
+   *  node to be replanned there, the carts which cannot continue at all and
+   *  those without a path are replanned right away. The carts are checked in
+   *  the order of the fleet, the other carts aren't touched.
+   *
+   * @param affected The batches whose carts may be affected by the change.
+   */
+  private void checkRoutes(Set<OrderBatch> affected) {
+    if (affected.isEmpty())
+      return;
+
+    for (Cart cart : this.fleet) {
+      OrderBatch batch = this.assignedBatches.get(cart);
+      if (!affected.contains(batch) || batch.isFinished() || this.plans.containsKey(batch))
+        continue;
+
+      long eventTime = cart.getNextEventTime();
+      if (!cart.checkRoutes(this.currentEpochTime, this.graph))
+        replan(batch);
+      if (cart.getNextEventTime() != eventTime)
+        scheduleCart(batch);
+    }
+  }
+
+
+  /** Gives the batch's cart a new path departing now and indexes it by its
+   *  routes. If the carts avoid each other, the path is timed and reserved
+   *  instead of the cart's previous one.
+   *
+   * @param batch The batch whose cart gets the path.
+   * @param path The path, null if the cart has to wait.
+   */
+  private void setCartPath(OrderBatch batch, RoutePlan path) {
+    if (this.traffic != null) {
+      int owner = this.fleet.indexOf(batch.cart) + 1;
+      long ready = Math.max(this.currentEpochTime, batch.cart.getReadyTime());
+      this.traffic.release(batch.cart.path, owner);
+      if (path != null)
+        path = this.traffic.schedule(path, owner, this.currentEpochTime, ready, this.pickUpTime, this.pathFinder.getRoutes());
+    }
+
+    batch.updateCartPath(path, this.graph, this.currentEpochTime);
+    this.routeIndex.update(batch);
+  }
+
+
+  /** Drops the keyframes after the current time, they don't match the changed
+   *  simulation anymore.
+   */
+  private void dropKeyframes() {
+    this.keyframes.removeIf(k -> k.time > this.currentEpochTime);
+    this.nextKeyframeTime = this.currentEpochTime;
+    this.lastChangeTime = this.currentEpochTime;
+  }
+
+
+  /** Sets the time back to 0, restores the initial quantity of the goods in
+   *  the shelves and rewinds the stream of orders. The added orders are kept.
+   */
+  public void reset() {
+    applyPlans(true);
+    this.currentEpochTime = 0L;
+    this.stream.rewind();
+    this.orders.clear();
+    this.orderCount = 0;
+    this.lastReadTime = Long.MIN_VALUE;
+    this.batches.clear();
+    this.waitingBatches.clear();
+    this.fleet.clear();
+    this.assignedBatches.clear();
+    this.events.clear();
+    this.keyframes.clear();
+    this.futureOrders.clear();
+    this.activeOrders.clear();
+    this.history.clear();
+    this.routeIndex.clear();
+    if (this.traffic != null)
+      this.traffic.clear();
+    this.keyframeInterval = KEYFRAME_INTERVAL;
+    this.nextKeyframeTime = 0;
+    this.lastChangeTime = 0;
+
+    //set shelves to initial state
+    for (Integer shelfID : this.shelves.keySet()) {
+      this.shelves.get(shelfID).setQuantity(this.shelvesInitialQuantity.get(shelfID));
+    }
+
+    //reset pathFinder
+    this.pathFinder = createPathFinder();
+    this.pathFinder.setImproveTime(this.improveTime);
+    for (Order order : this.addedOrders) {
+      queueOrder(order);
+    }
+  }
+}
@@ -0,0 +1,286 @@
+package ija.project.warehouse;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Represent shortest paths between nodes searched on demand directly in
+ *  compact (CSR) adjacency of the floor plan. Distances from a node are calculated by
+ *  Dijkstra as the whole shortest-path tree, the most recently used trees
+ *  are kept in cache (dispensing point and shelf nodes are asked again and
+ *  again). Path between two nodes without cached tree is found by A*.
+ *  The memory grows only with the number of nodes and routes.
+ *
+ *  More threads can read the table at once without locking -- a tree isn't
+ *  changed once it's cached and the least recently used one is found by
+ *  stamps of its last use. Two threads missing the same tree may both
+ *  calculate it. The routes may be changed only when nobody reads the table.
+ *
+ * @author Simon Slobodnik (xslobo06)
+ */
+public class SparseRoutingTable implements RoutingTable {
+  private static final int CACHE_SIZE = 64; //max number of cached shortest-path trees
+  private int n; //number of nodes
+  private FloorGraph graph; //compact adjacency of the floor plan
+  private double minRatio; //min ratio of edge length and euclidean distance of its nodes
+  private final ConcurrentHashMap<Integer, ShortestPathTree> trees = new ConcurrentHashMap<>(); //cached trees by root node
+  private final AtomicLong clock = new AtomicLong(); //stamps of use of the trees
+
+  /** Shortest paths from all nodes to the root node (routes are double-sided,
+   *  so it's the same as paths from the root node).
+   */
+  private static class ShortestPathTree {
+    int[] distance; //distance of each node from root
+    int[] parent; //next node on the way from each node to root, -1 if unreachable
+    volatile long lastUse; //stamp of the last use
+  }
+
+  /**
+   * @param graph Routes between nodes of the floor plan
+   */
+  public SparseRoutingTable(FloorGraph graph) {
+    setGraph(graph);
+  }
+
+  /** Use compact adjacency of the floor plan and forget all cached trees
+   *
+   *  @param graph Routes between nodes of the floor plan
+   */
+  @Override
+  public void setGraph(FloorGraph graph){
+    this.graph = graph;
+    this.n = graph.size();
+    this.minRatio = 1.0;
+    for (int u = 0; u < this.n; u++) {
+      for (int e = graph.getEdgeStart(u); e < graph.getEdgeEnd(u); e++) {
+        //lengths are truncated, so the heuristic must be scaled down to never overestimate
+        double euclid = euclidean(u, graph.getTarget(e));
+        if (euclid > 0)
+          this.minRatio = Math.min(this.minRatio, graph.getLength(e) / euclid);
+      }
+    }
+    this.trees.clear();
+  }
+
+  /** Forget cached trees after some routes were closed or opened. Cached
+   *  trees which are still valid are kept -- no closed route is used by them
+   *  and no opened route makes any of their paths shorter.
+   *
+   *  @param graph Routes between nodes with already updated snapshot
+   *  @param removedEdges Closed routes as pairs of nodes ID
+   *  @param addedEdges Opened routes as pairs of nodes ID
+   */
+  @Override
+  public void updateEdges(FloorGraph graph,
+          List<Pair<Integer, Integer>> removedEdges,
+          List<Pair<Integer, Integer>> addedEdges){
+    Iterator<ShortestPathTree> it = this.trees.values().iterator();
+    while (it.hasNext()) {
+      ShortestPathTree tree = it.next();
+      boolean valid = true;
+      for (Pair<Integer, Integer> edge: removedEdges) {
+        int u = edge.getKey();
+        int v = edge.getValue();
+        if (tree.parent[u] == v || tree.parent[v] == u)  //tree uses closed route
+          valid = false;
+      }
+      for (Pair<Integer, Integer> edge: addedEdges) {
+        int u = edge.getKey();
+        int v = edge.getValue();
+        long w = graph.distance(u, v);
+        if ((long)tree.distance[u] + w < tree.distance[v] || (long)tree.distance[v] + w < tree.distance[u])
+          valid = false;  //opened route is a shortcut
+      }
+      if (!valid)
+        it.remove();
+    }
+  }
+
+  /** Get length of the shortest path between two nodes from shortest-path
+   *  tree of one of them
+   *
+   *  @param u Number of start node
+   *  @param v Number of target node
+   *  @return Length of the path, Integer.MAX_VALUE if there is no path
+   */
+  @Override
+  public int getDistance(int u, int v){
+    ShortestPathTree tree = cached(v);
+    if (tree != null)
+      return tree.distance[u];
+    return getTree(u).distance[v];
+  }
+
+  /** Get the shortest path between two nodes, without first and last node.
+   *  Cached shortest-path tree of one of them is used if there is any,
+   *  otherwise the path is found by A*.
+   *
+   *  @param u Number of start node
+   *  @param v Number of target node
+   *  @return Numbers of nodes on the path, null if there is no path
+   */
+  @Override
+  public List<Integer> getPath(int u, int v){
+    List<Integer> path = new ArrayList<>();
+    ShortestPathTree tree = cached(v);
+    if (tree != null) {
+      if (tree.parent[u] == -1)  //no path between nodes
+        return null;
+      for (int node = tree.parent[u]; node != v; node = tree.parent[node])
+        path.add(node);
+      return path;
+    }
+
+    tree = cached(u);
+    if (tree != null) {
+      if (tree.parent[v] == -1)
+        return null;
+      for (int node = tree.parent[v]; node != u; node = tree.parent[node])
+        path.add(node);
+      Collections.reverse(path);
+      return path;
+    }
+
+    return aStar(u, v);
+  }
+
+  /** Get shortest-path tree of the given root from cache, missing tree is
+   *  calculated by Dijkstra
+   *
+   *  @param root Number of root node
+   *  @return Shortest paths from all nodes to the root node
+   */
+  private ShortestPathTree getTree(int root){
+    ShortestPathTree tree = cached(root);
+    if (tree != null)
+      return tree;
+
+    tree = new ShortestPathTree();
+    tree.distance = new int[this.n];
+    tree.parent = new int[this.n];
+    Arrays.fill(tree.distance, Integer.MAX_VALUE);
+    Arrays.fill(tree.parent, -1);
+    tree.distance[root] = 0;
+    tree.parent[root] = root;
+
+    FloorGraph.Snapshot snapshot = this.graph.getSnapshot();
+    PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+    queue.add(new long[]{0, root});
+    while (!queue.isEmpty()) {
+      long[] item = queue.poll();
+      int u = (int)item[1];
+      if (item[0] > tree.distance[u])  //already processed with shorter distance
+        continue;
+      for (int e = this.graph.getEdgeStart(u); e < this.graph.getEdgeEnd(u); e++) {
+        if (!snapshot.isOpen(this.graph.getRoute(e)))
+          continue;
+        int v = this.graph.getTarget(e);
+        int alt = tree.distance[u] + this.graph.getLength(e);
+        if (alt < tree.distance[v]) {
+          tree.distance[v] = alt;
+          tree.parent[v] = u;
+          queue.add(new long[]{alt, v});
+        }
+      }
+    }
+
+    tree.lastUse = this.clock.incrementAndGet();
+    this.trees.put(root, tree);
+    evict();
+    return tree;
+  }
+
+  /** Get cached shortest-path tree and mark it as used
+   *
+   *  @param root Number of root node
+   *  @return The tree, null if it isn't cached
+   */
+  private ShortestPathTree cached(int root){
+    ShortestPathTree tree = this.trees.get(root);
+    if (tree != null)
+      tree.lastUse = this.clock.incrementAndGet();
+    return tree;
+  }
+
+  /** Forget the least recently used trees above CACHE_SIZE
+   */
+  private void evict(){
+    while (this.trees.size() > CACHE_SIZE) {
+      Map.Entry<Integer, ShortestPathTree> eldest = null;
+      for (Map.Entry<Integer, ShortestPathTree> entry : this.trees.entrySet()) {
+        if (eldest == null || entry.getValue().lastUse < eldest.getValue().lastUse)
+          eldest = entry;
+      }
+      if (eldest != null)
+        this.trees.remove(eldest.getKey(), eldest.getValue());
+    }
+  }
+
+  /** Find the shortest path between two nodes by A* with the scaled euclidean
+   *  distance to the target node as heuristic
+   *
+   *  @param u Number of start node
+   *  @param v Number of target node
+   *  @return Numbers of nodes on the path without first and last node, null
+   *          if there is no path
+   */
+  private List<Integer> aStar(int u, int v){
+    int[] distance = new int[this.n];
+    int[] previous = new int[this.n];
+    Arrays.fill(distance, Integer.MAX_VALUE);
+    distance[u] = 0;
+    previous[u] = u;
+
+    FloorGraph.Snapshot snapshot = this.graph.getSnapshot();
+    PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+    queue.add(new long[]{heuristic(u, v), u});
+    while (!queue.isEmpty()) {
+      long[] item = queue.poll();
+      int node = (int)item[1];
+      if (item[0] > (long)distance[node] + heuristic(node, v))  //already processed with shorter distance
+        continue;
+      if (node == v) {
+        List<Integer> path = new ArrayList<>();
+        for (int i = previous[v]; i != u; i = previous[i])
+          path.add(i);
+        Collections.reverse(path);
+        return path;
+      }
+      for (int e = this.graph.getEdgeStart(node); e < this.graph.getEdgeEnd(node); e++) {
+        if (!snapshot.isOpen(this.graph.getRoute(e)))
+          continue;
+        int neighbour = this.graph.getTarget(e);
+        int alt = distance[node] + this.graph.getLength(e);
+        if (alt < distance[neighbour]) {
+          distance[neighbour] = alt;
+          previous[neighbour] = node;
+          queue.add(new long[]{(long)alt + heuristic(neighbour, v), neighbour});
+        }
+      }
+    }
+
+    return null;  //no path between nodes
+  }
+
+  /** Estimate distance between two nodes, never more than the real one
+   *
+   *  @param u Number of first node
+   *  @param v Number of second node
+   *  @return Lower bound of the shortest path length
+   */
+  private int heuristic(int u, int v){
+    return (int)Math.max(0, Math.floor(euclidean(u, v) * this.minRatio - 1e-9));
+  }
+
+  /** Get euclidean distance between two nodes
+   *
+   *  @param u Number of first node
+   *  @param v Number of second node
+   *  @return Euclidean distance of nodes
+   */
+  private double euclidean(int u, int v){
+    double dx = this.graph.getX(u) - this.graph.getX(v);
+    double dy = this.graph.getY(u) - this.graph.getY(v);
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+}
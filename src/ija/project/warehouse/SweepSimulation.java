@@ -0,0 +1,315 @@
+package ija.project.warehouse;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.json.simple.JSONObject;
+
+
+/** Runs many headless simulations of the same floor plan at once and prints
+ *  a table comparing them. The scenarios differ by the capacity of the carts,
+ *  the time of picking up the goods, the orders and the schedule of closing
+ *  the routes -- either every combination of the given values is simulated or
+ *  the given number of randomly drawn ones. The drawing is plain random
+ *  sampling -- each value is picked uniformly and independently, so the same
+ *  scenario can be drawn twice and some combinations are never drawn.
+ *
+ *  The scenarios run in parallel on a fork/join pool. The floor plan and its
+ *  shortest paths are loaded and calculated only once and all the scenarios
+ *  which don't close any route share them read-only. Sparse routing caches
+ *  its trees as it's read, but the reads don't lock each other, so the
+ *  scenarios still run in parallel. Each scenario has its
+ *  own shelves with goods, reservations, orders and carts. A scenario which
+ *  closes routes changes the floor plan, so it gets its own copy of it.
+ *
+ *  Usage: SweepSimulation warehouse.json goods.json orders.json [orders.json ...]
+ *                         [--capacity list] [--pick-time list] [--closures schedule]...
+ *                         [--samples n] [--seed s] [--threads n] [--until ms]
+ *
+ *  The lists are separated by commas. A schedule closes the routes at the given
+ *  times, e.g. "60000:3-4,120000:7-8" closes the route between the nodes 3
+ *  and 4 at 60 s and the route between 7 and 8 at 120 s.
+ *
+ * @author Tomas Beranek (xberan46)
+ */
+public class SweepSimulation {
+  private JSONObject floorPlan;
+  private JSONObject goods;
+  private FloorGraph graph; // shared by the scenarios without closures
+  private RoutingTable routes; // shared by the scenarios without closures
+  private String routing;
+  private long improveTime;
+  private long waveWindow;
+  private int fleetSize;
+  private String traffic;
+  private long until;
+
+
+  /** Represents a single simulated scenario.
+   */
+  private static final class Scenario {
+    private final int capacity;
+    private final int pickUpTime;
+    private final String orders;
+    private final String closures;
+
+    private Scenario(int capacity, int pickUpTime, String orders, String closures) {
+      this.capacity = capacity;
+      this.pickUpTime = pickUpTime;
+      this.orders = orders;
+      this.closures = closures;
+    }
+  }
+
+
+  /** Represents the statistics of a finished scenario.
+   */
+  private static final class Result {
+    private int finished;
+    private int count;
+    private int carts;
+    private long averageDuration;
+    private long maxDuration;
+    private long lastEnd;
+    private long wallTime;
+  }
+
+
+  /**
+   * @param floorPlan The JSON object with the floor plan.
+   * @param goods The JSON object with the goods.
+   * @param until The time limit of each scenario in ms.
+   */
+  public SweepSimulation(JSONObject floorPlan, JSONObject goods, long until) {
+    WarehouseLoader loader = new WarehouseLoader();
+    this.floorPlan = floorPlan;
+    this.goods = goods;
+    this.until = until;
+    this.graph = loader.connectRoutes(loader.getAllNodes(floorPlan), loader.getAllRoutes(floorPlan));
+    this.routing = loader.getRouting(floorPlan);
+    this.improveTime = loader.getImproveTime(floorPlan);
+    this.waveWindow = loader.getWaveWindow(floorPlan);
+    this.fleetSize = loader.getFleetSize(floorPlan);
+    this.traffic = loader.getTraffic(floorPlan);
+
+    this.routes = RoutingTable.create(this.graph, this.routing);
+  }
+
+
+  /** The entry point of the sweep.
+   *
+   * @param args Program arguments.
+   */
+  public static void main(String args[]) {
+    if (args.length < 3) {
+      System.err.println("Usage: SweepSimulation warehouse.json goods.json orders.json [orders.json ...] [--capacity list] [--pick-time list] [--closures schedule]... [--samples n] [--seed s] [--threads n] [--until ms]");
+      System.exit(1);
+    }
+
+    List<String> orderFiles = new ArrayList<>();
+    List<Integer> capacities = Arrays.asList(500);
+    List<Integer> pickUpTimes = Arrays.asList(Cart.DEFAULT_PICK_UP_TIME);
+    List<String> closures = new ArrayList<>();
+    int samples = 0;
+    long seed = 1;
+    int threads = Runtime.getRuntime().availableProcessors();
+    long until = Long.MAX_VALUE;
+
+    int i = 2;
+    while (i < args.length && !args[i].startsWith("--")) {
+      orderFiles.add(args[i++]);
+    }
+
+    try {
+      for (; i < args.length - 1; i += 2) {
+        if (args[i].equals("--capacity"))
+          capacities = parseList(args[i+1]);
+        else if (args[i].equals("--pick-time"))
+          pickUpTimes = parseList(args[i+1]);
+        else if (args[i].equals("--closures"))
+          closures.add(args[i+1]);
+        else if (args[i].equals("--samples"))
+          samples = Integer.parseInt(args[i+1]);
+        else if (args[i].equals("--seed"))
+          seed = Long.parseLong(args[i+1]);
+        else if (args[i].equals("--threads"))
+          threads = Math.max(1, Integer.parseInt(args[i+1]));
+        else if (args[i].equals("--until"))
+          until = Long.parseLong(args[i+1]);
+      }
+      for (String schedule : closures) {
+        parseSchedule(schedule);
+      }
+    } catch(NumberFormatException e) {
+      System.err.println("ERROR: invalid numeric argument");
+      System.exit(1);
+    }
+
+    // the scenarios without closures are always included
+    closures.add(0, "");
+
+    List<Scenario> scenarios = new ArrayList<>();
+    if (samples > 0) {
+      Random random = new Random(seed);
+      for (int s = 0; s < samples; s++) {
+        scenarios.add(new Scenario(capacities.get(random.nextInt(capacities.size())),
+                                   pickUpTimes.get(random.nextInt(pickUpTimes.size())),
+                                   orderFiles.get(random.nextInt(orderFiles.size())),
+                                   closures.get(random.nextInt(closures.size()))));
+      }
+    } else {
+      for (String orders : orderFiles)
+        for (String schedule : closures)
+          for (int capacity : capacities)
+            for (int pickUpTime : pickUpTimes)
+              scenarios.add(new Scenario(capacity, pickUpTime, orders, schedule));
+    }
+
+    long startTime = System.nanoTime();
+    WarehouseLoader loader = new WarehouseLoader();
+    List<JSONObject> data = loader.loadJSONData(Arrays.asList(args[0], args[1]));
+    SweepSimulation sweep = new SweepSimulation(data.get(0), data.get(1), until);
+
+    List<Callable<Result>> tasks = new ArrayList<>();
+    for (Scenario scenario : scenarios) {
+      tasks.add(() -> sweep.run(scenario));
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    List<Result> results = new ArrayList<>();
+    try {
+      for (Future<Result> result : pool.invokeAll(tasks)) {
+        results.add(result.get());
+      }
+    } catch(InterruptedException | ExecutionException e) {
+      System.err.printf("ERROR: a scenario failed: %s%n", e.getCause() != null ? e.getCause() : e);
+      System.exit(1);
+    } finally {
+      pool.shutdown();
+    }
+
+    long wallTime = (System.nanoTime() - startTime) / 1000000;
+    printTable(scenarios, results, wallTime);
+  }
+
+
+  /** Simulates a single scenario. Called by more threads at once, the shared
+   *  floor plan and shortest paths are only read.
+   *
+   * @param scenario The simulated scenario.
+   * @return The statistics of the processed orders.
+   */
+  private Result run(Scenario scenario) {
+    long startTime = System.nanoTime();
+
+    // the names of the goods are translated by a dictionary of each scenario
+    WarehouseLoader loader = new WarehouseLoader();
+    Hashtable<Integer, Shelf> shelves = loader.getAllShelves(this.floorPlan);
+    GoodsIndex goodsIndex = loader.loadGoodsToShelfs(shelves, loader.getAllGoods(this.goods));
+    OrderStream orders = loader.getOrderStream(scenario.orders);
+    TreeMap<Long, List<Pair<Integer, Integer>>> schedule = parseSchedule(scenario.closures);
+
+    SimulationEngine engine;
+    if (schedule.isEmpty()) {
+      engine = new SimulationEngine(this.graph, shelves, goodsIndex, orders, scenario.capacity, this.routes);
+    } else {
+      FloorGraph graph = loader.connectRoutes(loader.getAllNodes(this.floorPlan), loader.getAllRoutes(this.floorPlan));
+      engine = new SimulationEngine(graph, shelves, goodsIndex, orders, scenario.capacity, this.routing);
+    }
+    engine.setImproveTime(this.improveTime);
+    engine.setWaveWindow(this.waveWindow);
+    engine.setFleetSize(this.fleetSize);
+    engine.setPickUpTime(scenario.pickUpTime);
+    engine.setTraffic(this.traffic);
+
+    for (Map.Entry<Long, List<Pair<Integer, Integer>>> closure : schedule.entrySet()) {
+      if (closure.getKey() > this.until || engine.allOrdersFinished())
+        break;
+      engine.runUntil(closure.getKey());
+      engine.updateRoutes(closure.getValue(), new ArrayList<>());
+    }
+    engine.run(this.until);
+
+    Result result = new Result();
+    OrderHistory history = engine.getHistory();
+    result.finished = history.size();
+    result.count = engine.getOrderCount();
+    result.carts = engine.getCarts().size();
+    result.averageDuration = history.getAverageDuration();
+    for (int i = 0; i < history.size(); i++) {
+      result.maxDuration = Math.max(result.maxDuration, history.getEndEpochTime(i) - history.getStartEpochTime(i));
+      result.lastEnd = Math.max(result.lastEnd, history.getEndEpochTime(i));
+    }
+    result.wallTime = (System.nanoTime() - startTime) / 1000000;
+    return result;
+  }
+
+
+  /** Parses a list of numbers separated by commas.
+   *
+   * @param list The list, e.g. "250,500,1000".
+   * @return The numbers.
+   */
+  private static List<Integer> parseList(String list) {
+    List<Integer> values = new ArrayList<>();
+    for (String value : list.split(",")) {
+      values.add(Integer.parseInt(value.trim()));
+    }
+    return values;
+  }
+
+
+  /** Parses a schedule of closing the routes.
+   *
+   * @param schedule The closures separated by commas, each one as
+   *     time:node1-node2. An empty schedule closes nothing.
+   * @return The closed routes by the time of closing.
+   */
+  private static TreeMap<Long, List<Pair<Integer, Integer>>> parseSchedule(String schedule) {
+    TreeMap<Long, List<Pair<Integer, Integer>>> closures = new TreeMap<>();
+    if (schedule.isEmpty())
+      return closures;
+
+    for (String closure : schedule.split(",")) {
+      String[] time = closure.trim().split(":");
+      String[] nodes = time.length == 2 ? time[1].split("-") : new String[0];
+      if (nodes.length != 2)
+        throw new NumberFormatException(closure);
+
+      Pair<Integer, Integer> route = new Pair<>(Integer.parseInt(nodes[0].trim()), Integer.parseInt(nodes[1].trim()));
+      closures.computeIfAbsent(Long.parseLong(time[0].trim()), t -> new ArrayList<>()).add(route);
+    }
+
+    return closures;
+  }
+
+
+  /** Prints a table comparing the scenarios, the best average duration of
+   *  the orders is marked by an asterisk.
+   *
+   * @param scenarios The simulated scenarios.
+   * @param results The statistics of the scenarios in the same order.
+   * @param wallTime The real time the whole sweep took in ms.
+   */
+  private static void printTable(List<Scenario> scenarios, List<Result> results, long wallTime) {
+    int best = -1;
+    for (int i = 0; i < results.size(); i++) {
+      Result result = results.get(i);
+      if (result.finished > 0 && (best < 0 || result.averageDuration < results.get(best).averageDuration))
+        best = i;
+    }
+
+    System.out.printf("%4s %8s %9s %-20s %-24s %11s %6s %10s %10s %11s %8s%n", "#", "capacity", "pick [ms]", "orders", "closures",
+                      "finished", "carts", "avg [ms]", "max [ms]", "end [ms]", "wall [ms]");
+    for (int i = 0; i < scenarios.size(); i++) {
+      Scenario scenario = scenarios.get(i);
+      Result result = results.get(i);
+      System.out.printf("%4d %8d %9d %-20s %-24s %11s %6d %10d %10d %11d %8d%s%n", i + 1, scenario.capacity, scenario.pickUpTime,
+                        new File(scenario.orders).getName(), scenario.closures.isEmpty() ? "none" : scenario.closures,
+                        result.finished + "/" + result.count, result.carts, result.averageDuration, result.maxDuration,
+                        result.lastEnd, result.wallTime, i == best ? " *" : "");
+    }
+    System.out.printf("scenarios: %d, wall time: %d ms%n", scenarios.size(), wallTime);
+  }
+}
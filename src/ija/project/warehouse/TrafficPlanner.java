@@ -0,0 +1,580 @@
+package ija.project.warehouse;
+
+import java.util.*;
+
+/** Represent timing of carts' paths so the carts don't collide. The path
+ *  from PathFinder is searched again through the same stops by space-time
+ *  A* -- the cart can travel an open route or wait at a node for a slot,
+ *  a node reservated by other cart or a route reservated in the opposite
+ *  direction can't be used at the same time.
+ *  The heuristic is the shortest path without other carts, so the search is
+ *  short unless the cart has to wait or take a detour. The timed path is
+ *  reservated in ReservationTable right away (prioritized planning), the
+ *  carts planned later avoid it.
+ *
+ *  A node is occupied from the arrival till the departure and half a slot
+ *  around, a route in one direction while the cart travels it. The carts
+ *  have the same speed, so the carts following each other on a route keep
+ *  the distance they had at its first node, so they share the route in
+ *  that direction. The dispensing point (node 0) can hold any number of
+ *  carts. If no free way to the end is found within MAX_EXPANSIONS states,
+ *  the cart follows the part of the way found so far and it's replanned at
+ *  its end (rolling horizon). The timed path is checked again before it's
+ *  reservated, a node or route taken by other cart ends the path at the node
+ *  before, so a node is never reservated by two carts.
+ *
+ * @author Simon Slobodnik (xslobo06)
+ */
+public class TrafficPlanner {
+  /** Carts pass through each other (default) */
+  public static final String FREE = "free";
+  /** Carts reservate nodes and routes in space-time table */
+  public static final String RESERVED = "reserved";
+  /** Max number of states expanded by search of single path */
+  public static final int MAX_EXPANSIONS = 20000;
+  /** Weight of the estimated rest of the path, the found path takes at most
+   *  WEIGHT times longer than the best one */
+  public static final int WEIGHT = 2;
+
+  private static final int MARGIN = ReservationTable.SLOT / 2; //occupancy of node around the cart
+
+  private final FloorGraph graph;
+  private final GoodsIndex goodsIndex;
+  private final int speed; //pixels/s
+  private final ReservationTable table = new ReservationTable();
+  //states of search -- node, time, next stop, previous state
+  private int[] stateNode = new int[256];
+  private long[] stateTime = new long[256];
+  private int[] stateStop = new int[256];
+  private int[] stateParent = new int[256];
+  private int states = 0;
+  private int best = -1; //state closest to the end found by the last search
+  //binary heap of states ordered by estimated arrival
+  private int[] heap = new int[256];
+  private long[] heapKey = new long[256];
+  private int heapSize = 0;
+  private long[] visited = new long[1024]; //expanded states by node, slot and stop, open addressing
+  private int[] visitedMark = new int[1024]; //search which added the key, older keys are empty
+  private int visitedSize = 0;
+  private int search = 0;
+  //timed path being built -- node, goods, time spent at node
+  private int[] pathNodes = new int[64];
+  private int[] pathSKUs = new int[64];
+  private int[] pathQuantities = new int[64];
+  private int[] pathDwells = new int[64];
+  private int pathSize = 0;
+  private long[] keys = new long[256];
+  private int keyCount = 0;
+
+  /**
+   * @param graph Routes between nodes of the floor plan
+   * @param goodsIndex Index of shelfs by goods stored in them
+   * @param speed Speed of carts in pixels/s
+   */
+  public TrafficPlanner(FloorGraph graph, GoodsIndex goodsIndex, int speed) {
+    this.graph = graph;
+    this.goodsIndex = goodsIndex;
+    this.speed = speed;
+  }
+
+  /** Time the path in space-time and reservate it for the cart, the cart
+   *  can wait or go around other carts on its way between the stops
+   *
+   *  @param path Path from PathFinder, the first node is the position of the cart
+   *  @param owner ID of the cart, greater than 0
+   *  @param start Current time in ms, the cart is at its first node since then
+   *  @param ready Time when the cart can depart in ms, not before start
+   *  @param pickUpTime Time of picking up goods from single shelf in ms
+   *  @param routes Shortest paths between nodes, used as heuristic
+   *  @return Timed path with the same stops and reservation of goods
+   */
+  public RoutePlan schedule(RoutePlan path, int owner, long start, long ready, int pickUpTime, RoutingTable routes){
+    this.table.expire(start);
+    path.measure(this.graph);
+
+    //stops of the path with the time spent at them, rest[k] is the least
+    //time from the k-th stop to the end
+    int stops = 0;
+    int[] stopIndex = new int[path.size()];
+    for(int i = 1; i < path.size(); i++){
+      if(path.getSKU(i) != GoodsDictionary.NONE || i + 1 == path.size())
+        stopIndex[stops++] = i;
+    }
+    int[] stopNode = new int[stops];
+    int[] stopDwell = new int[stops];
+    long[] rest = new long[stops + 1];
+    for(int k = stops - 1; k >= 0; k--){
+      int i = stopIndex[k];
+      stopNode[k] = path.getNode(i);
+      stopDwell[k] = pickUpDwell(stopNode[k], path.getSKU(i), path.getQuantity(i), pickUpTime);
+      rest[k] = rest[k + 1] + stopDwell[k];
+      if(k + 1 < stops)
+        rest[k] += travelTime(path.getDistance(stopIndex[k + 1]) - path.getDistance(i));
+    }
+
+    this.pathSize = 0;
+    append(path.getNode(0), path.getSKU(0), path.getQuantity(0));
+    this.pathDwells[0] = (int)(ready - start);
+
+    int goal = search(path.getNode(0), ready, stopNode, stopDwell, rest, owner, routes);
+    List<Integer> way = null; //shortest way from the end of the found part to its next stop
+    if(goal < 0 && this.best >= 0){
+      int node = this.stateNode[this.best];
+      int next = stopNode[this.stateStop[this.best]];
+      way = (node == next) ? Collections.emptyList() : routes.getPath(node, next);
+    }
+
+    int horizon = -1;
+    if(way != null){
+      //follow the found part of the path and replan at its end, the rest
+      //is the shortest way through the remaining stops
+      appendStates(this.best, path, stopIndex);
+      horizon = this.pathSize - 1;
+      if(horizon == 0)
+        this.pathDwells[0] += ReservationTable.SLOT; //no way now, try again later
+
+      for(int next: way)
+        append(next, GoodsDictionary.NONE, 0);
+      for(int i = stopIndex[this.stateStop[this.best]]; i < path.size(); i++)
+        append(path.getNode(i), path.getSKU(i), path.getQuantity(i));
+    }
+    else if(goal < 0 && stops > 0){
+      //nothing searched (the first stop is cut off) or no way on from the
+      //found part (a route was closed since the path was planned), wait and replan
+      horizon = 0;
+      this.pathDwells[0] += ReservationTable.SLOT;
+      for(int i = 1; i < path.size(); i++)
+        append(path.getNode(i), path.getSKU(i), path.getQuantity(i));
+    }
+    else
+      appendStates(goal, path, stopIndex);
+
+    RoutePlan timed = new RoutePlan(this.pathSize);
+    for(int i = 0; i < this.pathSize; i++){
+      timed.add(this.pathNodes[i], this.pathSKUs[i], this.pathQuantities[i]);
+      timed.setDwell(i, this.pathDwells[i]);
+    }
+    timed.measure(this.graph);
+    timed.setReservation(path.getReservation());
+    timed.setHorizon(horizon);
+    timed.setSlots(occupy(timed, owner, start));
+    return timed;
+  }
+
+  /** Reservate the path again, e.g. after the simulation was restored
+   *
+   *  @param path Timed path with its reservations
+   *  @param owner ID of the cart
+   */
+  public void reserve(RoutePlan path, int owner){
+    if(path == null || path.getSlots() == null)
+      return;
+
+    for(long key: path.getSlots())
+      reserveCell((int)key, key >> 32, owner);
+  }
+
+  /** Release reservations of the path, the cart doesn't follow it anymore
+   *
+   *  @param path Timed path, can be null
+   *  @param owner ID of the cart
+   */
+  public void release(RoutePlan path, int owner){
+    if(path != null)
+      this.table.release(path.getSlots(), owner);
+  }
+
+  /** Release all reservations
+   */
+  public void clear(){
+    this.table.clear();
+  }
+
+  /** Search the earliest end of the path through all the stops by space-time
+   *  A*, the state is node, time and the next stop. Searching the whole path
+   *  at once lets the cart wait before a stop if it couldn't leave it later.
+   *  The estimate is weighted by WEIGHT, so the search prefers getting closer
+   *  to the end over waiting. The state closest to the end is kept in best.
+   *
+   *  @param from Number of start node
+   *  @param ready Time when the cart can depart in ms
+   *  @param stopNode Nodes of the stops
+   *  @param stopDwell Time spent at each stop in ms
+   *  @param rest Least time from each stop to the end in ms
+   *  @param owner ID of the cart
+   *  @param routes Shortest paths between nodes
+   *  @return Index of state at the end, -1 if there is no free way
+   */
+  private int search(int from, long ready, int[] stopNode, int[] stopDwell, long[] rest, int owner, RoutingTable routes){
+    int stops = stopNode.length;
+    if(stops == 0 || routes.getDistance(from, stopNode[0]) == Integer.MAX_VALUE)
+      return -1;
+
+    FloorGraph.Snapshot snapshot = this.graph.getSnapshot();
+    int n = this.graph.size();
+    this.states = 0;
+    this.heapSize = 0;
+    this.search++;
+    this.visitedSize = 0;
+    this.best = -1;
+    long bestRest = Long.MAX_VALUE;
+    push(addState(from, ready, 0, -1), ready + WEIGHT * (travelTime(routes.getDistance(from, stopNode[0])) + rest[0]));
+
+    for(int expanded = 0; this.heapSize > 0 && expanded < MAX_EXPANSIONS; expanded++){
+      int state = pop();
+      int node = this.stateNode[state];
+      long time = this.stateTime[state];
+      int k = this.stateStop[state];
+      if(k == stops)
+        return state;
+      if(!visit((ReservationTable.slot(time) * (stops + 1) + k) * n + node))
+        continue;
+
+      long remaining = travelTime(routes.getDistance(node, stopNode[k])) + rest[k];
+      if(remaining < bestRest || (remaining == bestRest && time < this.stateTime[this.best])){
+        this.best = state;
+        bestRest = remaining;
+      }
+
+      //stop here
+      if(node == stopNode[k] && isFree(node, time - MARGIN, time + stopDwell[k] + MARGIN, owner)){
+        long done = time + stopDwell[k];
+        long estimate = k + 1 == stops ? done : done + WEIGHT * (travelTime(routes.getDistance(node, stopNode[k + 1])) + rest[k + 1]);
+        push(addState(node, done, k + 1, state), estimate);
+      }
+
+      //wait for a slot
+      long wait = time + ReservationTable.SLOT;
+      if(isFree(node, time, wait + MARGIN, owner))
+        push(addState(node, wait, k, state), wait + WEIGHT * (travelTime(routes.getDistance(node, stopNode[k])) + rest[k]));
+
+      for(int e = this.graph.getEdgeStart(node); e < this.graph.getEdgeEnd(node); e++){
+        int route = this.graph.getRoute(e);
+        int next = this.graph.getTarget(e);
+        int distance = routes.getDistance(next, stopNode[k]);
+        if(!snapshot.isOpen(route) || distance == Integer.MAX_VALUE)
+          continue;
+
+        long arrival = time + travelTime(this.graph.getLength(e));
+        if(this.table.isFree(routeCell(route, next, node), time, arrival, owner) && isFree(next, arrival - MARGIN, arrival + MARGIN, owner))
+          push(addState(next, arrival, k, state), arrival + WEIGHT * (travelTime(distance) + rest[k]));
+      }
+    }
+    return -1;
+  }
+
+  /** Append nodes of found states to the timed path, waiting at a node
+   *  prolongs the time spent at it, a stop gets the goods from the path
+   *
+   *  @param goal Index of state at the end
+   *  @param path Path from PathFinder
+   *  @param stopIndex Indexes of the stops in path
+   */
+  private void appendStates(int goal, RoutePlan path, int[] stopIndex){
+    int count = 0;
+    for(int state = goal; state >= 0; state = this.stateParent[state])
+      count++;
+
+    int[] chain = new int[count];
+    for(int state = goal; state >= 0; state = this.stateParent[state])
+      chain[--count] = state;
+
+    boolean stopped = true; //the last node is a stop or the start
+    for(int i = 1; i < chain.length; i++){
+      int node = this.stateNode[chain[i]];
+      int k = this.stateStop[chain[i-1]];
+      int dwell = (int)(this.stateTime[chain[i]] - this.stateTime[chain[i-1]]);
+      if(this.stateStop[chain[i]] != k){
+        if(stopped) //more stops at the same node
+          append(node, GoodsDictionary.NONE, 0);
+        this.pathSKUs[this.pathSize - 1] = path.getSKU(stopIndex[k]);
+        this.pathQuantities[this.pathSize - 1] = path.getQuantity(stopIndex[k]);
+        this.pathDwells[this.pathSize - 1] += dwell;
+        stopped = true;
+      }
+      else if(node == this.stateNode[chain[i-1]])
+        this.pathDwells[this.pathSize - 1] += dwell;
+      else{
+        append(node, GoodsDictionary.NONE, 0);
+        stopped = false;
+      }
+    }
+  }
+
+  /** Reservate nodes and routes of the timed path up to its horizon. If other
+   *  cart has taken any of them, the path ends at the node before and the cart
+   *  is replanned there, a cart which can't leave its first node waits there
+   *  for a slot.
+   *
+   *  @param path Timed and measured path, its horizon can be moved
+   *  @param owner ID of the cart
+   *  @param start Time when the cart is at the first node in ms
+   *  @return Keys of the reservations
+   */
+  private long[] occupy(RoutePlan path, int owner, long start){
+    int end = path.getHorizon() < 0 ? path.size() - 1 : path.getHorizon();
+    int conflict = walk(path, owner, start, end, false);
+    if(conflict > 0){
+      end = conflict - 1;
+      path.setHorizon(end);
+      if(end == 0)
+        path.setDwell(0, path.getDwell(0) + ReservationTable.SLOT); //no way now, try again later
+    }
+
+    this.keyCount = 0;
+    walk(path, owner, start, end, true);
+    return Arrays.copyOf(this.keys, this.keyCount);
+  }
+
+  /** Go through nodes and routes of the timed path with the time the cart
+   *  occupies them, the times are calculated the same way as the cart moves
+   *
+   *  @param path Timed and measured path
+   *  @param owner ID of the cart
+   *  @param start Time when the cart is at the first node in ms
+   *  @param end Index of the last node
+   *  @param reserve True - reservate them, false - only check them
+   *  @return Index of the first node which can't be reached without other
+   *          cart's node or route, -1 if there is none
+   */
+  private int walk(RoutePlan path, int owner, long start, int end, boolean reserve){
+    int departIndex = 0;
+    long departTime = start + path.getDwell(0);
+    if(reserve)
+      occupyCell(path.getNode(0), start - MARGIN, departTime + MARGIN, owner);
+    for(int i = 1; i <= end; i++){
+      long leave = departTime + travelTime(path.getDistance(i-1) - path.getDistance(departIndex));
+      long arrival = departTime + travelTime(path.getDistance(i) - path.getDistance(departIndex));
+      boolean moves = path.getNode(i) != path.getNode(i-1);
+      long leaveNode = arrival + path.getDwell(i) + MARGIN;
+      if(reserve){
+        if(moves)
+          occupyCell(routeCell(path.getRoute(i-1), path.getNode(i-1), path.getNode(i)), leave, arrival, owner);
+        occupyCell(path.getNode(i), arrival - MARGIN, leaveNode, owner);
+      }
+      //the same as the search -- the route mustn't be used in the opposite direction
+      else if((moves && !this.table.isFree(routeCell(path.getRoute(i-1), path.getNode(i), path.getNode(i-1)), leave, arrival, owner))
+              || !isFree(path.getNode(i), arrival - MARGIN, leaveNode, owner))
+        return i;
+
+      if(path.getDwell(i) > 0){
+        departIndex = i;
+        departTime = arrival + path.getDwell(i);
+      }
+    }
+    return -1;
+  }
+
+  /** Reservate all slots of the cell in the time interval, the dispensing
+   *  point is never reservated. The cells after the first node were checked
+   *  by walk(), so a slot is left out only if it has passed or other cart
+   *  has planned to pass the node the cart already stands on.
+   *
+   *  @param cell Number of cell
+   *  @param from Start of the interval in ms
+   *  @param to End of the interval in ms
+   *  @param owner ID of the cart
+   */
+  private void occupyCell(int cell, long from, long to, int owner){
+    if(cell == 0)
+      return;
+
+    for(long slot = ReservationTable.slot(from); slot <= ReservationTable.slot(to); slot++){
+      if(reserveCell(cell, slot, owner)){
+        if(this.keyCount == this.keys.length)
+          this.keys = Arrays.copyOf(this.keys, this.keys.length * 2);
+        this.keys[this.keyCount++] = ReservationTable.key(cell, slot);
+      }
+    }
+  }
+
+  /** Reservate the cell in slot, a node only for the cart, a route together
+   *  with the carts going the same direction
+   *
+   *  @param cell Number of cell
+   *  @param slot Index of slot
+   *  @param owner ID of the cart
+   *  @return True - if the slot is reservated for the cart
+   */
+  private boolean reserveCell(int cell, long slot, int owner){
+    if(cell < this.graph.size())
+      return this.table.reserve(cell, slot, owner);
+    return this.table.share(cell, slot, owner);
+  }
+
+  /** Get cell of route in the direction, the nodes are cells before routes
+   *
+   *  @param route ID of route
+   *  @param from Number of node at which the cart enters the route
+   *  @param to Number of node at which the cart leaves the route
+   *  @return Number of cell
+   */
+  private int routeCell(int route, int from, int to){
+    return this.graph.size() + 2 * route + (from < to ? 0 : 1);
+  }
+
+  /** Check if the node is free in the time interval, the dispensing point
+   *  is always free
+   *
+   *  @param node Number of node
+   *  @param from Start of the interval in ms
+   *  @param to End of the interval in ms
+   *  @param owner ID of the cart
+   *  @return True - if no other cart occupies the node
+   */
+  private boolean isFree(int node, long from, long to, int owner){
+    return node == 0 || this.table.isFree(node, from, to, owner);
+  }
+
+  /** Estimate time of picking up goods at node the same way the cart picks
+   *  them up -- shelf by shelf until there are enough goods
+   *
+   *  @param node Number of node
+   *  @param sku SKU of the goods
+   *  @param quantity Number of items
+   *  @param pickUpTime Time of picking up goods from single shelf in ms
+   *  @return Time of picking up in ms, 0 if nothing is picked up
+   */
+  private int pickUpDwell(int node, int sku, int quantity, int pickUpTime){
+    if(sku == GoodsDictionary.NONE || sku == GoodsDictionary.DISPENSE)
+      return 0;
+
+    int dwell = 0;
+    for(Shelf shelf: this.goodsIndex.getShelves(node, sku)){
+      dwell += pickUpTime;
+      quantity -= Math.min(quantity, shelf.getQuantity());
+      if(quantity == 0)
+        break;
+    }
+    return dwell;
+  }
+
+  /** Append node to the timed path being built
+   *
+   *  @param node Number of node
+   *  @param sku SKU of the goods at node
+   *  @param quantity Number of items
+   */
+  private void append(int node, int sku, int quantity){
+    if(this.pathSize == this.pathNodes.length){
+      int capacity = this.pathSize * 2;
+      this.pathNodes = Arrays.copyOf(this.pathNodes, capacity);
+      this.pathSKUs = Arrays.copyOf(this.pathSKUs, capacity);
+      this.pathQuantities = Arrays.copyOf(this.pathQuantities, capacity);
+      this.pathDwells = Arrays.copyOf(this.pathDwells, capacity);
+    }
+    this.pathNodes[this.pathSize] = node;
+    this.pathSKUs[this.pathSize] = sku;
+    this.pathQuantities[this.pathSize] = quantity;
+    this.pathDwells[this.pathSize] = 0;
+    this.pathSize++;
+  }
+
+  /** Add state of search
+   *
+   *  @param node Number of node
+   *  @param time Time of arrival to node in ms
+   *  @param stop Index of the next stop
+   *  @param parent Index of previous state, -1 for the start
+   *  @return Index of the state
+   */
+  private int addState(int node, long time, int stop, int parent){
+    if(this.states == this.stateNode.length){
+      int capacity = this.states * 2;
+      this.stateNode = Arrays.copyOf(this.stateNode, capacity);
+      this.stateTime = Arrays.copyOf(this.stateTime, capacity);
+      this.stateStop = Arrays.copyOf(this.stateStop, capacity);
+      this.stateParent = Arrays.copyOf(this.stateParent, capacity);
+    }
+    this.stateNode[this.states] = node;
+    this.stateTime[this.states] = time;
+    this.stateStop[this.states] = stop;
+    this.stateParent[this.states] = parent;
+    return this.states++;
+  }
+
+  /** Mark the state as expanded
+   *
+   *  @param key Key of node, slot and stop of the state
+   *  @return True - if the state wasn't expanded by this search yet
+   */
+  private boolean visit(long key){
+    if(2 * (this.visitedSize + 1) > this.visited.length){
+      long[] keys = this.visited;
+      int[] marks = this.visitedMark;
+      this.visited = new long[keys.length * 2];
+      this.visitedMark = new int[keys.length * 2];
+      this.visitedSize = 0;
+      for(int i = 0; i < keys.length; i++){
+        if(marks[i] == this.search)
+          visit(keys[i]);
+      }
+    }
+
+    int mask = this.visited.length - 1;
+    int i = (int)((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+    for(; this.visitedMark[i] == this.search; i = (i + 1) & mask){
+      if(this.visited[i] == key)
+        return false;
+    }
+    this.visited[i] = key;
+    this.visitedMark[i] = this.search;
+    this.visitedSize++;
+    return true;
+  }
+
+  /** Insert state into the heap
+   *
+   *  @param state Index of state
+   *  @param key Estimated arrival to the stop in ms
+   */
+  private void push(int state, long key){
+    if(this.heapSize == this.heap.length){
+      this.heap = Arrays.copyOf(this.heap, this.heapSize * 2);
+      this.heapKey = Arrays.copyOf(this.heapKey, this.heapSize * 2);
+    }
+
+    int i = this.heapSize++;
+    while(i > 0 && this.heapKey[(i - 1) / 2] > key){
+      this.heap[i] = this.heap[(i - 1) / 2];
+      this.heapKey[i] = this.heapKey[(i - 1) / 2];
+      i = (i - 1) / 2;
+    }
+    this.heap[i] = state;
+    this.heapKey[i] = key;
+  }
+
+  /** Remove state with the earliest estimated arrival from the heap
+   *
+   *  @return Index of the state
+   */
+  private int pop(){
+    int top = this.heap[0];
+    int state = this.heap[--this.heapSize];
+    long key = this.heapKey[this.heapSize];
+
+    int i = 0;
+    while(2 * i + 1 < this.heapSize){
+      int child = 2 * i + 1;
+      if(child + 1 < this.heapSize && this.heapKey[child + 1] < this.heapKey[child])
+        child++;
+      if(this.heapKey[child] >= key)
+        break;
+      this.heap[i] = this.heap[child];
+      this.heapKey[i] = this.heapKey[child];
+      i = child;
+    }
+    this.heap[i] = state;
+    this.heapKey[i] = key;
+    return top;
+  }
+
+  /** Calculate time needed to travel the distance
+   *
+   *  @param distance Distance in pixels
+   *  @return Time in ms
+   */
+  private long travelTime(int distance){
+    return (long)distance * 1000 / this.speed;
+  }
+}
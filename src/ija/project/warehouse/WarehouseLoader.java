@@ -0,0 +1,316 @@
+package ija.project.warehouse;
+
+import java.util.*;
+import java.io.*;
+
+//http://www.java2s.com/Code/JarDownload/json-simple/json-simple-1.1.jar.zip
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+
+/** Loads a floor plan of a warehouse, goods and orders from JSON files into
+ *  the simulation model. The class doesn't depend on JavaFX, so it can be used
+ *  by the GUI as well as by the headless simulation.
+ *
+ * @author Tomas Beranek (xberan46)
+ */
+public class WarehouseLoader {
+  private GoodsDictionary dictionary = new GoodsDictionary();
+
+
+  /** Gets the dictionary of the goods names of all the loaded goods and
+   *  orders.
+   *
+   * @return The dictionary of the goods names.
+   */
+  public GoodsDictionary getGoodsDictionary() {
+    return this.dictionary;
+  }
+
+
+  /** Loads files into JSON objects. The orders aren't loaded here, they are
+   *  read by a stream during the simulation.
+   *
+   * @param fileNames The list of filenames:
+   *           0) a floor plan
+   *           1) goods
+   * @return The list of created JSONObjects in the same order.
+   */
+  public List<JSONObject> loadJSONData(List<String> fileNames) {
+    JSONParser parser = new JSONParser();
+    List<JSONObject> data = new ArrayList<>();
+
+    for (int i = 0; i < fileNames.size(); i++) {
+      try (Reader reader = new BufferedReader(new FileReader(fileNames.get(i)))) {
+        data.add((JSONObject) parser.parse(reader));
+      } catch(Exception e) {
+        System.err.printf("ERROR: failed to parse JSON file '%s'", fileNames.get(i));
+        System.exit(1);
+      }
+    }
+
+    return data;
+  }
+
+
+  /** Loads all the shelves from a JSONObject that contains a floor plan.
+   *
+   * @param data JSONObject with a floor plan of a warehouse.
+   * @return A hashtable of loaded shelves indexed by their ID.
+   */
+  public Hashtable<Integer, Shelf> getAllShelves(JSONObject data) {
+    Hashtable<Integer, Shelf> shelves = new Hashtable<>();
+    JSONArray shelfsJSON = (JSONArray)data.get("shelfs");
+    Iterator it = shelfsJSON.iterator();
+
+    while(it.hasNext()){
+      Shelf shelf = getShelf((JSONObject)it.next());
+      shelves.put(shelf.shelfID, shelf);
+    }
+
+    return shelves;
+  }
+
+
+  /** Loads a single shelf from a JSONObject.
+   *
+   * @param data JSONObject with a single shelf.
+   * @return Loaded shelf.
+   */
+  public Shelf getShelf(JSONObject data) {
+    JSONArray lefttopJSON = (JSONArray)data.get("lefttop");
+    int x1 = ((Long)lefttopJSON.get(0)).intValue();
+    int y1 = ((Long)lefttopJSON.get(1)).intValue();
+
+    JSONArray rightbottomJSON = (JSONArray)data.get("rightbottom");
+    int x2 = ((Long)rightbottomJSON.get(0)).intValue();
+    int y2 = ((Long)rightbottomJSON.get(1)).intValue();
+
+    Integer shelfID = ((Long)data.get("id")).intValue();
+    Integer nodeID = ((Long)data.get("node")).intValue();
+
+    return new Shelf(x1, y1, x2 - x1, y2 - y1, shelfID, nodeID);
+  }
+
+
+  /** Loads all the nodes from a JSONObject that contains a floor plan.
+   *
+   * @param data JSONObject with a floor plan of a warehouse.
+   * @return A hashtable of loaded nodes indexed by their ID.
+   */
+  public Hashtable<Integer, PathNode> getAllNodes(JSONObject data) {
+    Hashtable<Integer, PathNode> nodes = new Hashtable<>();
+    JSONArray nodesJSON = (JSONArray)data.get("nodes");
+    Iterator it = nodesJSON.iterator();
+
+    while(it.hasNext()){
+      JSONObject nodeJSON = (JSONObject)it.next();
+      JSONArray positionJSON = (JSONArray)nodeJSON.get("position");
+      PathNode node = new PathNode(
+        ((Long)positionJSON.get(0)).intValue(),
+        ((Long)positionJSON.get(1)).intValue(),
+        ((Long)nodeJSON.get("id")).intValue());
+      nodes.put(node.ID, node);
+    }
+
+    return nodes;
+  }
+
+
+  /** Loads the routing backend from a JSONObject that contains a floor plan.
+   *  The backend is optional, all-pairs matrixes are used by default.
+   *
+   * @param data JSONObject with a floor plan of a warehouse.
+   * @return RoutingTable.MATRIX or RoutingTable.SPARSE.
+   */
+  public String getRouting(JSONObject data) {
+    String routing = (String)data.get("routing");
+
+    if (routing == null)
+      return RoutingTable.MATRIX;
+
+    if (!routing.equals(RoutingTable.MATRIX) && !routing.equals(RoutingTable.SPARSE)) {
+      System.err.printf("ERROR: unknown routing '%s'", routing);
+      System.exit(1);
+    }
+
+    return routing;
+  }
+
+
+  /** Loads whether the carts avoid each other from a JSONObject that contains
+   *  a floor plan. The setting is optional, the carts pass through each other
+   *  by default.
+   *
+   * @param data JSONObject with a floor plan of a warehouse.
+   * @return TrafficPlanner.FREE or TrafficPlanner.RESERVED.
+   */
+  public String getTraffic(JSONObject data) {
+    String traffic = (String)data.get("traffic");
+
+    if (traffic == null)
+      return TrafficPlanner.FREE;
+
+    if (!traffic.equals(TrafficPlanner.FREE) && !traffic.equals(TrafficPlanner.RESERVED)) {
+      System.err.printf("ERROR: unknown traffic '%s'", traffic);
+      System.exit(1);
+    }
+
+    return traffic;
+  }
+
+
+  /** Loads the time budget of improving the order of picking from a JSONObject
+   *  that contains a floor plan. The budget is optional, PathFinder's default is
+   *  used if it's missing.
+   *
+   * @param data JSONObject with a floor plan of a warehouse.
+   * @return The time budget in ms, 0 turns the improving off.
+   */
+  public long getImproveTime(JSONObject data) {
+    Long improveTime = (Long)data.get("improve_time");
+
+    if (improveTime == null)
+      return PathFinder.DEFAULT_IMPROVE_TIME;
+
+    if (improveTime < 0) {
+      System.err.printf("ERROR: negative improve_time '%d'", improveTime);
+      System.exit(1);
+    }
+
+    return improveTime;
+  }
+
+
+  /** Loads the time window of batching the orders into waves from a JSONObject
+   *  that contains a floor plan. The window is optional, the orders aren't
+   *  batched by default.
+   *
+   * @param data JSONObject with a floor plan of a warehouse.
+   * @return The time window in ms, 0 turns the batching off.
+   */
+  public long getWaveWindow(JSONObject data) {
+    Long waveWindow = (Long)data.get("wave_window");
+
+    if (waveWindow == null)
+      return 0;
+
+    if (waveWindow < 0) {
+      System.err.printf("ERROR: negative wave_window '%d'", waveWindow);
+      System.exit(1);
+    }
+
+    return waveWindow;
+  }
+
+
+  /** Loads the number of carts of the fleet from a JSONObject that contains
+   *  a floor plan. The number is optional, the fleet is unlimited by default.
+   *
+   * @param data JSONObject with a floor plan of a warehouse.
+   * @return The number of carts, 0 for an unlimited fleet.
+   */
+  public int getFleetSize(JSONObject data) {
+    Long fleetSize = (Long)data.get("fleet_size");
+
+    if (fleetSize == null)
+      return 0;
+
+    if (fleetSize < 0) {
+      System.err.printf("ERROR: negative fleet_size '%d'", fleetSize);
+      System.exit(1);
+    }
+
+    return fleetSize.intValue();
+  }
+
+
+  /** Loads all the routes between nodes from a JSONObject that contains a floor
+   *  plan.
+   *
+   * @param data JSONObject with a floor plan of a warehouse.
+   * @return A list of loaded routes specified as -- node1ID and node2ID.
+   */
+  public List<Pair<Integer, Integer>> getAllRoutes(JSONObject data) {
+    List<Pair<Integer, Integer>> routes = new ArrayList<>();
+    JSONArray routesJSON = (JSONArray)data.get("routes");
+    Iterator it = routesJSON.iterator();
+
+    while(it.hasNext()){
+      JSONArray route = (JSONArray)it.next();
+      routes.add(new Pair<Integer, Integer>(((Long)route.get(0)).intValue(), ((Long)route.get(1)).intValue()));
+    }
+
+    return routes;
+  }
+
+
+  /** Connects the nodes by the given routes.
+   *
+   * @param nodes A hashtable of all the nodes.
+   * @param routes A list of routes specified as -- node1ID and node2ID.
+   * @return The floor plan graph with all the routes open.
+   */
+  public FloorGraph connectRoutes(Hashtable<Integer, PathNode> nodes, List<Pair<Integer, Integer>> routes) {
+    return new FloorGraph(nodes, routes);
+  }
+
+
+  /** Loads all the goods from a JSONObject that contains a goods info.
+   *
+   * @param data JSONObject with a goods info.
+   * @return A list of loaded goods informations. Each item's information contains --
+   *     shelfID, SKU and quantity.
+   */
+  public List<Pair<Integer, Pair<Integer, Integer>>> getAllGoods(JSONObject data) {
+    List<Pair<Integer, Pair<Integer, Integer>>> goods = new ArrayList<>();
+    JSONArray goodsJSON = (JSONArray) data.get("goodsList");
+    Iterator it = goodsJSON.iterator();
+
+    while(it.hasNext()) {
+      JSONObject singleGoods = (JSONObject)it.next();
+      Integer shelfID = ((Long)singleGoods.get("shelf")).intValue();
+      Integer goodsSKU = this.dictionary.getSKU((String)singleGoods.get("goods"));
+      Integer goodsQuantity = ((Long)singleGoods.get("quantity")).intValue();
+      goods.add(new Pair<>(shelfID, new Pair<>(goodsSKU, goodsQuantity)));
+    }
+
+    return goods;
+  }
+
+
+  /** Loads all the goods into shelves and indexes the shelves by the goods.
+   *
+   * @param shelves A hashtable of all the shelves.
+   * @param goods A list of goods informations. Each item's information contains --
+   *     shelfID, SKU and quantity.
+   * @return The index of shelves by the goods stored in them.
+   */
+  public GoodsIndex loadGoodsToShelfs(Hashtable<Integer, Shelf> shelves, List<Pair<Integer, Pair<Integer, Integer>>> goods) {
+    Iterator<Pair<Integer, Pair<Integer, Integer>>> it = goods.iterator();
+
+    while (it.hasNext()) {
+      Pair<Integer, Pair<Integer, Integer>> singleGoods = it.next();
+      Shelf shelf = shelves.get(singleGoods.getKey());
+
+      // add all goods to existing shelfs
+      shelf.addGoods(singleGoods.getValue().getKey(), singleGoods.getValue().getValue());
+    }
+
+    return new GoodsIndex(shelves);
+  }
+
+
+  /** Opens a stream of the orders from a file with the orders. The goods
+   *  have to be loaded before the orders are read, their names are
+   *  translated by the dictionary.
+   *
+   * @param fileName The name of the JSON file with the orders.
+   * @return The stream of the orders.
+   */
+  public OrderStream getOrderStream(String fileName) {
+    return new OrderStream(fileName, this.dictionary);
+  }
+}
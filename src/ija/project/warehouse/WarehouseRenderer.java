@@ -0,0 +1,227 @@
+package ija.project.warehouse;
+
+import java.util.*;
+
+import javafx.beans.InvalidationListener;
+import javafx.geometry.Point2D;
+import javafx.scene.Group;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+import javafx.scene.shape.*;
+
+
+/** Draws the warehouse into two stacked canvases instead of keeping a node of
+ *  the scene graph for each shape. The floor plan (the warehouse, dispensing
+ *  point, shelves, routes and nodes) is drawn into the lower canvas only when
+ *  some of its shapes or the zoom change. The carts are drawn into the upper
+ *  canvas in a single pass each frame.
+ *
+ *  The shapes only hold the geometry and colors, they aren't part of the scene
+ *  graph. The clicks are therefore hit-tested by the renderer too.
+ *
+ * @author Tomas Beranek (xberan46)
+ */
+public class WarehouseRenderer {
+  private Canvas floorLayer;
+  private Canvas cartLayer;
+  private Group layers = new Group();
+  private List<Shape> floorShapes = new ArrayList<>(); // in the order of drawing
+  private boolean floorChanged = true;
+  private InvalidationListener floorListener = observable -> this.floorChanged = true;
+  private double zoom = 1;
+  private double pivotX = 0;
+  private double pivotY = 0;
+
+
+  /**
+   * @param width The width of the drawn area.
+   * @param height The height of the drawn area.
+   */
+  public WarehouseRenderer(double width, double height) {
+    this.floorLayer = new Canvas(width, height);
+    this.cartLayer = new Canvas(width, height);
+    this.layers.getChildren().addAll(this.floorLayer, this.cartLayer);
+  }
+
+
+  /** Gets the node of the scene graph which displays the canvases.
+   *
+   * @return The group of both canvases.
+   */
+  public Group getNode() {
+    return this.layers;
+  }
+
+
+  /** Adds a shape on top of the floor plan. The floor plan is redrawn
+   *  whenever the shape's colors or geometry change.
+   *
+   * @param shape A rectangle, circle or line.
+   */
+  public void addFloorShape(Shape shape) {
+    this.floorShapes.add(shape);
+    shape.fillProperty().addListener(this.floorListener);
+    shape.strokeProperty().addListener(this.floorListener);
+    shape.strokeWidthProperty().addListener(this.floorListener);
+
+    if (shape instanceof Circle) {
+      Circle circle = (Circle)shape;
+      circle.radiusProperty().addListener(this.floorListener);
+      circle.centerXProperty().addListener(this.floorListener);
+      circle.centerYProperty().addListener(this.floorListener);
+    }
+
+    this.floorChanged = true;
+  }
+
+
+  /** Sets the zoom of the floor plan and carts.
+   *
+   * @param zoom The zoom factor.
+   * @param pivotX The x coordinate of the point which stays in place.
+   * @param pivotY The y coordinate of the point which stays in place.
+   */
+  public void setZoom(double zoom, double pivotX, double pivotY) {
+    this.zoom = zoom;
+    this.pivotX = pivotX;
+    this.pivotY = pivotY;
+    this.floorChanged = true;
+  }
+
+
+  /** Converts a point of the canvas (e.g. a click) to the coordinates of
+   *  the floor plan.
+   *
+   * @param x The x coordinate on the canvas.
+   * @param y The y coordinate on the canvas.
+   * @return The point of the floor plan.
+   */
+  public Point2D toFloor(double x, double y) {
+    return new Point2D(this.pivotX + (x - this.pivotX) / this.zoom, this.pivotY + (y - this.pivotY) / this.zoom);
+  }
+
+
+  /** Checks if a shape is hit by a point of the floor plan.
+   *
+   * @param shape A rectangle, circle or line.
+   * @param point The point of the floor plan.
+   * @return True - if the point is inside the shape (or on the line).
+   */
+  public boolean contains(Shape shape, Point2D point) {
+    if (shape instanceof Rectangle) {
+      Rectangle rect = (Rectangle)shape;
+      return point.getX() >= rect.getX() && point.getX() <= rect.getX() + rect.getWidth() &&
+             point.getY() >= rect.getY() && point.getY() <= rect.getY() + rect.getHeight();
+    }
+
+    if (shape instanceof Circle) {
+      Circle circle = (Circle)shape;
+      return circle.getRadius() > 0 && point.distance(circle.getCenterX(), circle.getCenterY()) <= circle.getRadius();
+    }
+
+    if (shape instanceof Line) {
+      Line line = (Line)shape;
+      double dx = line.getEndX() - line.getStartX();
+      double dy = line.getEndY() - line.getStartY();
+      double length = dx * dx + dy * dy;
+      double t = 0;
+      if (length > 0)
+        t = Math.max(0, Math.min(1, ((point.getX() - line.getStartX()) * dx + (point.getY() - line.getStartY()) * dy) / length));
+      return point.distance(line.getStartX() + t * dx, line.getStartY() + t * dy) <= line.getStrokeWidth() / 2 + 0.5;
+    }
+
+    return false;
+  }
+
+
+  /** Draws a frame -- the floor plan only if it has changed, the carts and
+   *  the shelves from which they are picking up always.
+   *
+   * @param carts The visualized carts.
+   * @param shelves All the visualized shelves indexed by their ID.
+   */
+  public void render(Collection<CartCircle> carts, Hashtable<Integer, ShelfRectangle> shelves) {
+    if (this.floorChanged) {
+      GraphicsContext floor = beginLayer(this.floorLayer);
+      for (Shape shape : this.floorShapes) {
+        drawShape(floor, shape);
+      }
+      this.floorChanged = false;
+    }
+
+    GraphicsContext gc = beginLayer(this.cartLayer);
+
+    // the shelves from which the goods are picked up, dark grey on a highlighted path
+    gc.setLineWidth(6);
+    for (CartCircle cart : carts) {
+      for (Integer shelfID : cart.getCart().getPickingShelfIDs()) {
+        ShelfRectangle shelf = shelves.get(shelfID);
+        gc.setStroke(Color.GREEN.equals(shelf.getStroke()) ? Color.DARKGREY : Color.GREY);
+        gc.strokeRect(shelf.getX() + 3, shelf.getY() + 3, shelf.getWidth() - 6, shelf.getHeight() - 6);
+      }
+    }
+
+    for (CartCircle cart : carts) {
+      drawShape(gc, cart);
+    }
+  }
+
+
+  /** Clears the canvas and sets the zoom as its transformation.
+   *
+   * @param layer The canvas to be drawn.
+   * @return The graphics context of the canvas.
+   */
+  private GraphicsContext beginLayer(Canvas layer) {
+    GraphicsContext gc = layer.getGraphicsContext2D();
+    gc.setTransform(1, 0, 0, 1, 0, 0);
+    gc.clearRect(0, 0, layer.getWidth(), layer.getHeight());
+    gc.translate(this.pivotX, this.pivotY);
+    gc.scale(this.zoom, this.zoom);
+    gc.translate(-this.pivotX, -this.pivotY);
+    return gc;
+  }
+
+
+  /** Draws a single shape with its current colors.
+   *
+   * @param gc The graphics context of the canvas.
+   * @param shape A rectangle, circle or line.
+   */
+  private void drawShape(GraphicsContext gc, Shape shape) {
+    Paint fill = shape.getFill();
+    Paint stroke = shape.getStroke();
+    double width = shape.getStrokeWidth();
+    boolean stroked = stroke != null && width > 0;
+    gc.setLineWidth(width);
+    if (fill != null)
+      gc.setFill(fill);
+    if (stroked)
+      gc.setStroke(stroke);
+
+    if (shape instanceof Rectangle) {
+      Rectangle rect = (Rectangle)shape;
+      if (fill != null)
+        gc.fillRect(rect.getX(), rect.getY(), rect.getWidth(), rect.getHeight());
+      if (stroked && rect.getStrokeType() == StrokeType.INSIDE)
+        gc.strokeRect(rect.getX() + width / 2, rect.getY() + width / 2, rect.getWidth() - width, rect.getHeight() - width);
+      else if (stroked)
+        gc.strokeRect(rect.getX(), rect.getY(), rect.getWidth(), rect.getHeight());
+    } else if (shape instanceof Circle) {
+      Circle circle = (Circle)shape;
+      double r = circle.getRadius();
+      if (r <= 0)
+        return;
+      if (fill != null)
+        gc.fillOval(circle.getCenterX() - r, circle.getCenterY() - r, 2 * r, 2 * r);
+      if (stroked)
+        gc.strokeOval(circle.getCenterX() - r, circle.getCenterY() - r, 2 * r, 2 * r);
+    } else if (shape instanceof Line) {
+      Line line = (Line)shape;
+      if (stroked)
+        gc.strokeLine(line.getStartX(), line.getStartY(), line.getEndX(), line.getEndY());
+    }
+  }
+}
@@ -3,22 +3,19 @@ package ija.project.warehouse;
 import ija.project.warehouse.ShelfRectangle;
 import ija.project.warehouse.NodeCircle;
 import ija.project.warehouse.Order;
-import ija.project.warehouse.PathFinder;
+import ija.project.warehouse.SimulationEngine;
 
 import java.util.*;
 import java.lang.Math;
 import java.util.Map.Entry;
-import java.util.concurrent.*;
-import java.io.*;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
-import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.scene.shape.*;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.input.ScrollEvent;
-import javafx.scene.transform.Scale;
 import javafx.scene.paint.Color;
 import javafx.scene.control.*;
 import javafx.scene.text.*;
@@ -28,19 +25,17 @@ import javafx.stage.Stage;
 import javafx.geometry.Point2D;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
-import javafx.util.*;
 
-//http://www.java2s.com/Code/JarDownload/json-simple/json-simple-1.1.jar.zip
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
 
 
 /** Controls the warehouse simulation. Sets the simulation time and speed. Loads
  *  a floor plan of a warehouse, goods and orders. Creates a GUI and updates the
  *  simulation if an interactive interventions like closing an alley, adding an
- *  order or changing the speed/time of the simulation happens.
+ *  order or changing the speed/time of the simulation happens. The simulation
+ *  itself is run by the SimulationEngine, the GUI is only its view. The shapes
+ *  of the warehouse and carts are drawn by the WarehouseRenderer.
  *
  * @author Tomas Beranek (xberan46)
  */
@@ -51,15 +46,15 @@ public class WarehouseSimulation extends Application {
    private Text highLightedNodeID;
    private Hashtable<Integer, NodeCircle> nodes = new Hashtable<>();
    private Hashtable<Integer, ShelfRectangle> shelfs = new Hashtable<>();
-   private Hashtable<Integer, Integer> shelfsInitialQuantity = new Hashtable<>();
    private Hashtable<String, Line> routes = new Hashtable<>();
+   private Hashtable<Cart, CartCircle> carts = new Hashtable<>();
    private boolean debug = false;
    private int warehouseWidth = 0;
    private int warehouseHeight = 0;
-   private List<Order> orders = new ArrayList<>();
    private Group group = new Group();
    private Text timer;
    private Text speed;
+   private Text lag;
    private int cartCapacity = 500;
    private ListView<String> cartList;
    private Rectangle warehouseRect;
@@ -70,63 +65,23 @@ public class WarehouseSimulation extends Application {
    private int bottomGUIWidth = 900;
    private int bottomGUIHeight = 70;
 
-   private Long currentEpochTime = 0L; // in ms
-   private Long updateSpeed = 20L; // in ms
-   private PathFinder pathFinder;
+   private Long updateSpeed = 20L; // simulated ms per 20 ms of real time
+   private long pendingTime = 0; // in ns of simulated time, less than 1 ms
+   private SimulationEngine engine;
+   private WarehouseLoader loader = new WarehouseLoader();
 
+   private TextField inputSeekTime;
    private TextField inputGoodsName;
    private TextField inputGoodsQuantinty;
    private ListView<String> goodsList;
    private ObservableList<String> goodsLitems;
-   private List<Pair<String, Integer>> inputGoodsList = new ArrayList<>();
-   private List<Pair<Long, List<Pair<String, Integer>>>> addedOrdersInfo = new ArrayList<>();
+   private List<Pair<Integer, Integer>> inputGoodsList = new ArrayList<>();
 
    private double currZoom = 1;
    private double zoomX;
    private double zoomY;
-
-
-   /** Loads files into JSON objects.
-    *
-    * @param fileNames The list of filenames:
-    *           0) a floor plan
-    *           1) goods
-    *           2) orders
-    * @return The list of created JSONObjects.
-    */
-   public List<JSONObject> loadJSONData(List<String> fileNames) {
-     JSONParser parser = new JSONParser();
-     JSONObject warehouseData = new JSONObject();
-     JSONObject goodsData;
-     JSONObject ordersData;
-     List<JSONObject> data = new ArrayList<>();
-
-     try {
-       warehouseData = (JSONObject) parser.parse(new FileReader(fileNames.get(0)));
-       data.add(warehouseData);
-     } catch(Exception e) {
-       System.err.printf("ERROR: failed to parse JSON file '%s'", fileNames.get(0));
-       System.exit(1);
-     }
-
-     try {
-       goodsData = (JSONObject) parser.parse(new FileReader(fileNames.get(1)));
-       data.add(goodsData);
-     } catch(Exception e) {
-       System.err.printf("ERROR: failed to parse JSON file '%s'", fileNames.get(1));
-       System.exit(1);
-     }
-
-     try {
-       ordersData = (JSONObject) parser.parse(new FileReader(fileNames.get(2)));
-       data.add(ordersData);
-     } catch(Exception e) {
-       System.err.printf("ERROR: failed to parse JSON file '%s'", fileNames.get(2));
-       System.exit(1);
-     }
-
-     return data;
-   }
+   private WarehouseRenderer renderer;
+   private FramePacer pacer = new FramePacer();
 
 
    /** Loads the warheouse position from a JSONObject that contains a floor plan.
@@ -162,99 +117,22 @@ public class WarehouseSimulation extends Application {
    }
 
 
-   /** Loads all the shelves data from a JSONObject that contains a floor plan.
-    *
-    * @param data JSONObject with a floor plan of a warehouse.
-    * @return A list of loaded shelves informations. Each shelf's information contains --
-    *     left top point, right bottom point, ID and nodeID.
-    */
-   public List<Pair<Pair<Pair<Point2D, Point2D>, Integer>, Integer>> getAllShelfsCords(JSONObject data) {
-     List<Pair<Pair<Pair<Point2D, Point2D>, Integer>, Integer>> shelfCords = new ArrayList<>();
-     JSONArray shelfsJSON = (JSONArray)data.get("shelfs");
-     Iterator it = shelfsJSON.iterator();
-
-     while(it.hasNext()){
-        shelfCords.add(getShelfCords((JSONObject)it.next()));
-     }
-
-     return shelfCords;
-   }
-
-
-   /** Loads the shelf's position from a JSONObject that contains a single shelf.
-    *
-    * @param data JSONObject with a single shelf.
-    * @return Loaded shelf's information -- left top point, right bottom point, ID
-    *    and nodeID.
-    */
-   public Pair<Pair<Pair<Point2D, Point2D>, Integer>, Integer> getShelfCords(JSONObject data) {
-      JSONArray lefttopJSON = (JSONArray)data.get("lefttop");
-      Point2D lefttop = new Point2D(((Long)lefttopJSON.get(0)).doubleValue(), ((Long)lefttopJSON.get(1)).doubleValue());
-
-      JSONArray rightbottomJSON = (JSONArray)data.get("rightbottom");
-      Point2D rightbottom = new Point2D(((Long)rightbottomJSON.get(0)).doubleValue(), ((Long)rightbottomJSON.get(1)).doubleValue());
-
-      Integer shelfID = ((Long)data.get("id")).intValue();
-      Integer nodeID = ((Long)data.get("node")).intValue();
-
-      return new Pair<>(new Pair<>(new Pair<>(lefttop, rightbottom), shelfID), nodeID);
-   }
-
-
    /** Displays all the shelfs in the window.
     *
-    * @param group The group object to which a shelf is added to be visible.
-    * @param shelfsCords A list of shelves informations -- left top point,
-    *    right bottom point and ID.
+    * @param group The group object to which the info of a selected shelf is added.
+    * @param shelves All the shelves of the warehouse.
     */
-   public void displayShelfs(Group group, List<Pair<Pair<Pair<Point2D, Point2D>, Integer>, Integer>> shelfsCords) {
-     Iterator<Pair<Pair<Pair<Point2D, Point2D>, Integer>, Integer>> it = shelfsCords.iterator();
+   public void displayShelfs(Group group, Hashtable<Integer, Shelf> shelves) {
+     Iterator<Shelf> it = shelves.values().iterator();
 
      while(it.hasNext()){
-       Pair<Pair<Pair<Point2D, Point2D>, Integer>, Integer> shelfInfo = it.next();
-       Pair<Point2D, Point2D> shelfCords = shelfInfo.getKey().getKey();
-       ShelfRectangle shelfRec = new ShelfRectangle(
-         (int)Math.round(shelfCords.getKey().getX()),
-         (int)Math.round(shelfCords.getKey().getY()),
-         (int)Math.round(shelfCords.getValue().getX()) - (int)Math.round(shelfCords.getKey().getX()),
-         (int)Math.round(shelfCords.getValue().getY()) - (int)Math.round(shelfCords.getKey().getY()),
-         shelfInfo.getKey().getValue(),
-         shelfInfo.getValue());
+       ShelfRectangle shelfRec = new ShelfRectangle(it.next());
        shelfRec.setFill(Color.BLUE);
        shelfRec.setStrokeWidth(4);
        shelfRec.setStroke(Color.BLACK);
        shelfRec.setStrokeType(StrokeType.INSIDE);
 
-       //Creating the mouse event handler
-       EventHandler<MouseEvent> shelfClickHandler = new EventHandler<MouseEvent>() {
-          @Override
-          public void handle(MouseEvent e) {
-             if (highLightedShelf != null)
-               highLightedShelf.setFill(Color.BLUE);
-
-             // display shelfs with the same goods as the selected one
-             if (debug) {
-                 Set<Entry<Integer, ShelfRectangle>> it = shelfs.entrySet();
-
-                 for (Entry<Integer, ShelfRectangle> shelf : it) {
-                    if (shelfRec.getGoods().equals(shelf.getValue().getGoods()))
-                      shelf.getValue().setFill(Color.ORANGE);
-                    else
-                      shelf.getValue().setFill(Color.BLUE);
-                 }
-             }
-
-             shelfRec.setFill(Color.RED);
-             highLightedShelf = (ShelfRectangle)shelfRec;
-             highLightedShelfID.setText("ID: " + shelfRec.shelfID +
-                                        "\nAssociated node's ID: " + shelfRec.nodeID +
-                                        "\nContent: \n" + shelfRec.getGoods() +
-                                        "\nQuantity: " + shelfRec.getQuantity());
-          }
-       };
-
-       shelfRec.addEventFilter(MouseEvent.MOUSE_CLICKED, shelfClickHandler);
-       group.getChildren().add(shelfRec);
+       this.renderer.addFloorShape(shelfRec);
        shelfs.put(shelfRec.shelfID, shelfRec);
      }
 
@@ -273,89 +151,23 @@ public class WarehouseSimulation extends Application {
    }
 
 
-   /** Loads all the nodes data from a JSONObject that contains a floor plan.
+   /** Prepares all the nodes for the simulation, they are visible only in debug
+    *  mode (drawn on top of the routes by start()).
     *
-    * @param data JSONObject with a floor plan of a warehouse.
-    * @return A list of loaded nodes informations. Each node's information contains --
-    *     position and ID.
+    * @param group The group object to which the info of a selected node is added.
+    * @param pathNodes All the nodes of the floor plan.
     */
-   public List<Pair<Point2D, Integer>> getAllNodesCords(JSONObject data) {
-     List<Pair<Point2D, Integer>> nodesCords = new ArrayList<>();
-     JSONArray nodesJSON = (JSONArray)data.get("nodes");
-     Iterator it = nodesJSON.iterator();
+   public void displayNodes(Group group, Hashtable<Integer, PathNode> pathNodes){
+     Iterator<PathNode> it = pathNodes.values().iterator();
 
      while(it.hasNext()){
-        nodesCords.add(getNodeCords((JSONObject)it.next()));
-     }
-
-     return nodesCords;
-   }
-
-
-   /** Loads the node's position from a JSONObject that contains a single node.
-    *
-    * @param data JSONObject with a single node.
-    * @return Loaded node's information -- position and ID.
-    */
-   public Pair<Point2D, Integer> getNodeCords(JSONObject data) {
-     JSONArray positionJSON = (JSONArray)data.get("position");
-     Point2D position = new Point2D(((Long)positionJSON.get(0)).doubleValue(), ((Long)positionJSON.get(1)).doubleValue());
-
-     return new Pair<>(position, ((Long)data.get("id")).intValue());
-   }
-
-
-   /** Displays all the nodes in the window if the program is in debug mode,
-    *  otherwise only prepare them for the simulation.
-    *
-    * @param group The group object to which a node is added to be visible.
-    * @param nodesCords A list of nodes informations -- position and ID.
-    */
-   public void displayNodes(Group group, List<Pair<Point2D, Integer>> nodesCords){
-     Iterator<Pair<Point2D, Integer>> it = nodesCords.iterator();
-
-     while(it.hasNext()){
-       Pair<Point2D, Integer> nodeInfo = (Pair<Point2D, Integer>)it.next();
-       NodeCircle nodeCircle = new NodeCircle(
-         (float)Math.round(nodeInfo.getKey().getX()),
-         (float)Math.round(nodeInfo.getKey().getY()),
-         0.0f,
-         nodeInfo.getValue());
+       NodeCircle nodeCircle = new NodeCircle(it.next(), 0.0f);
 
        nodeCircle.setFill(Color.RED);
 
        if (debug){
          nodeCircle.setStrokeWidth(0);
          nodeCircle.setRadius(5);
-
-         //Creating the mouse event handler
-         EventHandler<MouseEvent> nodeClickHandler = new EventHandler<MouseEvent>() {
-            @Override
-            public void handle(MouseEvent e) {
-               for(Integer nodeID : nodes.keySet()){
-                 nodes.get(nodeID).setFill(Color.RED);
-                 nodes.get(nodeID).setRadius(5);
-               }
-
-               for(Integer shelfID : shelfs.keySet()){
-                 if (shelfs.get(shelfID).getStroke().equals(Color.GREEN)){
-                   shelfs.get(shelfID).setStroke(Color.BLACK);
-                   shelfs.get(shelfID).setStrokeWidth(4);
-                 } else if (shelfs.get(shelfID).getStroke().equals(Color.DARKGREY)){
-                   shelfs.get(shelfID).setStroke(Color.GREY);
-                   shelfs.get(shelfID).setStrokeWidth(6);
-                 }
-               }
-
-               nodeCircle.setFill(Color.BLUE);
-               nodeCircle.setRadius(7);
-               highLightedNode = (NodeCircle)nodeCircle;
-               highLightedNodeID.setText("ID: " + nodeCircle.ID + "\nNeighbours: " + nodeCircle.getNeighbours());
-            }
-         };
-
-         nodeCircle.addEventFilter(MouseEvent.MOUSE_CLICKED, nodeClickHandler);
-         group.getChildren().add(nodeCircle);
        }
        nodes.put(nodeCircle.ID, nodeCircle);
      }
@@ -377,10 +189,9 @@ public class WarehouseSimulation extends Application {
 
    /** Displays the warehouse background in the window.
     *
-    * @param group The group object to which a warehouse is added to be visible.
     * @param warehouseCords The coordinates of the warehouse background.
     */
-   public void displayWarehouse(Group group, Pair<Point2D, Point2D> warehouseCords) {
+   public void displayWarehouse(Pair<Point2D, Point2D> warehouseCords) {
      this.warehouseRect = new Rectangle(
        (int)Math.round(warehouseCords.getKey().getX()),
        (int)Math.round(warehouseCords.getKey().getY()),
@@ -390,16 +201,15 @@ public class WarehouseSimulation extends Application {
      warehouseRect.setStrokeWidth(4);
      warehouseRect.setStroke(Color.BLACK);
 
-     group.getChildren().add(warehouseRect);
+     this.renderer.addFloorShape(warehouseRect);
    }
 
 
    /** Displays the dispensing point in the window.
     *
-    * @param group The group object to which a dispensing point is added to be visible.
     * @param dispensingPointCords The coordinates of the dispensing point.
     */
-   public void displayDispensingPoint(Group group, Pair<Point2D, Point2D> dispensingPointCords) {
+   public void displayDispensingPoint(Pair<Point2D, Point2D> dispensingPointCords) {
      this.dispensingPointRec = new Rectangle(
        (int)Math.round(dispensingPointCords.getKey().getX()),
        (int)Math.round(dispensingPointCords.getKey().getY()),
@@ -409,37 +219,15 @@ public class WarehouseSimulation extends Application {
      dispensingPointRec.setStrokeWidth(4);
      dispensingPointRec.setStroke(Color.BLACK);
 
-     group.getChildren().add(dispensingPointRec);
-   }
-
-
-   /** Loads all the routes between nodes from a JSONObject that contains a floor
-    *  plan.
-    *
-    * @param data JSONObject with a floor plan of a warehouse.
-    * @return A list of loaded routes specified as -- node1ID and node2ID.
-    */
-   public List<Pair<Integer, Integer>> getAllRoutes(JSONObject data) {
-     List<Pair<Integer, Integer>> routes = new ArrayList<>();
-     JSONArray routesJSON = (JSONArray)data.get("routes");
-     Iterator it = routesJSON.iterator();
-
-     while(it.hasNext()){
-       JSONArray route = (JSONArray)it.next();
-        routes.add(new Pair<Integer, Integer>(((Long)route.get(0)).intValue(), ((Long)route.get(1)).intValue()));
-     }
-
-     return routes;
+     this.renderer.addFloorShape(dispensingPointRec);
    }
 
 
-   /** Displays all the routes in the window if the program is in debug mode,
-    *  otherwise only prepare them for the simulation.
+   /** Displays all the routes in the window if the program is in debug mode.
     *
-    * @param group The group object to which a route is added to be visible.
     * @param routes A list of routes spcified as -- node1ID and node2ID.
     */
-   public void displayRoutes(Group group, List<Pair<Integer, Integer>> routes) {
+   public void displayRoutes(List<Pair<Integer, Integer>> routes) {
      Iterator<Pair<Integer, Integer>> it = routes.iterator();
 
      while (it.hasNext()) {
@@ -457,237 +245,248 @@ public class WarehouseSimulation extends Application {
          line.setStrokeWidth(3);
          line.setStroke(Color.RED);
 
-         EventHandler<MouseEvent> routeClickHandler = new EventHandler<MouseEvent>() {
-            @Override
-            public void handle(MouseEvent e) {
-              if (line.getStroke().equals(Color.RED)){
-                line.setStroke(Color.BLACK);
-              } else if (line.getStroke().equals(Color.BLACK)){
-                line.setStroke(Color.RED);
-              } else if (line.getStroke().equals(Color.GREY)){
-                line.setStroke(Color.DARKRED);
-              } else if (line.getStroke().equals(Color.DARKRED)){
-                line.setStroke(Color.GREY);
-              }
-            }
-         };
-
-         line.addEventFilter(MouseEvent.MOUSE_CLICKED, routeClickHandler);
-
          this.routes.put("" + start.ID + " " + end.ID, line);
          this.routes.put("" + end.ID + " " + start.ID, line);
-         group.getChildren().add(line);
+         this.renderer.addFloorShape(line);
        }
-
-       // save each other to neighbours
-       start.addNeighbour(end.ID);
-       end.addNeighbour(start.ID);
      }
    }
 
 
-   /** Loads all the goods from a JSONObject that contains a goods info.
+   /** Selects a clicked shelf and shows its info, in debug mode highlights
+    *  also the shelves with the same goods.
     *
-    * @param data JSONObject with a goods info.
-    * @return A list of loaded goods informations. Each item's information contains --
-    *     name, shelfID and quantity.
+    * @param shelfRec The clicked shelf.
     */
-   public List<Pair<Integer, Pair<String, Integer>>> getAllGoods(JSONObject data) {
-     List<Pair<Integer, Pair<String, Integer>>> goods = new ArrayList<>();
-     JSONArray goodsJSON = (JSONArray) data.get("goodsList");
-     Iterator it = goodsJSON.iterator();
-
-     while(it.hasNext()) {
-       JSONObject singleGoods = (JSONObject)it.next();
-       Integer shelfID = ((Long)singleGoods.get("shelf")).intValue();
-       String goodsName = (String)singleGoods.get("goods");
-       Integer goodsQuantity = ((Long)singleGoods.get("quantity")).intValue();
-       goods.add(new Pair<>(shelfID, new Pair<>(goodsName, goodsQuantity)));
+   private void selectShelf(ShelfRectangle shelfRec) {
+     if (highLightedShelf != null)
+       highLightedShelf.setFill(Color.BLUE);
+
+     // display shelfs with the same goods as the selected one
+     if (debug) {
+         Set<Entry<Integer, ShelfRectangle>> it = shelfs.entrySet();
+
+         for (Entry<Integer, ShelfRectangle> shelf : it) {
+            if (shelfRec.getGoods() == shelf.getValue().getGoods())
+              shelf.getValue().setFill(Color.ORANGE);
+            else
+              shelf.getValue().setFill(Color.BLUE);
+         }
      }
 
-     return goods;
+     shelfRec.setFill(Color.RED);
+     highLightedShelf = shelfRec;
+     highLightedShelfID.setText("ID: " + shelfRec.shelfID +
+                                "\nAssociated node's ID: " + shelfRec.nodeID +
+                                "\nContent: \n" + loader.getGoodsDictionary().getName(shelfRec.getGoods()) +
+                                "\nQuantity: " + shelfRec.getQuantity());
    }
 
 
-   /** Loads all the goods into shelves.
+   /** Selects a clicked node (debug mode only) and shows its neighbours, clears
+    *  a highlighted path of a cart.
     *
-    * @param goods A list of goods informations. Each item's information contains --
-    *     name, shelfID and quantity.
+    * @param nodeCircle The clicked node.
     */
-   public void loadGoodsToShelfs(List<Pair<Integer, Pair<String, Integer>>> goods) {
-     Iterator<Pair<Integer, Pair<String, Integer>>> it = goods.iterator();
+   private void selectNode(NodeCircle nodeCircle) {
+     for(Integer nodeID : nodes.keySet()){
+       nodes.get(nodeID).setFill(Color.RED);
+       nodes.get(nodeID).setRadius(5);
+     }
 
-     while (it.hasNext()) {
-       Pair<Integer, Pair<String, Integer>> singleGoods = (Pair<Integer, Pair<String, Integer>>)it.next();
-       ShelfRectangle shelf = this.shelfs.get(singleGoods.getKey());
+     for(Integer shelfID : shelfs.keySet()){
+       if (shelfs.get(shelfID).getStroke().equals(Color.GREEN)){
+         shelfs.get(shelfID).setStroke(Color.BLACK);
+         shelfs.get(shelfID).setStrokeWidth(4);
+       }
+     }
 
-       // add all goods to existing shelfs
-       shelf.addGoods(singleGoods.getValue().getKey(), singleGoods.getValue().getValue());
-       //make copy of initial state
-       shelfsInitialQuantity.put(shelf.shelfID, shelf.getQuantity());
+     nodeCircle.setFill(Color.BLUE);
+     nodeCircle.setRadius(7);
+     highLightedNode = nodeCircle;
+     highLightedNodeID.setText("ID: " + nodeCircle.ID + "\nNeighbours: " + engine.getGraph().getNeighbours(nodeCircle.ID));
+   }
+
+
+   /** Marks a clicked route (debug mode only) to be closed or opened by
+    *  the "Apply route restrictions" button, or cancels the mark.
+    *
+    * @param line The clicked route.
+    */
+   private void toggleRoute(Line line) {
+     if (line.getStroke().equals(Color.RED)){
+       line.setStroke(Color.BLACK);
+     } else if (line.getStroke().equals(Color.BLACK)){
+       line.setStroke(Color.RED);
+     } else if (line.getStroke().equals(Color.GREY)){
+       line.setStroke(Color.DARKRED);
+     } else if (line.getStroke().equals(Color.DARKRED)){
+       line.setStroke(Color.GREY);
      }
    }
 
 
-   /** Loads all the orders data from a JSONObject that contains an orders info.
+   /** Hit-tests a click into the warehouse and passes it to the clicked cart,
+    *  node, route or shelf -- the topmost one as they are drawn.
     *
-    * @param data JSONObject with an orders info.
-    * @return A list of loaded orders.
+    * @param event The mouse click on the renderer's canvas.
     */
-   public List<Order> getAllOrders(JSONObject data) {
-     List<Order> orders = new ArrayList<>();
-     JSONArray ordersJSON = (JSONArray) data.get("ordersList");
-     Iterator it = ordersJSON.iterator();
-
-     while(it.hasNext()) {
-       JSONObject singleOrder = (JSONObject)it.next();
-       Long startEpochTime = (Long)singleOrder.get("startEpochTime");
-       List<Pair<String, Integer>> goods = new ArrayList<>();
-
-       JSONArray goodsJSON = (JSONArray) singleOrder.get("goods");
-       Iterator goodsIt = goodsJSON.iterator();
-
-       while(goodsIt.hasNext()) {
-         JSONObject singleGoods = (JSONObject)goodsIt.next();
-         String goodsName = (String)singleGoods.get("name");
-         Integer goodsQuantity = ((Long)singleGoods.get("quantity")).intValue();
-         goods.add(new Pair<>(goodsName, goodsQuantity));
+   private void handleClick(MouseEvent event) {
+     Point2D point = this.renderer.toFloor(event.getX(), event.getY());
+
+     for (CartCircle cart : this.carts.values()) {
+       if (this.renderer.contains(cart, point)) {
+         cart.highlightPath();
+         return;
+       }
+     }
+
+     if (this.debug) {
+       for (NodeCircle node : this.nodes.values()) {
+         if (this.renderer.contains(node, point)) {
+           selectNode(node);
+           return;
+         }
        }
 
-       orders.add(new Order(startEpochTime, goods));
+       // every route is stored under both directions, but only the first hit is toggled
+       for (Line line : this.routes.values()) {
+         if (this.renderer.contains(line, point)) {
+           toggleRoute(line);
+           return;
+         }
+       }
      }
 
-     return orders;
+     for (ShelfRectangle shelf : this.shelfs.values()) {
+       if (this.renderer.contains(shelf, point)) {
+         selectShelf(shelf);
+         return;
+       }
+     }
    }
 
 
-   /** Controls the simulation -- increments time and redraws the canvas.
+   /** Controls the simulation -- increments time by the real time elapsed since
+    *  the last frame times the speed and redraws the canvas.
+    *
+    * @param elapsed The real time elapsed since the last frame in ns.
     */
-   public void drawCurrentState() {
-     // update cart cords
-     //cycle through orders
-     this.timer.setText(String.format("%02d:%02d:%02d", (this.currentEpochTime/3600000)%24, (this.currentEpochTime/60000)%60, (this.currentEpochTime/1000)%60));
+   public void drawCurrentState(long elapsed) {
+     Long currentEpochTime = this.engine.getCurrentEpochTime();
+     this.timer.setText(String.format("%02d:%02d:%02d", (currentEpochTime/3600000)%24, (currentEpochTime/60000)%60, (currentEpochTime/1000)%60));
 
      if (highLightedNodeID != null && highLightedNode != null){
-       this.highLightedNodeID.setText("ID: " + this.highLightedNode.ID + "\nNeighbours: " + this.highLightedNode.getNeighbours());
+       this.highLightedNodeID.setText("ID: " + this.highLightedNode.ID + "\nNeighbours: " + this.engine.getGraph().getNeighbours(this.highLightedNode.ID));
      }
      if (highLightedShelfID != null && highLightedShelf != null) {
        highLightedShelfID.setText("ID: " + highLightedShelf.shelfID +
                                   "\nAssociated node's ID: " + highLightedShelf.nodeID +
-                                  "\nContent: \n" + highLightedShelf.getGoods() +
+                                  "\nContent: \n" + this.loader.getGoodsDictionary().getName(highLightedShelf.getGoods()) +
                                   "\nQuantity: " + highLightedShelf.getQuantity());
      }
 
-     for (int i = 0; i < orders.size(); i++) {
-       if (orders.get(i).isActive(this.currentEpochTime)){
-         if (!orders.get(i).hasCart()){
-           orders.get(i).addCart(this.group, pathFinder.findPath(orders.get(i).goods, shelfs, 0, 0), nodes, shelfs, this.cartList, this.cartCapacity);
-         }
+     //process the orders and increment simulation time, the rest below 1 ms is kept for the next frame
+     this.pendingTime += elapsed * this.updateSpeed / 20;
+     this.engine.step(this.pendingTime / 1000000);
+     this.pendingTime %= 1000000;
 
-         //draw the cart
-         if (!orders.get(i).drawCart(this.currentEpochTime, nodes)){
-           //we need to recalculate the path
-           List<Pair<Integer, Pair<String, Integer>>> remainingPath = orders.get(i).cart.getRemainingPath();
-           orders.get(i).updateCartPath(pathFinder.refindPath(remainingPath, orders.get(i).goods, shelfs, orders.get(i).cart.currCapacity), nodes);
-         }
+     drawCarts();
+   }
+
+
+   /** Redraws all the carts of the fleet in a single pass, creates
+    *  a visualization for the newly added ones.
+    */
+   public void drawCarts() {
+     List<Cart> fleet = this.engine.getCarts();
+     this.engine.updateCartPositions();
+
+     for (int i = 0; i < fleet.size(); i++) {
+       Cart cart = fleet.get(i);
+
+       CartCircle cartCircle = this.carts.get(cart);
+       if (cartCircle == null){
+         cartCircle = new CartCircle(cart, this.nodes, this.shelfs, this.engine.getGoodsIndex(), this.loader.getGoodsDictionary(), this.cartList);
+         this.carts.put(cart, cartCircle);
        }
+
+       cartCircle.update();
      }
 
-     //increment simulation time
-     this.currentEpochTime += this.updateSpeed;
+     this.renderer.render(this.carts.values(), this.shelfs);
+   }
+
+
+   /** Removes the visualizations of all the carts together with the highlighted
+    *  path and shelves, the carts are visualized again by drawCarts().
+    */
+   public void clearCarts() {
+     this.carts.clear();
+
+     for(Integer nodeID : nodes.keySet()){
+       nodes.get(nodeID).setFill(Color.RED);
+       nodes.get(nodeID).setRadius(5);
+     }
+
+     for (ShelfRectangle shelf : this.shelfs.values()) {
+       shelf.setStrokeWidth(4);
+       shelf.setStroke(Color.BLACK);
+     }
+
+     this.cartList.setItems(FXCollections.observableArrayList ("No cart selected"));
    }
 
 
    /** Closes the routes with a black color.
+    *
+    * @return A list of closed routes specified as -- node1ID and node2ID.
     */
-   public void closeBlackRoutes(){
+   public List<Pair<Integer, Integer>> closeBlackRoutes(){
+     List<Pair<Integer, Integer>> closedRoutes = new ArrayList<>();
+
      for(String routeKey : this.routes.keySet()) {
        if (this.routes.get(routeKey).getStroke().equals(Color.BLACK)){
          int startNodeID = Integer.parseInt(routeKey.split(" ")[0]);
          int endNodeID = Integer.parseInt(routeKey.split(" ")[1]);
 
-         this.nodes.get(startNodeID).removeNeighbour(endNodeID);
-         this.nodes.get(endNodeID).removeNeighbour(startNodeID);
+         closedRoutes.add(new Pair<>(startNodeID, endNodeID));
 
          this.routes.get(routeKey).setStroke(Color.GREY);
        }
      }
+
+     return closedRoutes;
    }
 
 
    /** Opens the routes with a dark red color.
+    *
+    * @return A list of opened routes specified as -- node1ID and node2ID.
     */
-   public void openDarkredRoutes(){
+   public List<Pair<Integer, Integer>> openDarkredRoutes(){
+     List<Pair<Integer, Integer>> openedRoutes = new ArrayList<>();
+
      for(String routeKey : this.routes.keySet()) {
        if (this.routes.get(routeKey).getStroke().equals(Color.DARKRED)){
          int startNodeID = Integer.parseInt(routeKey.split(" ")[0]);
          int endNodeID = Integer.parseInt(routeKey.split(" ")[1]);
 
-         this.nodes.get(startNodeID).addNeighbour(endNodeID);
-         this.nodes.get(endNodeID).addNeighbour(startNodeID);
+         openedRoutes.add(new Pair<>(startNodeID, endNodeID));
 
          this.routes.get(routeKey).setStroke(Color.RED);
        }
      }
+
+     return openedRoutes;
    }
 
 
-   /** Zooms the scene (shelves, nodes, routes, warehouse and dispensing point)
-    *  according to current zoom factor.
+   /** Zooms the scene (shelves, nodes, routes, warehouse, dispensing point and
+    *  carts) according to current zoom factor.
     */
    private void zoomScene(){
-     //create scale
-     Scale scale = new Scale();
-     scale.setX(this.currZoom);
-     scale.setY(this.currZoom);
-     scale.setPivotX(this.zoomX);
-     scale.setPivotY(this.zoomY);
-
-
-
-     //carts
-     for (int i = 0; i < this.orders.size(); i++) {
-       this.orders.get(i).cart.getTransforms().clear();
-       this.orders.get(i).cart.getTransforms().add(scale);
-       this.orders.get(i).cart.toBack();
-     }
-
-     //nodes
-     Set<Entry<Integer, NodeCircle>> itNode = this.nodes.entrySet();
-
-     for (Entry<Integer, NodeCircle> node : itNode) {
-       node.getValue().getTransforms().clear();
-       node.getValue().getTransforms().add(scale);
-       node.getValue().toBack();
-     }
-
-     //routes
-     Set<Entry<String, Line>> itRoute = this.routes.entrySet();
-
-     for (Entry<String, Line> route : itRoute) {
-       route.getValue().getTransforms().clear();
-       route.getValue().getTransforms().add(scale);
-       route.getValue().toBack();
-     }
-
-     //shelves
-     Set<Entry<Integer, ShelfRectangle>> itShelf = this.shelfs.entrySet();
-
-     for (Entry<Integer, ShelfRectangle> shelf : itShelf) {
-       shelf.getValue().getTransforms().clear();
-       shelf.getValue().getTransforms().add(scale);
-       shelf.getValue().toBack();
-     }
-
-     //dispensing point
-     this.dispensingPointRec.getTransforms().clear();
-     this.dispensingPointRec.getTransforms().add(scale);
-     this.dispensingPointRec.toBack();
-
-     //warehouse background
-     this.warehouseRect.getTransforms().clear();
-     this.warehouseRect.getTransforms().add(scale);
-     this.warehouseRect.toBack();
+     this.renderer.setZoom(this.currZoom, this.zoomX, this.zoomY);
    }
 
 
@@ -707,16 +506,25 @@ public class WarehouseSimulation extends Application {
       if (args.size() > 3 && args.get(3).equals("--debug"))
         this.debug = true;
 
-      List<JSONObject> data = this.loadJSONData(args);
+      List<JSONObject> data = this.loader.loadJSONData(args.subList(0, 2));
 
       // loading data from JSON files
       Pair<Point2D, Point2D> warehouseCords = getWarehouseCords(data.get(0));
       Pair<Point2D, Point2D> dispensingPointCords = getDispensingPointCords(data.get(0));
-      List<Pair<Pair<Pair<Point2D, Point2D>, Integer>, Integer>> shelfsCords = getAllShelfsCords(data.get(0));
-      List<Pair<Point2D, Integer>> nodesCords = getAllNodesCords(data.get(0));
-      List<Pair<Integer, Integer>> routes = getAllRoutes(data.get(0));
-      List<Pair<Integer, Pair<String, Integer>>> goods = getAllGoods(data.get(1));
-      this.orders = getAllOrders(data.get(2));
+      Hashtable<Integer, Shelf> shelves = this.loader.getAllShelves(data.get(0));
+      Hashtable<Integer, PathNode> pathNodes = this.loader.getAllNodes(data.get(0));
+      List<Pair<Integer, Integer>> routes = this.loader.getAllRoutes(data.get(0));
+      List<Pair<Integer, Pair<Integer, Integer>>> goods = this.loader.getAllGoods(data.get(1));
+      OrderStream orders = this.loader.getOrderStream(args.get(2));
+      String routing = this.loader.getRouting(data.get(0));
+      long improveTime = this.loader.getImproveTime(data.get(0));
+      long waveWindow = this.loader.getWaveWindow(data.get(0));
+      int fleetSize = this.loader.getFleetSize(data.get(0));
+      String traffic = this.loader.getTraffic(data.get(0));
+
+      // load goods into shelfs and connect the nodes
+      GoodsIndex goodsIndex = this.loader.loadGoodsToShelfs(shelves, goods);
+      FloorGraph graph = this.loader.connectRoutes(pathNodes, routes);
 
       this.warehouseWidth = (int)Math.round(warehouseCords.getValue().getX()) +
                             (int)Math.round(warehouseCords.getKey().getX());
@@ -729,32 +537,31 @@ public class WarehouseSimulation extends Application {
       if (bottomGUIWidth > this.warehouseWidth)
         this.warehouseWidth = bottomGUIWidth;
 
+      // the warehouse and carts are drawn into canvases below the rest of the GUI
+      this.renderer = new WarehouseRenderer(this.warehouseWidth, this.warehouseHeight);
+      this.renderer.getNode().setOnMouseClicked(event -> handleClick(event));
+      group.getChildren().add(this.renderer.getNode());
+
       // warehouse background
-      displayWarehouse(group, warehouseCords);
+      displayWarehouse(warehouseCords);
 
       // dispensing point
-      displayDispensingPoint(group, dispensingPointCords);
+      displayDispensingPoint(dispensingPointCords);
 
       // add shelfs
-      displayShelfs(group, shelfsCords);
-
-      // load goods into shelfs
-      loadGoodsToShelfs(goods);
+      displayShelfs(group, shelves);
 
       // add nodes
-      displayNodes(group, nodesCords);
+      displayNodes(group, pathNodes);
 
       // add routes
-      displayRoutes(group, routes);
+      displayRoutes(routes);
 
-      // save initial shelves quantity
-      for(Integer shelfID : this.shelfs.keySet()) {
-        this.shelfsInitialQuantity.put(shelfID, this.shelfs.get(shelfID).getQuantity());
-      }
-
-      // move every node to front
-      for(Integer nodeID : this.nodes.keySet()) {
-        nodes.get(nodeID).toFront();
+      // draw every node on top of the routes
+      if (this.debug) {
+        for(Integer nodeID : this.nodes.keySet()) {
+          this.renderer.addFloorShape(nodes.get(nodeID));
+        }
       }
 
       //display bottom GUI
@@ -822,6 +629,14 @@ public class WarehouseSimulation extends Application {
       this.speed.setTextAlignment(TextAlignment.CENTER);
       group.getChildren().add(this.speed);
 
+      // how much later than the pulses the frames are drawn, shown only if noticeable
+      this.lag = new Text("");
+      this.lag.setX(258);
+      this.lag.setY(this.warehouseHeight + 62);
+      this.lag.setFont(Font.font ("Sans-serif", 11));
+      this.lag.setFill(Color.DARKRED);
+      group.getChildren().add(this.lag);
+
       // separate speed controls from the rest of the GUI
       Line speedDelimiter = new Line(395, this.warehouseHeight, 395, this.warehouseHeight + bottomGUIHeight);
       speedDelimiter.setStrokeWidth(2);
@@ -842,9 +657,9 @@ public class WarehouseSimulation extends Application {
       closeRouteButton.setLayoutX(this.warehouseWidth - 15 - 200);
       closeRouteButton.setLayoutY(this.warehouseHeight + 15);
       closeRouteButton.setOnAction(actionEvent -> {
-          closeBlackRoutes();
-          openDarkredRoutes();
-          pathFinder.setMatrix(nodes);
+          List<Pair<Integer, Integer>> closedRoutes = closeBlackRoutes();
+          List<Pair<Integer, Integer>> openedRoutes = openDarkredRoutes();
+          engine.updateRoutes(closedRoutes, openedRoutes);
       });
       group.getChildren().add(closeRouteButton);
 
@@ -939,7 +754,7 @@ public class WarehouseSimulation extends Application {
           this.goodsLitems.add(this.inputGoodsQuantinty.getText() + "x\t " + this.inputGoodsName.getText());
           this.goodsList.setItems(this.goodsLitems);
 
-          this.inputGoodsList.add(new Pair<>(this.inputGoodsName.getText(), quantity));
+          this.inputGoodsList.add(new Pair<>(this.loader.getGoodsDictionary().getSKU(this.inputGoodsName.getText()), quantity));
           this.inputGoodsName.setText("");
           this.inputGoodsQuantinty.setText("");
       });
@@ -954,7 +769,7 @@ public class WarehouseSimulation extends Application {
       addActiveGoodsButton.setLayoutY(128);
       addActiveGoodsButton.setOnAction(actionEvent -> {
         if (this.highLightedShelf != null)
-          this.inputGoodsName.setText(this.highLightedShelf.getGoods());
+          this.inputGoodsName.setText(this.loader.getGoodsDictionary().getName(this.highLightedShelf.getGoods()));
       });
       group.getChildren().add(addActiveGoodsButton);
 
@@ -976,18 +791,17 @@ public class WarehouseSimulation extends Application {
       confirmOrderButton.setLayoutX(this.warehouseWidth + 25);
       confirmOrderButton.setLayoutY(645 + 105 + 15);
       confirmOrderButton.setOnAction(actionEvent -> {
-        List<Pair<String, Integer>> goodsTmp  = new ArrayList<>();
+        List<Pair<Integer, Integer>> goodsTmp  = new ArrayList<>();
 
         for (int i = 0; i < this.inputGoodsList.size(); i++){
-          Pair<String, Integer> tmp = new Pair<>(this.inputGoodsList.get(i).getKey(), this.inputGoodsList.get(i).getValue());
+          Pair<Integer, Integer> tmp = new Pair<>(this.inputGoodsList.get(i).getKey(), this.inputGoodsList.get(i).getValue());
           goodsTmp.add(tmp);
         }
 
-        Order newOrder = new Order(this.currentEpochTime, goodsTmp);
-        this.addedOrdersInfo.add(new Pair<>(this.currentEpochTime, this.inputGoodsList));
+        Order newOrder = new Order(this.engine.getCurrentEpochTime(), goodsTmp);
 
         this.inputGoodsList = new ArrayList<>();
-        this.orders.add(newOrder);
+        this.engine.addOrder(newOrder);
         this.goodsLitems.clear();
         this.inputGoodsList.clear();
         this.goodsList.setItems(goodsLitems);
@@ -1020,26 +834,13 @@ public class WarehouseSimulation extends Application {
       setTimeButton.setLayoutX(395 + 15);
       setTimeButton.setLayoutY(this.warehouseHeight + 15);
       setTimeButton.setOnAction(actionEvent -> {
-        currentEpochTime = 0L;
-
-        for (int i = 0; i < orders.size(); i++) {
-          if (orders.get(i).cart != null){
-            orders.get(i).cart.setRadius(0);
-            group.getChildren().remove(orders.get(i).cart);
-          }
-        }
+        clearCarts();
 
         if (this.highLightedNodeID != null){
           this.highLightedNodeID.setText("ID: -\nNeighbours: -");
         }
         highLightedNode = null;
 
-
-        for(Integer nodeID : nodes.keySet()){
-          nodes.get(nodeID).setFill(Color.RED);
-          nodes.get(nodeID).setRadius(5);
-        }
-
         if (this.highLightedShelfID != null)
           highLightedShelfID.setText("ID: -\nAssociated node's ID: -\nContent:\n-\nQuantity: -");
         if (this.highLightedShelf != null)
@@ -1047,38 +848,62 @@ public class WarehouseSimulation extends Application {
 
         highLightedShelf = null;
 
-        this.cartList.setItems(FXCollections.observableArrayList ("No cart selected"));
-
-        this.orders = new ArrayList<>();
-        this.orders = getAllOrders(data.get(2));
-
-        for (int i = 0; i < this.addedOrdersInfo.size(); i++) {
-          this.orders.add(new Order(this.addedOrdersInfo.get(i).getKey(), this.addedOrdersInfo.get(i).getValue()));
-        }
-
-
         //set shelves to initial state
         Set<Entry<Integer, ShelfRectangle>> itShelf = this.shelfs.entrySet();
 
         for (Entry<Integer, ShelfRectangle> shelf : itShelf) {
-          shelf.getValue().setQuantity(this.shelfsInitialQuantity.get(shelf.getValue().shelfID));
           shelf.getValue().setFill(Color.BLUE);
           shelf.getValue().setStrokeWidth(4);
           shelf.getValue().setStroke(Color.BLACK);
         }
 
-        //reset pathFinder
-        this.pathFinder = new PathFinder(this.nodes, this.shelfs, this.cartCapacity);
+        //reset the simulation -- time, orders, shelves and pathFinder, the stream of orders is rewound
+        this.engine.reset();
+        this.pacer.restart();
+      });
+      group.getChildren().add(setTimeButton);
 
-        //reset all carts
-        for (int i = 0; i < orders.size(); i++) {
-          orders.get(i).addCart(this.group, pathFinder.findPath(orders.get(i).goods, shelfs, 0, 0), nodes, shelfs, this.cartList, this.cartCapacity);
+      // seek time input
+      this.inputSeekTime = new TextField();
+      this.inputSeekTime.setLayoutX(540 + 15);
+      this.inputSeekTime.setLayoutY(this.warehouseHeight + 20);
+      this.inputSeekTime.setPrefWidth(90);
+      this.inputSeekTime.setPrefHeight(30);
+      this.inputSeekTime.setPromptText("hh:mm:ss");
+      this.inputSeekTime.setFont(Font.font ("Sans-serif", 13));
+      group.getChildren().add(this.inputSeekTime);
+
+      // seek button -- moves the simulation to the given time
+      Button seekButton = new Button("Go to");
+      seekButton.setPrefHeight(40);
+      seekButton.setPrefWidth(70);
+      seekButton.setFont(Font.font ("Sans-serif", 13));
+      seekButton.setLayoutX(540 + 15 + 90 + 10);
+      seekButton.setLayoutY(this.warehouseHeight + 15);
+      seekButton.setOnAction(actionEvent -> {
+        //check for invalid input
+        long seekTime = 0;
+
+        try {
+          for (String part : this.inputSeekTime.getText().trim().split(":"))
+            seekTime = seekTime * 60 + Integer.parseUnsignedInt(part);
+        } catch(Exception e) {
+          this.inputSeekTime.setText("");
+          return;
         }
 
-        //zoom newly created carts
-        this.zoomScene();
+        clearCarts();
+        this.engine.seek(seekTime * 1000);
+        this.pacer.restart();
+        this.inputSeekTime.setText("");
       });
-      group.getChildren().add(setTimeButton);
+      group.getChildren().add(seekButton);
+
+      // separate seek from the rest of the GUI
+      Line seekDelimiter = new Line(540 + 15 + 90 + 10 + 70 + 15, this.warehouseHeight, 540 + 15 + 90 + 10 + 70 + 15, this.warehouseHeight + bottomGUIHeight);
+      seekDelimiter.setStrokeWidth(2);
+      seekDelimiter.setStroke(Color.LIGHTGREY);
+      group.getChildren().add(seekDelimiter);
 
       //Creating a Scene by passing the group object, height and width
       Scene scene = new Scene(group ,this.warehouseWidth + sideGUIWidth, this.warehouseHeight + bottomGUIHeight);
@@ -1116,32 +941,39 @@ public class WarehouseSimulation extends Application {
       //Displaying the contents of the stage
       primaryStage.show();
 
-      //initialize PathFinder -- creates a matrix of distances
-      pathFinder = new PathFinder(this.nodes, this.shelfs, this.cartCapacity);
+      //initialize the simulation -- creates a matrix of distances or a sparse routing
+      this.engine = new SimulationEngine(graph, shelves, goodsIndex, orders, this.cartCapacity, routing);
+      this.engine.setImproveTime(improveTime);
+      this.engine.setWaveWindow(waveWindow);
+      this.engine.setFleetSize(fleetSize);
+      this.engine.setTraffic(traffic);
 
-      //run the simulation
-      //ugly,ugly nesting
-      ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+      //the paths are planned in the background, so a burst of orders or a closed route doesn't block the frames
+      this.engine.setPlanningThreads(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
 
-      Runnable updater = new Runnable() {
+      //run the simulation, a frame is drawn on a pulse of JavaFX unless the pacer drops it
+      AnimationTimer frames = new AnimationTimer() {
         @Override
-        public void run() {
-          Runnable drawState = new Runnable() {
-            @Override
-            public void run() {
-              try {
-                 drawCurrentState();
-              } catch (Exception e) {
-                 e.printStackTrace();
-                 e.getMessage();
-              }
-            }
-          };
-          Platform.runLater(drawState);
+        public void handle(long now) {
+          long elapsed = pacer.pulse(now);
+          if (elapsed < 0)
+            return;
+
+          long start = System.nanoTime();
+          try {
+             drawCurrentState(elapsed);
+          } catch (Exception e) {
+             e.printStackTrace();
+             e.getMessage();
+          }
+          pacer.frameDone(start, System.nanoTime());
+
+          long behind = pacer.getLag();
+          lag.setText(behind > 0 ? String.format("behind %d ms", behind) : "");
         }
       };
 
-      scheduler.scheduleAtFixedRate(updater, 0, this.updateSpeed, TimeUnit.MILLISECONDS);
+      frames.start();
    }
 
 
@@ -0,0 +1,201 @@
+package ija.project.warehouse;
+
+import java.util.*;
+
+import org.json.simple.JSONObject;
+
+
+/** Checks the event-driven movement of the carts. A single cart processes
+ *  its events in time order, at the stops of its path only, and brings
+ *  everything it has picked up back to the dispensing point. A whole
+ *  simulation jumping from event to event ends the same as the one advanced
+ *  by fixed frames of the GUI.
+ *
+ *  Run by 'ant test' from the project directory.
+ *
+ * @author Tomas Beranek (xberan46)
+ */
+public class CartEventTest {
+  private static final long FRAME = 20; // in ms, the former fixed tick
+
+
+  public static void main(String[] args) {
+    Random random = new Random(2);
+    for (int round = 0; round < 50; round++)
+      checkCart(random, "round " + round);
+
+    for (int round = 0; round < 5; round++)
+      checkEngine(random, "engine round " + round);
+
+    System.out.println("CartEventTest: OK");
+  }
+
+
+  /** Moves a cart along a planned path event by event.
+   *
+   * @param random The source of the random order.
+   * @param name The name of the round in the failures.
+   */
+  private static void checkCart(Random random, String name) {
+    Warehouse warehouse = new Warehouse();
+    int capacity = 50 + random.nextInt(300);
+    PathFinder finder = new PathFinder(warehouse.graph, warehouse.shelves, warehouse.goodsIndex, capacity, RoutingTable.MATRIX);
+    RoutePlan path = finder.findPath(randomGoods(random, warehouse.skus), warehouse.shelves, 0, 0);
+
+    int stops = 0;
+    for (int i = 1; i + 1 < path.size(); i++) {
+      if (path.getSKU(i) != GoodsDictionary.NONE)
+        stops++;
+    }
+
+    Cart cart = new Cart(warehouse.graph.getX(0), warehouse.graph.getY(0), warehouse.goodsIndex, capacity);
+    cart.addPath(path, warehouse.graph, 0L);
+    check(cart.isVisible(), name + ": cart with a path is hidden");
+
+    long lastTime = 0;
+    int events = 0;
+    String result = "Success";
+    while (result.equals("Success")) {
+      long time = cart.getNextEventTime();
+      check(time >= lastTime, name + ": event at " + time + " before " + lastTime);
+
+      // the cart is drawn between the events, which mustn't change them
+      for (long t = lastTime; t < time; t += FRAME)
+        cart.moveTo(t, warehouse.graph);
+
+      result = cart.processEvent(time, warehouse.graph);
+      events++;
+      lastTime = time;
+    }
+
+    check(result.equals("Finished"), name + ": cart ended with " + result);
+    check(events == stops + 1, name + ": " + events + " events for " + stops + " stops");
+    check(cart.getX() == warehouse.graph.getX(0) && cart.getY() == warehouse.graph.getY(0), name + ": cart didn't return");
+    check(!cart.isVisible(), name + ": finished cart is visible");
+
+    // the last trip is brought back to the dispensing point in the cart
+    int carried = 0;
+    for (Pair<Integer, Integer> goods : cart.getPickedUpGoods())
+      carried += goods.getValue();
+    check(cart.currCapacity == carried, name + ": cart carries " + carried + " but counts " + cart.currCapacity);
+    int dispensed = 0;
+    for (Pair<Integer, Integer> goods : cart.getDispensedGoods())
+      dispensed += goods.getValue();
+    int planned = 0;
+    for (int i = 0; i < path.size(); i++) {
+      if (path.getSKU(i) >= 0)
+        planned += path.getQuantity(i);
+    }
+    check(dispensed + carried >= planned, name + ": brought " + (dispensed + carried) + " of " + planned);
+    check(lastTime * Cart.DEFAULT_SPEED / 1000 >= lengthOf(path, warehouse.graph) - path.size(), name + ": cart faster than its speed");
+  }
+
+
+  /** Runs the same orders by jumping from event to event and by fixed frames.
+   *
+   * @param random The source of the random orders.
+   * @param name The name of the round in the failures.
+   */
+  private static void checkEngine(Random random, String name) {
+    long seed = random.nextLong();
+    SimulationEngine jumped = engine(seed);
+    jumped.run(Long.MAX_VALUE);
+
+    SimulationEngine framed = engine(seed);
+    while (!framed.allOrdersFinished()) {
+      framed.step(FRAME);
+      framed.updateCartPositions();
+    }
+
+    OrderHistory expected = jumped.getHistory();
+    OrderHistory actual = framed.getHistory();
+    check(expected.size() == jumped.getOrderCount(), name + ": not all orders finished");
+    check(expected.size() == actual.size(), name + ": " + actual.size() + " orders instead of " + expected.size());
+    for (int i = 0; i < expected.size(); i++) {
+      check(expected.getIndex(i) == actual.getIndex(i)
+            && expected.getStartEpochTime(i) == actual.getStartEpochTime(i)
+            && expected.getEndEpochTime(i) == actual.getEndEpochTime(i),
+            name + ": order " + expected.getIndex(i) + " ended differently");
+    }
+  }
+
+
+  /** Creates a simulation of random orders over a fresh sample warehouse.
+   *
+   * @param seed The seed of the orders.
+   * @return The simulation at time 0.
+   */
+  private static SimulationEngine engine(long seed) {
+    Warehouse warehouse = new Warehouse();
+    Random random = new Random(seed);
+    List<Order> orders = new ArrayList<>();
+    long time = 0;
+    for (int i = 0; i < 20; i++) {
+      time += random.nextInt(30000);
+      orders.add(new Order(time, randomGoods(random, warehouse.skus)));
+    }
+
+    SimulationEngine engine = new SimulationEngine(warehouse.graph, warehouse.shelves, warehouse.goodsIndex, orders, 500, RoutingTable.MATRIX);
+    engine.setImproveTime(1000); // the improving always converges, so both runs plan the same
+    return engine;
+  }
+
+
+  /** Creates a random list of goods.
+   *
+   * @param random The source of the goods.
+   * @param skus The number of the SKUs.
+   * @return The SKUs and quantities of the goods.
+   */
+  private static List<Pair<Integer, Integer>> randomGoods(Random random, int skus) {
+    List<Pair<Integer, Integer>> goods = new ArrayList<>();
+    for (int i = 1 + random.nextInt(6); i > 0; i--)
+      goods.add(new Pair<>(random.nextInt(skus), 1 + random.nextInt(40)));
+    return goods;
+  }
+
+
+  /** Calculates the length of the path.
+   *
+   * @param path The path.
+   * @param graph The routes of the floor plan.
+   * @return The length in pixels.
+   */
+  private static long lengthOf(RoutePlan path, FloorGraph graph) {
+    long length = 0;
+    for (int i = 0; i + 1 < path.size(); i++)
+      length += graph.distance(path.getNode(i), path.getNode(i+1));
+    return length;
+  }
+
+
+  /** Fails the test if the condition doesn't hold.
+   *
+   * @param condition The checked condition.
+   * @param message The description of the failure.
+   */
+  private static void check(boolean condition, String message) {
+    if (!condition)
+      throw new AssertionError(message);
+  }
+
+
+  /** The sample warehouse with all its goods, loaded again for each use since
+   *  the carts take the goods from its shelves.
+   */
+  private static class Warehouse {
+    FloorGraph graph;
+    Hashtable<Integer, Shelf> shelves;
+    GoodsIndex goodsIndex;
+    int skus;
+
+    Warehouse() {
+      WarehouseLoader loader = new WarehouseLoader();
+      List<JSONObject> data = loader.loadJSONData(Arrays.asList("data/warehouse.json", "data/goods.json"));
+      this.graph = loader.connectRoutes(loader.getAllNodes(data.get(0)), loader.getAllRoutes(data.get(0)));
+      this.shelves = loader.getAllShelves(data.get(0));
+      this.goodsIndex = loader.loadGoodsToShelfs(this.shelves, loader.getAllGoods(data.get(1)));
+      this.skus = loader.getGoodsDictionary().size();
+    }
+  }
+}
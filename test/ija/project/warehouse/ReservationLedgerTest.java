@@ -0,0 +1,175 @@
+package ija.project.warehouse;
+
+import java.util.*;
+
+import org.json.simple.JSONObject;
+
+/** Checks that the ledger reservates goods of an order all at once or not at
+ *  all -- a failed reservation is rolled back, so the reservated quantities
+ *  are the same as before it, and no shelf is reservated over its quantity,
+ *  also when more planners reservate at once. Released goods of the stops not
+ *  achieved yet are given back exactly.
+ *
+ *  Run by 'ant test' from the project directory.
+ *
+ * @author Simon Slobodnik (xslobo06)
+ */
+public class ReservationLedgerTest {
+  private static final int ROUNDS = 2000;
+  private static final int THREADS = 4;
+
+  public static void main(String[] args) throws InterruptedException {
+    WarehouseLoader loader = new WarehouseLoader();
+    List<JSONObject> data = loader.loadJSONData(Arrays.asList("data/warehouse.json", "data/goods.json"));
+    Hashtable<Integer, Shelf> shelves = loader.getAllShelves(data.get(0));
+    loader.loadGoodsToShelfs(shelves, loader.getAllGoods(data.get(1)));
+    List<Shelf> stocked = new ArrayList<>();
+    for(Shelf shelf: shelves.values()){
+      if(shelf.getQuantity() > 0)
+        stocked.add(shelf);
+    }
+
+    checkRollback(shelves, stocked);
+    checkRelease(shelves, stocked);
+    checkConcurrent(shelves, stocked);
+    System.out.println("ReservationLedgerTest: OK");
+  }
+
+  /** Reservate random orders until the shelfs run out, each reservation
+   *  changes the ledger by its quantities or not at all
+   *
+   *  @param shelves Hashtable of shelfs ID and object Shelf
+   *  @param stocked Shelfs with some goods
+   */
+  private static void checkRollback(Hashtable<Integer, Shelf> shelves, List<Shelf> stocked){
+    ReservationLedger ledger = new ReservationLedger(shelves);
+    Random random = new Random(1);
+    int failed = 0;
+    for(int round = 0; round < ROUNDS; round++){
+      ReservationLedger.Reservation reservation = randomReservation(random, stocked);
+      Hashtable<Integer, Integer> before = ledger.getReservations();
+      String name = "round " + round;
+
+      if(ledger.reserve(reservation)){
+        for(Shelf shelf: stocked){
+          int expected = before.getOrDefault(shelf.shelfID, 0) + reservation.getQuantity(shelf.shelfID);
+          check(ledger.getReserved(shelf.shelfID) == expected, name + ": shelf " + shelf.shelfID + " reservated wrong");
+        }
+      }
+      else{
+        failed++;
+        check(ledger.getReservations().equals(before), name + ": failed reservation changed the ledger");
+      }
+      for(Shelf shelf: stocked)
+        check(ledger.getReserved(shelf.shelfID) <= shelf.getQuantity(), name + ": shelf " + shelf.shelfID + " reservated over its quantity");
+    }
+    check(failed > 0, "no reservation failed, the rollback wasn't tried");
+  }
+
+  /** Release the reservation from a random stop of its path, only the rest
+   *  of the path is given back
+   *
+   *  @param shelves Hashtable of shelfs ID and object Shelf
+   *  @param stocked Shelfs with some goods
+   */
+  private static void checkRelease(Hashtable<Integer, Shelf> shelves, List<Shelf> stocked){
+    Random random = new Random(2);
+    for(int round = 0; round < ROUNDS / 10; round++){
+      ReservationLedger ledger = new ReservationLedger(shelves);
+      ReservationLedger.Reservation reservation = new ReservationLedger.Reservation();
+      RoutePlan path = new RoutePlan();
+      path.add(0);
+      //each stop has other node and SKU, so it belongs to a single shelf
+      Set<String> stops = new HashSet<>();
+      List<Shelf> stopShelves = new ArrayList<>();
+      for(int i = 1 + random.nextInt(8); i > 0; i--){
+        Shelf shelf = stocked.get(random.nextInt(stocked.size()));
+        if(!stops.add(shelf.nodeID + ":" + shelf.getGoods()))
+          continue;
+        int quantity = 1 + random.nextInt(Math.max(1, shelf.getQuantity() / 8));
+        reservation.add(shelf.shelfID, shelf.nodeID, shelf.getGoods(), quantity);
+        path.add(shelf.nodeID, shelf.getGoods(), quantity);
+        stopShelves.add(shelf);
+      }
+      path.add(0);
+      String name = "round " + round;
+      check(ledger.reserve(reservation), name + ": reservation of an empty ledger failed");
+
+      int from = random.nextInt(path.size() + 1);
+      ledger.release(reservation, path, from);
+      Hashtable<Integer, Integer> expected = new Hashtable<>();
+      for(int i = 1; i < Math.min(from, path.size() - 1); i++)
+        expected.merge(stopShelves.get(i - 1).shelfID, path.getQuantity(i), Integer::sum);
+      check(ledger.getReservations().equals(expected), name + ": released from stop " + from + " wrong");
+
+      //the goods of a path are released once, the whole path on other ledger
+      ReservationLedger whole = new ReservationLedger(shelves);
+      whole.reserve(reservation);
+      whole.release(reservation, path, 0);
+      check(whole.getReservations().isEmpty(), name + ": goods left after the whole path was released");
+    }
+  }
+
+  /** Reservate random orders from more threads at once, the ledger has
+   *  exactly the goods of the successful reservations
+   *
+   *  @param shelves Hashtable of shelfs ID and object Shelf
+   *  @param stocked Shelfs with some goods
+   */
+  private static void checkConcurrent(Hashtable<Integer, Shelf> shelves, List<Shelf> stocked) throws InterruptedException {
+    ReservationLedger ledger = new ReservationLedger(shelves);
+    List<List<ReservationLedger.Reservation>> reserved = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    for(int t = 0; t < THREADS; t++){
+      List<ReservationLedger.Reservation> mine = new ArrayList<>();
+      reserved.add(mine);
+      Random random = new Random(10 + t);
+      Thread thread = new Thread(() -> {
+        for(int round = 0; round < ROUNDS; round++){
+          ReservationLedger.Reservation reservation = randomReservation(random, stocked);
+          if(ledger.reserve(reservation))
+            mine.add(reservation);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for(Thread thread: threads)
+      thread.join();
+
+    for(Shelf shelf: stocked){
+      int expected = 0;
+      for(List<ReservationLedger.Reservation> mine: reserved){
+        for(ReservationLedger.Reservation reservation: mine)
+          expected += reservation.getQuantity(shelf.shelfID);
+      }
+      check(ledger.getReserved(shelf.shelfID) == expected, "shelf " + shelf.shelfID + " has " + ledger.getReserved(shelf.shelfID) + " reservated instead of " + expected);
+      check(expected <= shelf.getQuantity(), "shelf " + shelf.shelfID + " reservated over its quantity");
+    }
+  }
+
+  /** Create reservation of a random order, large enough to run out of goods
+   *
+   *  @param random Source of the order
+   *  @param stocked Shelfs with some goods
+   *  @return Goods of the order
+   */
+  private static ReservationLedger.Reservation randomReservation(Random random, List<Shelf> stocked){
+    ReservationLedger.Reservation reservation = new ReservationLedger.Reservation();
+    for(int i = 1 + random.nextInt(6); i > 0; i--){
+      Shelf shelf = stocked.get(random.nextInt(stocked.size()));
+      reservation.add(shelf.shelfID, shelf.nodeID, shelf.getGoods(), 1 + random.nextInt(Math.max(1, shelf.getQuantity() / 4)));
+    }
+    return reservation;
+  }
+
+  /** Fail the test if the condition doesn't hold
+   *
+   *  @param condition Checked condition
+   *  @param message Description of the failure
+   */
+  private static void check(boolean condition, String message){
+    if(!condition)
+      throw new AssertionError(message);
+  }
+}
@@ -0,0 +1,161 @@
+package ija.project.warehouse;
+
+import java.util.*;
+
+/** Checks the reservations of the carts against a plain model of them. A node
+ *  slot is never reservated by two carts, a route slot is shared, and after
+ *  releasing any reservations all the others are still found -- removing a key
+ *  from the bucket mustn't break the probe chain of the keys behind it.
+ *  The window of buckets moves back for earlier slots and drops the buckets
+ *  which have passed.
+ *
+ *  Run by 'ant test' from the project directory.
+ *
+ * @author Simon Slobodnik (xslobo06)
+ */
+public class ReservationTableTest {
+  private static final int ROUNDS = 100;
+  private static final int OPERATIONS = 3000;
+  private static final int CELLS = 40; //cells below NODES are reservated, the others shared
+  private static final int NODES = 20;
+  private static final int OWNERS = 6;
+
+  public static void main(String[] args) {
+    checkModel();
+    checkExclusive();
+    checkWindow();
+    System.out.println("ReservationTableTest: OK");
+  }
+
+  /** Reservate, share and release random slots, the table has to answer the
+   *  same as the model of sets of owners by cell and slot
+   */
+  private static void checkModel(){
+    Random random = new Random(1);
+    for(int round = 0; round < ROUNDS; round++){
+      ReservationTable table = new ReservationTable();
+      Map<Long, Set<Integer>> model = new HashMap<>();
+      long base = random.nextInt(1000) - 500;  //negative slots too
+      String name = "round " + round;
+
+      for(int operation = 0; operation < OPERATIONS; operation++){
+        int cell = random.nextInt(CELLS);
+        int owner = 1 + random.nextInt(OWNERS);
+        long slot = base + random.nextInt(300);
+        long key = ReservationTable.key(cell, slot);
+        Set<Integer> owners = model.computeIfAbsent(key, k -> new HashSet<>());
+
+        if(random.nextInt(3) > 0){
+          boolean shared = cell >= NODES;
+          boolean expected = shared || owners.isEmpty() || owners.contains(owner);
+          boolean reserved = shared ? table.share(cell, slot, owner) : table.reserve(cell, slot, owner);
+          check(reserved == expected, name + ": cell " + cell + " in slot " + slot + " reservated " + reserved + " for " + owner + " of " + owners);
+          if(reserved)
+            owners.add(owner);
+        }
+        else{
+          table.release(new long[]{key}, owner);
+          owners.remove(owner);
+        }
+
+        if(operation % 500 == 0)
+          checkAll(table, model, name);
+      }
+      checkAll(table, model, name);
+
+      //release everything by owners, nothing is left
+      for(int owner = 1; owner <= OWNERS; owner++){
+        List<Long> keys = new ArrayList<>();
+        for(Map.Entry<Long, Set<Integer>> entry: model.entrySet()){
+          if(entry.getValue().remove(owner))
+            keys.add(entry.getKey());
+        }
+        table.release(keys.stream().mapToLong(Long::longValue).toArray(), owner);
+        checkAll(table, model, name + " after release of " + owner);
+      }
+    }
+  }
+
+  /** Compare all cells and slots of the model with the table
+   *
+   *  @param table The table
+   *  @param model Owners by key of cell and slot
+   *  @param name Name of the round in failures
+   */
+  private static void checkAll(ReservationTable table, Map<Long, Set<Integer>> model, String name){
+    for(Map.Entry<Long, Set<Integer>> entry: model.entrySet()){
+      int cell = (int)(long)entry.getKey();
+      long slot = entry.getKey() >> 32;
+      Set<Integer> owners = entry.getValue();
+      long time = slot * ReservationTable.SLOT;
+
+      int owner = table.getOwner(cell, slot);
+      check(owners.isEmpty() ? owner == 0 : owners.contains(owner), name + ": cell " + cell + " in slot " + slot + " has owner " + owner + " instead of " + owners);
+      for(int other = 1; other <= OWNERS; other++){
+        boolean expected = owners.isEmpty() || owners.equals(Collections.singleton(other));
+        check(table.isFree(cell, time, time, other) == expected, name + ": cell " + cell + " in slot " + slot + " free wrong for " + other);
+      }
+    }
+  }
+
+  /** Let all carts reservate the same nodes in random order, only the first
+   *  one gets each slot and the others see it as taken
+   */
+  private static void checkExclusive(){
+    Random random = new Random(2);
+    ReservationTable table = new ReservationTable();
+    for(int slot = 0; slot < 500; slot++){
+      int cell = random.nextInt(NODES);
+      int first = 0;
+      for(int attempt = 0; attempt < 3 * OWNERS; attempt++){
+        int owner = 1 + random.nextInt(OWNERS);
+        boolean reserved = table.reserve(cell, slot, owner);
+        if(first == 0)
+          first = owner;
+        check(reserved == (owner == first), "node " + cell + " in slot " + slot + " reservated for " + owner + " after " + first);
+      }
+      check(table.getOwner(cell, slot) == first, "node " + cell + " in slot " + slot + " lost its owner");
+      for(int owner = 1; owner <= OWNERS; owner++){
+        long time = (long)slot * ReservationTable.SLOT;
+        check(table.isFree(cell, time, time, owner) == (owner == first), "node " + cell + " in slot " + slot + " free for " + owner);
+      }
+    }
+  }
+
+  /** Move the window back and forth and expire it
+   */
+  private static void checkWindow(){
+    ReservationTable table = new ReservationTable();
+    check(table.reserve(1, 5000, 1), "reservation of empty table failed");
+    check(table.reserve(1, -5000, 2), "reservation before the window failed");
+    check(table.reserve(1, 100, 3), "reservation inside the window failed");
+    check(table.getOwner(1, 5000) == 1 && table.getOwner(1, -5000) == 2 && table.getOwner(1, 100) == 3, "window lost reservation when it moved");
+    check(table.getOwner(1, 101) == 0 && table.getOwner(1, 100000) == 0 && table.getOwner(1, -100000) == 0, "reservation in empty slot");
+
+    //buckets ended before the time are dropped and can't be reservated again
+    table.expire(2000L * ReservationTable.SLOT);
+    check(table.getOwner(1, -5000) == 0 && table.getOwner(1, 100) == 0, "expired reservation kept");
+    check(table.getOwner(1, 5000) == 1, "reservation after the time expired");
+    check(!table.reserve(2, 100, 1) && !table.share(2 + CELLS, 100, 1), "slot before the time reservated");
+    check(table.reserve(2, 2000, 1), "slot of the current time can't be reservated");
+
+    //the time doesn't go back
+    table.expire(0);
+    check(!table.reserve(3, 100, 1), "slot reservated after the time went back");
+    check(table.getOwner(1, 5000) == 1 && table.getOwner(2, 2000) == 1, "reservation lost when the time went back");
+
+    table.clear();
+    check(table.getOwner(1, 5000) == 0, "reservation kept after clear");
+    check(table.reserve(1, -5000, 4) && table.getOwner(1, -5000) == 4, "cleared table can't reservate earlier slots");
+  }
+
+  /** Fail the test if the condition doesn't hold
+   *
+   *  @param condition Checked condition
+   *  @param message Description of the failure
+   */
+  private static void check(boolean condition, String message){
+    if(!condition)
+      throw new AssertionError(message);
+  }
+}
@@ -0,0 +1,120 @@
+package ija.project.warehouse;
+
+import java.util.*;
+
+import org.json.simple.JSONObject;
+
+/** Checks that the matrix of distances updated after closing and opening
+ *  routes is the same as the one searched again from scratch, also when an
+ *  opened route joins two parts of the floor plan into paths too long for
+ *  16-bit cells. The path between two nodes is always as long as their
+ *  distance.
+ *
+ *  Run by 'ant test' from the project directory.
+ *
+ * @author Simon Slobodnik (xslobo06)
+ */
+public class RoutingTableTest {
+  private static final int ROUNDS = 30;
+
+  public static void main(String[] args) {
+    MatrixRoutingTable.setCacheDirectory(null);
+    checkJoin();
+    checkUpdates();
+    System.out.println("RoutingTableTest: OK");
+  }
+
+  /** Open a route between two parts of a long floor plan whose table was
+   *  calculated with the route closed
+   */
+  private static void checkJoin(){
+    Hashtable<Integer, PathNode> nodes = new Hashtable<>();
+    List<Pair<Integer, Integer>> routes = new ArrayList<>();
+    for(int i = 0; i < 4; i++){
+      nodes.put(i, new PathNode(30000 * i, 0, i));
+      if(i > 0)
+        routes.add(new Pair<>(i - 1, i));
+    }
+    FloorGraph graph = new FloorGraph(nodes, routes);
+    List<Pair<Integer, Integer>> joining = Collections.singletonList(new Pair<>(1, 2));
+
+    graph.updateRoutes(joining, Collections.emptyList());
+    MatrixRoutingTable matrix = new MatrixRoutingTable(graph);
+    check(matrix.getDistance(0, 3) == Integer.MAX_VALUE, "closed parts are connected");
+
+    graph.updateRoutes(Collections.emptyList(), joining);
+    matrix.updateEdges(graph, Collections.emptyList(), joining);
+    compare(graph, matrix, "joined parts");
+    check(matrix.getDistance(0, 3) == 90000, "joined parts have distance " + matrix.getDistance(0, 3));
+  }
+
+  /** Close and open random routes of the sample warehouse, the updated table
+   *  is compared with the new one after each change
+   */
+  private static void checkUpdates(){
+    WarehouseLoader loader = new WarehouseLoader();
+    List<JSONObject> data = loader.loadJSONData(Arrays.asList("data/warehouse.json"));
+    List<Pair<Integer, Integer>> routes = loader.getAllRoutes(data.get(0));
+    FloorGraph graph = loader.connectRoutes(loader.getAllNodes(data.get(0)), routes);
+    MatrixRoutingTable matrix = new MatrixRoutingTable(graph);
+    List<Pair<Integer, Integer>> closed = new ArrayList<>();
+
+    Random random = new Random(1);
+    for(int round = 0; round < ROUNDS; round++){
+      List<Pair<Integer, Integer>> closing = new ArrayList<>();
+      List<Pair<Integer, Integer>> opening = new ArrayList<>();
+      for(int i = random.nextInt(4); i > 0; i--){
+        Pair<Integer, Integer> route = routes.get(random.nextInt(routes.size()));
+        if(!closed.contains(route) && !closing.contains(route))
+          closing.add(route);
+      }
+      for(int i = random.nextInt(3); i > 0 && !closed.isEmpty(); i--)
+        opening.add(closed.remove(random.nextInt(closed.size())));
+      closed.addAll(closing);
+
+      graph.updateRoutes(closing, opening);
+      matrix.updateEdges(graph, closing, opening);
+      compare(graph, matrix, "round " + round);
+    }
+  }
+
+  /** Compare all distances of the table with a new sparse table and check
+   *  that its paths are as long as the distances
+   *
+   *  @param graph Routes between nodes of the floor plan
+   *  @param matrix Checked table
+   *  @param name Name of the round in failures
+   */
+  private static void compare(FloorGraph graph, MatrixRoutingTable matrix, String name){
+    SparseRoutingTable expected = new SparseRoutingTable(graph);
+    for(int u = 0; u < graph.size(); u++){
+      for(int v = 0; v < graph.size(); v++){
+        int distance = matrix.getDistance(u, v);
+        check(distance == expected.getDistance(u, v), name + ": distance " + u + "-" + v + " is " + distance + " instead of " + expected.getDistance(u, v));
+
+        List<Integer> path = matrix.getPath(u, v);
+        check((path == null) == (distance == Integer.MAX_VALUE), name + ": path " + u + "-" + v + " disagrees with distance");
+        if(path == null || u == v)
+          continue;
+        long length = 0;
+        int last = u;
+        for(int node: path){
+          length += graph.distance(last, node);
+          last = node;
+        }
+        length += graph.distance(last, v);
+        check(length == distance, name + ": path " + u + "-" + v + " is " + length + " long, distance is " + distance);
+      }
+    }
+  }
+
+  /** Fail the test if the condition doesn't hold
+   *
+   *  @param condition Checked condition
+   *  @param message Description of the failure
+   */
+  private static void check(boolean condition, String message){
+    if(!condition)
+      throw new AssertionError(message);
+  }
+}
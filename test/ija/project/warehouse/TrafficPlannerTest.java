@@ -0,0 +1,114 @@
+package ija.project.warehouse;
+
+import java.util.*;
+
+/** Checks that a cart whose way is blocked by other cart waits at its node
+ *  and keeps all its stops, also when the route to its next stop is closed
+ *  after the search -- the routing table has no path there anymore.
+ *
+ *  Run by 'ant test' from the project directory.
+ *
+ * @author Simon Slobodnik (xslobo06)
+ */
+public class TrafficPlannerTest {
+  //time the other cart stands in the way in ms, longer than the search can wait
+  private static final long PARKED = 2L * TrafficPlanner.MAX_EXPANSIONS * ReservationTable.SLOT;
+
+  public static void main(String[] args) {
+    Hashtable<Integer, PathNode> nodes = new Hashtable<>();
+    List<Pair<Integer, Integer>> routes = new ArrayList<>();
+    for(int i = 0; i < 4; i++){
+      nodes.put(i, new PathNode(100 * i, 0, i));
+      if(i > 0)
+        routes.add(new Pair<>(i - 1, i));
+    }
+    FloorGraph graph = new FloorGraph(nodes, routes);
+    TrafficPlanner planner = new TrafficPlanner(graph, new GoodsIndex(new Hashtable<>()), Cart.DEFAULT_SPEED);
+    RoutingTable table = new SparseRoutingTable(graph);
+
+    //the other cart stands at node 1 for a long time
+    RoutePlan parked = new RoutePlan();
+    parked.add(1);
+    parked.add(0);
+    planner.schedule(parked, 2, 0, PARKED, 0, table);
+
+    RoutePlan path = new RoutePlan();
+    path.add(0);
+    path.add(1);
+    path.add(2, 5, 1);
+    path.add(3, 6, 1);
+    path.add(2);
+    path.add(1);
+    path.add(0);
+
+    check(path, planner.schedule(path, 1, 0, 0, 0, table), "route open");
+    planner.clear();
+    planner.schedule(parked, 2, 0, PARKED, 0, table);
+    check(path, planner.schedule(path, 1, 0, 0, 0, new Closed(table)), "route closed");
+    System.out.println("TrafficPlannerTest: OK");
+  }
+
+  /** Check that the blocked cart waits at its first node to be replanned and
+   *  keeps all the stops of the path
+   *
+   *  @param path Path from PathFinder
+   *  @param timed Timed path
+   *  @param name Name of the case in failures
+   */
+  private static void check(RoutePlan path, RoutePlan timed, String name){
+    check(timed.getHorizon() == 0, name + ": blocked cart doesn't stop at its node, horizon " + timed.getHorizon());
+    check(timed.getDwell(0) >= ReservationTable.SLOT, name + ": blocked cart doesn't wait");
+    List<Integer> stops = new ArrayList<>();
+    for(int i = 0; i < path.size(); i++){
+      if(path.getSKU(i) != GoodsDictionary.NONE)
+        stops.add(path.getNode(i));
+    }
+    List<Integer> timedStops = new ArrayList<>();
+    for(int i = 0; i < timed.size(); i++){
+      if(timed.getSKU(i) != GoodsDictionary.NONE)
+        timedStops.add(timed.getNode(i));
+    }
+    check(stops.equals(timedStops), name + ": stops " + timedStops + " instead of " + stops);
+  }
+
+  /** Fail the test if the condition doesn't hold
+   *
+   *  @param condition Checked condition
+   *  @param message Description of the failure
+   */
+  private static void check(boolean condition, String message){
+    if(!condition)
+      throw new AssertionError(message);
+  }
+
+  /** Routing table whose routes were closed after the distances were read,
+   *  it has the distances but no paths
+   */
+  private static class Closed implements RoutingTable {
+    private final RoutingTable table;
+
+    Closed(RoutingTable table){
+      this.table = table;
+    }
+
+    @Override
+    public void setGraph(FloorGraph graph){
+      this.table.setGraph(graph);
+    }
+
+    @Override
+    public void updateEdges(FloorGraph graph, List<Pair<Integer, Integer>> removedEdges, List<Pair<Integer, Integer>> addedEdges){
+      this.table.updateEdges(graph, removedEdges, addedEdges);
+    }
+
+    @Override
+    public int getDistance(int u, int v){
+      return this.table.getDistance(u, v);
+    }
+
+    @Override
+    public List<Integer> getPath(int u, int v){
+      return null;
+    }
+  }
+}
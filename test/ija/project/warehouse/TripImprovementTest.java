@@ -0,0 +1,86 @@
+package ija.project.warehouse;
+
+import java.util.*;
+
+import org.json.simple.JSONObject;
+
+/** Checks that improving the order of picking by 2-opt and Or-opt keeps every
+ *  stop in its trip -- no stop crosses a dispensing, so the cart carries the
+ *  same load in each trip, and the improved path is never longer. Random
+ *  orders over the sample warehouse are planned with and without the
+ *  improving.
+ *
+ *  Run by 'ant test' from the project directory.
+ *
+ * @author Simon Slobodnik (xslobo06)
+ */
+public class TripImprovementTest {
+  private static final int ROUNDS = 200;
+
+  public static void main(String[] args) {
+    WarehouseLoader loader = new WarehouseLoader();
+    List<JSONObject> data = loader.loadJSONData(Arrays.asList("data/warehouse.json", "data/goods.json"));
+    FloorGraph graph = loader.connectRoutes(loader.getAllNodes(data.get(0)), loader.getAllRoutes(data.get(0)));
+    Hashtable<Integer, Shelf> shelves = loader.getAllShelves(data.get(0));
+    GoodsIndex goodsIndex = loader.loadGoodsToShelfs(shelves, loader.getAllGoods(data.get(1)));
+    int skus = loader.getGoodsDictionary().size();
+
+    Random random = new Random(1);
+    for(int round = 0; round < ROUNDS; round++){
+      int capacity = 20 + random.nextInt(200);
+      List<Pair<Integer, Integer>> order = new ArrayList<>();
+      for(int i = 5 + random.nextInt(40); i > 0; i--)
+        order.add(new Pair<>(random.nextInt(skus), 1 + random.nextInt(40)));
+
+      //the same stops planned both ways, a new navigator has all goods free
+      PathFinder finder = new PathFinder(graph, shelves, goodsIndex, capacity, round % 2 == 0 ? RoutingTable.MATRIX : RoutingTable.SPARSE);
+      RoutePlan stops = finder.findStops(order, shelves, 0, 0);
+      finder.setImproveTime(0);
+      RoutePlan plain = finder.planPath(stops, 0);
+      finder.setImproveTime(1000);
+      RoutePlan improved = finder.planPath(stops, 0);
+
+      String name = "round " + round;
+      List<Map<String, Integer>> plainTrips = trips(plain);
+      List<Map<String, Integer>> improvedTrips = trips(improved);
+      check(plainTrips.equals(improvedTrips), name + ": trips differ\n  " + plainTrips + "\n  " + improvedTrips);
+
+      plain.measure(graph);
+      improved.measure(graph);
+      check(improved.getLength() <= plain.getLength(), name + ": improved path is longer");
+      for(int i = 0; i + 1 < improved.size(); i++)
+        check(improved.getNode(i) == improved.getNode(i + 1) || improved.getRoute(i) >= 0, name + ": no route between nodes");
+    }
+    System.out.println("TripImprovementTest: " + ROUNDS + " rounds OK");
+  }
+
+  /** Split picked goods of path by dispensings
+   *
+   *  @param path Path with stops
+   *  @return Quantity by node and SKU for each trip
+   */
+  private static List<Map<String, Integer>> trips(RoutePlan path){
+    List<Map<String, Integer>> trips = new ArrayList<>();
+    Map<String, Integer> trip = new TreeMap<>();
+    for(int i = 0; i < path.size(); i++){
+      if(path.getSKU(i) == GoodsDictionary.DISPENSE){
+        trips.add(trip);
+        trip = new TreeMap<>();
+      }
+      else if(path.getSKU(i) != GoodsDictionary.NONE)
+        trip.merge(path.getNode(i) + ":" + path.getSKU(i), path.getQuantity(i), Integer::sum);
+    }
+    trips.add(trip);
+    return trips;
+  }
+
+  /** Fail the test if the condition doesn't hold
+   *
+   *  @param condition Checked condition
+   *  @param message Description of the failure
+   */
+  private static void check(boolean condition, String message){
+    if(!condition)
+      throw new AssertionError(message);
+  }
+}